@@ -52,6 +52,25 @@ public interface CompositeTransaction
 
      Stack<CompositeTransaction> getLineage();
 
+    /**
+     * @return String The tid of the root transaction, i.e. the (bottom-most) root
+     * in the lineage, or this transaction's tid if the lineage is empty.
+     * Implementations are encouraged to cache this value.
+     */
+
+     default String getRootTid() {
+    	 Stack<CompositeTransaction> lineage = getLineage();
+    	 if (lineage == null || lineage.isEmpty()) {
+    		 return getTid();
+    	 }
+    	 for (CompositeTransaction ancestor : lineage) {
+    		 if (ancestor.isRoot()) {
+    			 return ancestor.getTid();
+    		 }
+    	 }
+    	 return lineage.firstElement().getTid();
+     }
+
 
     /**
      * 
@@ -0,0 +1,27 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch;
+
+
+/**
+ * A participant that may not be able to prepare, but that can commit in one
+ * phase - like a non-XA resource. If enabled, one such participant per
+ * transaction can be committed last: after all others have prepared and the
+ * commit decision has been logged.
+ */
+
+public interface OnePhaseParticipant extends Participant
+{
+    /**
+     * @return True if prepare would fail, so the instance can only be
+     * committed in one phase.
+     */
+
+     boolean isOnePhaseOnly();
+}
@@ -16,6 +16,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ServiceLoader;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.atomikos.datasource.RecoverableResource;
 import com.atomikos.datasource.ResourceException;
@@ -51,6 +52,9 @@ public final class Configuration
     // keep resources in a list, to enable ordered search of XAResource
     // this way, an AcceptAllXATransactionalResource can be added at the end
 
+    private static final AtomicLong resourcesVersion_ = new AtomicLong ();
+    // incremented on every add or remove, so lookup structures
+    // derived from the resources know when to rebuild
 
     private static RecoveryService recoveryService_;
     // needed for addResource to do recovery
@@ -245,6 +249,7 @@ public final class Configuration
         resource.setRecoveryService ( recoveryService_ );
         resources_.put ( resource.getName (), resource );
         resourceList_.add ( resource );
+        resourcesVersion_.incrementAndGet ();
     }
 
     /**
@@ -260,7 +265,10 @@ public final class Configuration
         RecoverableResource ret = null;
         if ( name != null ) {
         	ret = (RecoverableResource) resources_.remove ( name );
-        	if ( ret != null ) resourceList_.remove ( ret );
+        	if ( ret != null ) {
+        		resourceList_.remove ( ret );
+        		resourcesVersion_.incrementAndGet ();
+        	}
 
         }
         return ret;
@@ -294,6 +302,18 @@ public final class Configuration
         return ret;
     }
 
+    /**
+     * Get a number that changes whenever a resource is added or removed. 
+     * Useful for caching things computed from getResources: read this first,
+     * and rebuild the cache when it no longer matches.
+     *
+     */
+
+    public static long getResourcesVersion ()
+    {
+        return resourcesVersion_.get ();
+    }
+
 	protected static synchronized Assembler getAssembler() {
 		if (assembler == null) loadAssembler();
 		return assembler;
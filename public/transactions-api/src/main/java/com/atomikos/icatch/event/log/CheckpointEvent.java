@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.event.log;
+
+import com.atomikos.icatch.event.Event;
+
+/**
+ * Signals that the transaction log was checkpointed in the background.
+ */
+public class CheckpointEvent extends Event {
+
+	/**
+	 * How long the checkpoint itself took.
+	 */
+	public final long durationMillis;
+
+	/**
+	 * How long the checkpoint was due before it started.
+	 */
+	public final long lagMillis;
+
+	/**
+	 * The number of log entries kept by the checkpoint.
+	 */
+	public final int numberOfEntries;
+
+	public CheckpointEvent(long durationMillis, long lagMillis, int numberOfEntries) {
+		this.durationMillis = durationMillis;
+		this.lagMillis = lagMillis;
+		this.numberOfEntries = numberOfEntries;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		ret.append("Log checkpoint of ").append(numberOfEntries).
+			append(" entries took ").append(durationMillis).
+			append("ms after a lag of ").append(lagMillis).append("ms");
+		return ret.toString();
+	}
+}
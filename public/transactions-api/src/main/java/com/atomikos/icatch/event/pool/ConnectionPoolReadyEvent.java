@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.event.pool;
+
+import com.atomikos.icatch.event.Event;
+
+/**
+ * Signals that a connection pool has created its initial connections (up to
+ * minPoolSize) and is ready for use at full capacity.
+ */
+public class ConnectionPoolReadyEvent extends Event {
+
+	public final String uniqueResourceName;
+
+	/**
+	 * The number of connections in the pool, which can be less than minPoolSize
+	 * if some could not be created.
+	 */
+	public final int numberOfConnections;
+
+	/**
+	 * How long it took to create the initial connections.
+	 */
+	public final long durationMillis;
+
+	public ConnectionPoolReadyEvent(String uniqueResourceName, int numberOfConnections, long durationMillis) {
+		this.uniqueResourceName = uniqueResourceName;
+		this.numberOfConnections = numberOfConnections;
+		this.durationMillis = durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		ret.append("Connection pool ").append(uniqueResourceName).
+			append(" ready with ").append(numberOfConnections).
+			append(" connections after ").append(durationMillis).append("ms");
+		return ret.toString();
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.event.transaction;
+
+import com.atomikos.icatch.event.Event;
+
+/**
+ * Signals that a termination message to a participant failed with a
+ * transient error and will be retried later.
+ */
+public class ParticipantRetryEvent extends Event {
+
+	public final String participantUri;
+
+	/**
+	 * How many times the message has been retried so far, including this time.
+	 */
+	public final int retryCount;
+
+	public final long delayMillis;
+
+	/**
+	 * The number of messages (for all participants) currently waiting to be retried.
+	 */
+	public final int numberOfPendingRetries;
+
+	public ParticipantRetryEvent(String participantUri, int retryCount, long delayMillis, int numberOfPendingRetries) {
+		this.participantUri = participantUri;
+		this.retryCount = retryCount;
+		this.delayMillis = delayMillis;
+		this.numberOfPendingRetries = numberOfPendingRetries;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		ret.append("Retry ").append(retryCount).
+			append(" for participant ").append(participantUri).
+			append(" scheduled in ").append(delayMillis).append("ms (").
+			append(numberOfPendingRetries).append(" retries pending)");
+		return ret.toString();
+	}
+}
@@ -25,10 +25,22 @@ public final class ConfigProperties {
 	public static final String FORCE_SHUTDOWN_ON_VM_EXIT_PROPERTY_NAME = "com.atomikos.icatch.force_shutdown_on_vm_exit";
 	public static final String FILE_PATH_PROPERTY_NAME = "com.atomikos.icatch.file";
 	public static final String CHECKPOINT_INTERVAL = "com.atomikos.icatch.checkpoint_interval";
+	public static final String LOG_GROUP_COMMIT = "com.atomikos.icatch.log_group_commit";
+	public static final String LOG_GROUP_COMMIT_MAX_BATCH_SIZE = "com.atomikos.icatch.log_group_commit_max_batch_size";
+	public static final String LOG_GROUP_COMMIT_LINGER_TIME = "com.atomikos.icatch.log_group_commit_linger_time";
+	public static final String LOG_BINARY_FORMAT = "com.atomikos.icatch.log_binary_format";
+	public static final String LOG_SEGMENTED = "com.atomikos.icatch.log_segmented";
+	public static final String LOG_SEGMENT_SIZE = "com.atomikos.icatch.log_segment_size";
+	public static final String EXECUTOR = "com.atomikos.icatch.executor";
+	public static final String THREADED_2PC = "com.atomikos.icatch.threaded_2pc";
+	public static final String LAST_RESOURCE_COMMIT = "com.atomikos.icatch.last_resource_commit";
+	public static final String XA_RESOURCE_PROBE_INTERVAL = "com.atomikos.icatch.xa_resource_probe_interval";
+	public static final String EXECUTOR_MAX_POOL_SIZE = "com.atomikos.icatch.executor_max_pool_size";
 
 	public static final String FORGET_ORPHANED_LOG_ENTRIES_DELAY = "com.atomikos.icatch.forget_orphaned_log_entries_delay";
 	public static final String OLTP_MAX_RETRIES_PROPERTY_NAME = "com.atomikos.icatch.oltp_max_retries";
 	public static final String OLTP_RETRY_INTERVAL = "com.atomikos.icatch.oltp_retry_interval";
+	public static final String OLTP_MAX_RETRY_INTERVAL = "com.atomikos.icatch.oltp_max_retry_interval";
 	public static final String RECOVERY_DELAY = "com.atomikos.icatch.recovery_delay";
 
 	public static final String ALLOW_SUBTRANSACTIONS = "com.atomikos.icatch.allow_subtransactions";
@@ -204,6 +216,50 @@ public final class ConfigProperties {
 		return getAsLong(CHECKPOINT_INTERVAL);
 	}
 
+	public boolean getLogGroupCommit() {
+		return getAsBoolean(LOG_GROUP_COMMIT);
+	}
+
+	public int getLogGroupCommitMaxBatchSize() {
+		return getAsInt(LOG_GROUP_COMMIT_MAX_BATCH_SIZE);
+	}
+
+	public long getLogGroupCommitLingerTime() {
+		return getAsLong(LOG_GROUP_COMMIT_LINGER_TIME);
+	}
+
+	public boolean getLogBinaryFormat() {
+		return getAsBoolean(LOG_BINARY_FORMAT);
+	}
+
+	public boolean getLogSegmented() {
+		return getAsBoolean(LOG_SEGMENTED);
+	}
+
+	public int getLogSegmentSize() {
+		return getAsInt(LOG_SEGMENT_SIZE);
+	}
+
+	public String getExecutor() {
+		return getProperty(EXECUTOR);
+	}
+
+	public int getExecutorMaxPoolSize() {
+		return getAsInt(EXECUTOR_MAX_POOL_SIZE);
+	}
+
+	public boolean getThreaded2pc() {
+		return getAsBoolean(THREADED_2PC);
+	}
+
+	public boolean getLastResourceCommit() {
+		return getAsBoolean(LAST_RESOURCE_COMMIT);
+	}
+
+	public long getXaResourceProbeInterval() {
+		return getAsLong(XA_RESOURCE_PROBE_INTERVAL);
+	}
+
 	public void applyUserSpecificProperties(Properties userSpecificProperties) {
 		Enumeration<?> names = userSpecificProperties.propertyNames();
 		while (names.hasMoreElements()) {
@@ -246,6 +302,10 @@ public final class ConfigProperties {
 		return getAsInt(OLTP_RETRY_INTERVAL);
 	}
 
+	public long getOltpMaxRetryInterval() {
+		return getAsLong(OLTP_MAX_RETRY_INTERVAL);
+	}
+
 	public long getRecoveryDelay() {
 		return getAsLong(RECOVERY_DELAY);
 	}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.atomikos.recovery.PendingTransactionRecord.AncestorPredicate;
+
+/**
+ * Parent/child index over a collection of records, built once and reusable
+ * for any number of lineage queries. Each query takes time proportional to
+ * the size of the collection (or of the subtree), regardless of how deep the
+ * lineages are.
+ * <p>
+ * Ancestors are only looked up within the indexed collection.
+ */
+
+public class LineageIndex {
+
+	private final Collection<PendingTransactionRecord> records;
+	private final Map<String, PendingTransactionRecord> recordsById;
+	private final Map<String, List<PendingTransactionRecord>> childrenBySuperiorId;
+
+	public LineageIndex(Collection<PendingTransactionRecord> records) {
+		this.records = records;
+		this.recordsById = new HashMap<>(records.size() * 2);
+		this.childrenBySuperiorId = new HashMap<>();
+		for (PendingTransactionRecord record : records) {
+			recordsById.put(record.id, record);
+			if (record.superiorId != null) {
+				List<PendingTransactionRecord> children = childrenBySuperiorId.get(record.superiorId);
+				if (children == null) {
+					children = new ArrayList<>(1);
+					childrenBySuperiorId.put(record.superiorId, children);
+				}
+				children.add(record);
+			}
+		}
+	}
+
+	/**
+	 * @param predicate
+	 * @return All records that match the given predicate, plus all their descendants.
+	 */
+	public Collection<PendingTransactionRecord> collectLineages(AncestorPredicate predicate) {
+		Collection<PendingTransactionRecord> ret = new HashSet<>();
+		Map<String, Boolean> lineageMatches = new HashMap<>();
+		for (PendingTransactionRecord record : records) {
+			if (predicate.holdsFor(record) ||
+				(record.superiorId != null && lineageMatches(record.superiorId, predicate, lineageMatches))) {
+				ret.add(record);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Walks up from the given id until a memoized answer, a match or a root,
+	 * then memoizes the answer for every id on the way.
+	 *
+	 * @return True if the record with the given id or any of its ancestors matches.
+	 */
+	private boolean lineageMatches(String id, AncestorPredicate predicate, Map<String, Boolean> memo) {
+		List<String> path = new ArrayList<>();
+		Boolean ret = null;
+		String currentId = id;
+		while (ret == null) {
+			Boolean known = memo.get(currentId);
+			PendingTransactionRecord current = recordsById.get(currentId);
+			if (known != null) {
+				ret = known;
+			} else if (current == null) {
+				ret = Boolean.FALSE;
+			} else {
+				path.add(currentId);
+				memo.put(currentId, Boolean.FALSE); // in progress: guards against cycles
+				if (predicate.holdsFor(current)) {
+					ret = Boolean.TRUE;
+				} else if (current.superiorId == null) {
+					ret = Boolean.FALSE;
+				} else {
+					currentId = current.superiorId;
+				}
+			}
+		}
+		for (String onPath : path) {
+			memo.put(onPath, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param id
+	 * @return All descendants of the record with the given id, excluding that record.
+	 */
+	public Collection<PendingTransactionRecord> findAllDescendants(String id) {
+		Collection<PendingTransactionRecord> ret = new HashSet<>();
+		Deque<String> todo = new ArrayDeque<>();
+		todo.push(id);
+		while (!todo.isEmpty()) {
+			List<PendingTransactionRecord> children = childrenBySuperiorId.get(todo.pop());
+			for (PendingTransactionRecord child : children == null ? Collections.<PendingTransactionRecord>emptyList() : children) {
+				if (ret.add(child)) {
+					todo.push(child.id);
+				}
+			}
+		}
+		return ret;
+	}
+
+}
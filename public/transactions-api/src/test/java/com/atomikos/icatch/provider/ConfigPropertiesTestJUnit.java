@@ -172,11 +172,68 @@ public class ConfigPropertiesTestJUnit {
 		assertEquals(VALUE, props.getOltpRetryInterval());
 	}
 	
+	@Test
+	public void testOltpMaxRetryInterval() throws Exception {
+		final long VALUE = 34567l;
+		props.setProperty("com.atomikos.icatch.oltp_max_retry_interval", Long.toString(VALUE));
+		assertEquals(VALUE, props.getOltpMaxRetryInterval());
+	}
+	
 	@Test
 	public void testAllowSubTransactions() throws Exception {
 		final boolean VALUE = false;
 		props.setProperty("com.atomikos.icatch.allow_subtransactions", "false");
 		assertEquals(VALUE, props.getAllowSubTransactions());
 	}
+	
+	@Test
+	public void testLogGroupCommit() throws Exception {
+		props.setProperty("com.atomikos.icatch.log_group_commit", "true");
+		props.setProperty("com.atomikos.icatch.log_group_commit_max_batch_size", "128");
+		props.setProperty("com.atomikos.icatch.log_group_commit_linger_time", "2");
+		assertTrue(props.getLogGroupCommit());
+		assertEquals(128, props.getLogGroupCommitMaxBatchSize());
+		assertEquals(2, props.getLogGroupCommitLingerTime());
+	}
+	
+	@Test
+	public void testLogBinaryFormat() throws Exception {
+		props.setProperty("com.atomikos.icatch.log_binary_format", "true");
+		assertTrue(props.getLogBinaryFormat());
+	}
+	
+	@Test
+	public void testLogSegmented() throws Exception {
+		props.setProperty("com.atomikos.icatch.log_segmented", "true");
+		props.setProperty("com.atomikos.icatch.log_segment_size", "1048576");
+		assertTrue(props.getLogSegmented());
+		assertEquals(1048576, props.getLogSegmentSize());
+	}
+	
+	@Test
+	public void testExecutor() throws Exception {
+		props.setProperty("com.atomikos.icatch.executor", "bounded");
+		props.setProperty("com.atomikos.icatch.executor_max_pool_size", "16");
+		assertEquals("bounded", props.getExecutor());
+		assertEquals(16, props.getExecutorMaxPoolSize());
+	}
+	
+	@Test
+	public void testThreaded2pc() throws Exception {
+		props.setProperty("com.atomikos.icatch.threaded_2pc", "true");
+		assertTrue(props.getThreaded2pc());
+	}
+	
+	@Test
+	public void testLastResourceCommit() throws Exception {
+		props.setProperty("com.atomikos.icatch.last_resource_commit", "true");
+		assertTrue(props.getLastResourceCommit());
+	}
+	
+	@Test
+	public void testXaResourceProbeInterval() throws Exception {
+		props.setProperty("com.atomikos.icatch.xa_resource_probe_interval", "5000");
+		assertEquals(5000, props.getXaResourceProbeInterval());
+	}
 }
 
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LineageIndexTestJUnit {
+
+	@Test
+	public void testCollectLineagesMatchesAncestorWalk() {
+		Random random = new Random(7);
+		List<PendingTransactionRecord> records = new ArrayList<PendingTransactionRecord>();
+		for (int i = 0; i < 1000; i++) {
+			String superiorId = random.nextInt(4) == 0 ? null : "tx" + random.nextInt(1100); // some superiors are missing
+			TxState state = random.nextBoolean() ? TxState.IN_DOUBT : TxState.COMMITTING;
+			records.add(new PendingTransactionRecord("tx" + i, state, random.nextInt(100), "domain", superiorId));
+		}
+		LineageIndex index = new LineageIndex(records);
+		PendingTransactionRecord.AncestorPredicate predicate = r -> r.state == TxState.COMMITTING && r.expires < 20;
+		assertEquals(ids(byAncestorWalk(predicate, records)), ids(index.collectLineages(predicate)));
+		PendingTransactionRecord.AncestorPredicate other = r -> r.expires > 90;
+		assertEquals(ids(byAncestorWalk(other, records)), ids(index.collectLineages(other)));
+	}
+
+	@Test
+	public void testDeepLineage() {
+		List<PendingTransactionRecord> records = new ArrayList<PendingTransactionRecord>();
+		records.add(new PendingTransactionRecord("tx0", TxState.COMMITTING, 0, "domain"));
+		for (int i = 1; i < 100000; i++) {
+			records.add(new PendingTransactionRecord("tx" + i, TxState.IN_DOUBT, 0, "domain", "tx" + (i - 1)));
+		}
+		LineageIndex index = new LineageIndex(records);
+		assertEquals(100000, index.collectLineages(r -> r.state == TxState.COMMITTING).size());
+		assertEquals(99999, index.findAllDescendants("tx0").size());
+	}
+
+	@Test
+	public void testCycleDoesNotMatch() {
+		List<PendingTransactionRecord> records = new ArrayList<PendingTransactionRecord>();
+		records.add(new PendingTransactionRecord("a", TxState.IN_DOUBT, 0, "domain", "b"));
+		records.add(new PendingTransactionRecord("b", TxState.IN_DOUBT, 0, "domain", "a"));
+		LineageIndex index = new LineageIndex(records);
+		assertEquals(0, index.collectLineages(r -> r.state == TxState.COMMITTING).size());
+		assertEquals(2, index.findAllDescendants("a").size());
+	}
+
+	@Test
+	public void testFindAllDescendantsExcludesSiblings() {
+		List<PendingTransactionRecord> records = new ArrayList<PendingTransactionRecord>();
+		records.add(new PendingTransactionRecord("root", TxState.IN_DOUBT, 0, "domain"));
+		records.add(new PendingTransactionRecord("child", TxState.IN_DOUBT, 0, "domain", "root"));
+		records.add(new PendingTransactionRecord("grandchild", TxState.IN_DOUBT, 0, "domain", "child"));
+		records.add(new PendingTransactionRecord("sibling", TxState.IN_DOUBT, 0, "domain", "other"));
+		Set<String> descendants = ids(new LineageIndex(records).findAllDescendants("root"));
+		assertEquals(2, descendants.size());
+		assertEquals(true, descendants.contains("grandchild"));
+	}
+
+	private static Collection<PendingTransactionRecord> byAncestorWalk(PendingTransactionRecord.AncestorPredicate predicate, Collection<PendingTransactionRecord> records) {
+		Map<String, PendingTransactionRecord> byId = new HashMap<String, PendingTransactionRecord>();
+		for (PendingTransactionRecord record : records) {
+			byId.put(record.id, record);
+		}
+		Collection<PendingTransactionRecord> ret = new ArrayList<PendingTransactionRecord>();
+		for (PendingTransactionRecord record : records) {
+			Set<String> visited = new HashSet<String>();
+			PendingTransactionRecord current = record;
+			while (current != null && visited.add(current.id)) {
+				if (predicate.holdsFor(current)) {
+					ret.add(record);
+					break;
+				}
+				current = current.superiorId == null ? null : byId.get(current.superiorId);
+			}
+		}
+		return ret;
+	}
+
+	private static Set<String> ids(Collection<PendingTransactionRecord> records) {
+		Set<String> ret = new HashSet<String>();
+		for (PendingTransactionRecord record : records) {
+			ret.add(record.id);
+		}
+		return ret;
+	}
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks for each thread count, measuring both throughput
+ * and the latency distribution (percentiles).
+ * <p>
+ * Arguments are regular expressions of the benchmarks to include (all by default).
+ * The thread counts can be set with the system property
+ * <code>benchmark.threads</code> (default 1,2,4,8,16,32,64).
+ */
+
+public class BenchmarkRunner {
+
+	private static final String DEFAULT_THREADS = "1,2,4,8,16,32,64";
+
+	public static void main(String[] args) throws Exception {
+		List<String> includes = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg != null && !arg.trim().isEmpty()) includes.add(arg.trim());
+		}
+		if (includes.isEmpty()) includes.add(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+
+		for (String threads : System.getProperty("benchmark.threads", DEFAULT_THREADS).split(",")) {
+			OptionsBuilder builder = new OptionsBuilder();
+			for (String include : includes) {
+				builder.include(include);
+			}
+			Options options = builder.
+					threads(Integer.parseInt(threads.trim())).
+					mode(Mode.Throughput).
+					mode(Mode.SampleTime).
+					timeUnit(TimeUnit.MICROSECONDS).
+					forks(1).
+					warmupIterations(3).
+					warmupTime(TimeValue.seconds(2)).
+					measurementIterations(5).
+					measurementTime(TimeValue.seconds(2)).
+					shouldFailOnError(true).
+					build();
+			new Runner(options).run();
+		}
+	}
+
+}
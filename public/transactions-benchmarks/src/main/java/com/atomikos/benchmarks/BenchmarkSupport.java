@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+
+/**
+ * Common setup for the benchmarks: the transaction log goes to a fresh
+ * directory on tmpfs (if available) so disk latency does not dominate.
+ */
+
+final class BenchmarkSupport {
+
+	private static final File TMPFS = new File("/dev/shm");
+
+	private BenchmarkSupport() {
+	}
+
+	static File createLogDirectory() throws IOException {
+		File parent = TMPFS.isDirectory() && TMPFS.canWrite() ? TMPFS : new File(System.getProperty("java.io.tmpdir"));
+		return Files.createTempDirectory(parent.toPath(), "atomikos-benchmark").toFile();
+	}
+
+	/**
+	 * Sets the properties common to all benchmarks; call before initializing the transaction service.
+	 */
+	static void configure(File logDirectory) {
+		ConfigProperties props = Configuration.getConfigProperties();
+		props.setProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME, logDirectory.getAbsolutePath());
+		props.setProperty(ConfigProperties.ENABLE_LOGGING_PROPERTY_NAME, "true");
+		props.setProperty(ConfigProperties.MAX_ACTIVES_PROPERTY_NAME, "-1");
+		props.setProperty(ConfigProperties.FORCE_SHUTDOWN_ON_VM_EXIT_PROPERTY_NAME, "true");
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.atomikos.icatch.CompositeTransaction;
+import com.atomikos.icatch.CompositeTransactionManager;
+import com.atomikos.icatch.config.Configuration;
+
+/**
+ * Measures the core of the commit path: creating a composite transaction
+ * and taking its coordinator through prepare and commit.
+ */
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompositeTransactionBenchmark {
+
+	@Param({ "1", "2", "4" })
+	public int participants;
+
+	private File logDirectory;
+	private CompositeTransactionManager compositeTransactionManager;
+
+	@Setup
+	public void setUp() throws Exception {
+		logDirectory = BenchmarkSupport.createLogDirectory();
+		BenchmarkSupport.configure(logDirectory);
+		Configuration.init();
+		compositeTransactionManager = Configuration.getCompositeTransactionManager();
+	}
+
+	@TearDown
+	public void tearDown() {
+		Configuration.shutdown(true);
+		BenchmarkSupport.delete(logDirectory);
+	}
+
+	@Benchmark
+	public CompositeTransaction createAndRollback() throws Exception {
+		CompositeTransaction ct = createWithParticipants();
+		ct.rollback();
+		return ct;
+	}
+
+	@Benchmark
+	public CompositeTransaction createAndCommit() throws Exception {
+		CompositeTransaction ct = createWithParticipants();
+		ct.commit();
+		return ct;
+	}
+
+	private CompositeTransaction createWithParticipants() throws Exception {
+		CompositeTransaction ct = compositeTransactionManager.createCompositeTransaction(10000);
+		for (int i = 0; i < participants; i++) {
+			ct.addParticipant(new NoOpParticipant());
+		}
+		return ct;
+	}
+
+}
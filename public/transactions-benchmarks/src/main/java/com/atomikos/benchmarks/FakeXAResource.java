@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * An in-memory XAResource that accepts every request, so that benchmarks
+ * only measure the transaction manager itself. Instances with the same
+ * resource manager name are considered the same back-end.
+ */
+
+public class FakeXAResource implements XAResource {
+
+	private final String resourceManagerName;
+	private int transactionTimeout;
+
+	public FakeXAResource(String resourceManagerName) {
+		this.resourceManagerName = resourceManagerName;
+	}
+
+	@Override
+	public void start(Xid xid, int flags) throws XAException {
+	}
+
+	@Override
+	public void end(Xid xid, int flags) throws XAException {
+	}
+
+	@Override
+	public int prepare(Xid xid) throws XAException {
+		return XA_OK;
+	}
+
+	@Override
+	public void commit(Xid xid, boolean onePhase) throws XAException {
+	}
+
+	@Override
+	public void rollback(Xid xid) throws XAException {
+	}
+
+	@Override
+	public void forget(Xid xid) throws XAException {
+	}
+
+	@Override
+	public Xid[] recover(int flag) throws XAException {
+		return new Xid[0];
+	}
+
+	@Override
+	public boolean isSameRM(XAResource other) throws XAException {
+		return other instanceof FakeXAResource && 
+				resourceManagerName.equals(((FakeXAResource) other).resourceManagerName);
+	}
+
+	@Override
+	public int getTransactionTimeout() throws XAException {
+		return transactionTimeout;
+	}
+
+	@Override
+	public boolean setTransactionTimeout(int seconds) throws XAException {
+		transactionTimeout = seconds;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "FakeXAResource " + resourceManagerName;
+	}
+}
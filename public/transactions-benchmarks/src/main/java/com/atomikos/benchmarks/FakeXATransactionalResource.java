@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import javax.transaction.xa.XAResource;
+
+import com.atomikos.datasource.ResourceException;
+import com.atomikos.datasource.xa.XATransactionalResource;
+
+/**
+ * A recoverable resource for {@link FakeXAResource} instances with the same name.
+ */
+
+public class FakeXATransactionalResource extends XATransactionalResource {
+
+	public FakeXATransactionalResource(String uniqueResourceName) {
+		super(uniqueResourceName);
+	}
+
+	@Override
+	protected XAResource refreshXAConnection() throws ResourceException {
+		return new FakeXAResource(getName());
+	}
+
+}
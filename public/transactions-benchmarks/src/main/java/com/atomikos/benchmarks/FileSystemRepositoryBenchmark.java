@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+import com.atomikos.recovery.fs.FileSystemRepository;
+
+/**
+ * Measures forced writes of log records, as done for every COMMITTING
+ * and TERMINATED transition of a two-phase commit.
+ */
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileSystemRepositoryBenchmark {
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	@Param({ "false", "true" })
+	public boolean groupCommit;
+
+	@Param({ "false", "true" })
+	public boolean binaryFormat;
+
+	private File logDirectory;
+	private FileSystemRepository repository;
+
+	@State(Scope.Thread)
+	public static class Record {
+
+		PendingTransactionRecord committing;
+
+		@Setup
+		public void setUp() {
+			String id = "benchmark-" + THREAD_COUNT.incrementAndGet();
+			committing = new PendingTransactionRecord(id, TxState.COMMITTING, Long.MAX_VALUE, "benchmark");
+		}
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		logDirectory = BenchmarkSupport.createLogDirectory();
+		BenchmarkSupport.configure(logDirectory);
+		ConfigProperties props = Configuration.getConfigProperties();
+		props.setProperty(ConfigProperties.LOG_GROUP_COMMIT, String.valueOf(groupCommit));
+		props.setProperty(ConfigProperties.LOG_BINARY_FORMAT, String.valueOf(binaryFormat));
+		repository = new FileSystemRepository();
+		repository.init();
+	}
+
+	/**
+	 * Starts each iteration with an empty log file, so the log does not fill up tmpfs.
+	 */
+	@Setup(Level.Iteration)
+	public void checkpoint() throws Exception {
+		repository.writeCheckpoint(Collections.<PendingTransactionRecord>emptyList());
+	}
+
+	@TearDown
+	public void tearDown() {
+		repository.close();
+		BenchmarkSupport.delete(logDirectory);
+	}
+
+	@Benchmark
+	public void put(Record record) throws Exception {
+		repository.put(record.committing.id, record.committing);
+	}
+
+}
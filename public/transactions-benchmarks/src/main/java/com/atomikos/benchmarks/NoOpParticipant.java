@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import java.util.Map;
+
+import com.atomikos.icatch.Participant;
+
+/**
+ * A participant that votes yes and does nothing else.
+ */
+
+public class NoOpParticipant implements Participant {
+
+	@Override
+	public String getURI() {
+		return null;
+	}
+
+	@Override
+	public void setCascadeList(Map<String, Integer> allParticipants) {
+	}
+
+	@Override
+	public void setGlobalSiblingCount(int count) {
+	}
+
+	@Override
+	public int prepare() {
+		return Participant.READ_ONLY + 1;
+	}
+
+	@Override
+	public void commit(boolean onePhase) {
+	}
+
+	@Override
+	public void rollback() {
+	}
+
+	@Override
+	public void forget() {
+	}
+
+	@Override
+	public String getResourceName() {
+		return null;
+	}
+
+}
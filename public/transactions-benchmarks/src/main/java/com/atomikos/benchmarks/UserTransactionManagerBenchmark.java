@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Transaction;
+import javax.transaction.xa.XAResource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.jta.UserTransactionManager;
+
+/**
+ * Measures a JTA transaction from begin to commit, enlisting one fake
+ * XAResource per participant.
+ */
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserTransactionManagerBenchmark {
+
+	private static final String RESOURCE_NAME_PREFIX = "fake";
+
+	@Param({ "1", "2", "4" })
+	public int participants;
+
+	private File logDirectory;
+	private UserTransactionManager userTransactionManager;
+
+	@State(Scope.Thread)
+	public static class Resources {
+
+		XAResource[] xaResources;
+
+		@Setup
+		public void setUp(UserTransactionManagerBenchmark benchmark) {
+			xaResources = new XAResource[benchmark.participants];
+			for (int i = 0; i < xaResources.length; i++) {
+				xaResources[i] = new FakeXAResource(RESOURCE_NAME_PREFIX + i);
+			}
+		}
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		logDirectory = BenchmarkSupport.createLogDirectory();
+		BenchmarkSupport.configure(logDirectory);
+		userTransactionManager = new UserTransactionManager();
+		userTransactionManager.setForceShutdown(true);
+		userTransactionManager.init();
+		for (int i = 0; i < participants; i++) {
+			Configuration.addResource(new FakeXATransactionalResource(RESOURCE_NAME_PREFIX + i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (int i = 0; i < participants; i++) {
+			Configuration.removeResource(RESOURCE_NAME_PREFIX + i);
+		}
+		userTransactionManager.close();
+		BenchmarkSupport.delete(logDirectory);
+	}
+
+	@Benchmark
+	public Transaction beginAndCommit(Resources resources) throws Exception {
+		userTransactionManager.begin();
+		Transaction tx = userTransactionManager.getTransaction();
+		for (XAResource xaResource : resources.xaResources) {
+			tx.enlistResource(xaResource);
+			tx.delistResource(xaResource, XAResource.TMSUCCESS);
+		}
+		userTransactionManager.commit();
+		return tx;
+	}
+
+}
@@ -0,0 +1,4 @@
+package com.atomikos.benchmarks.generated;
+public class CompositeTransactionBenchmark_jmhType extends CompositeTransactionBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.atomikos.benchmarks.generated;
+public class FileSystemRepositoryBenchmark_Record_jmhType extends FileSystemRepositoryBenchmark_Record_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.atomikos.benchmarks.generated;
+public class FileSystemRepositoryBenchmark_jmhType extends FileSystemRepositoryBenchmark_jmhType_B3 {
+}
+
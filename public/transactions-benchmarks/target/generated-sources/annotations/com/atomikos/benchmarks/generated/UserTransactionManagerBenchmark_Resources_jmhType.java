@@ -0,0 +1,4 @@
+package com.atomikos.benchmarks.generated;
+public class UserTransactionManagerBenchmark_Resources_jmhType extends UserTransactionManagerBenchmark_Resources_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.atomikos.benchmarks.generated;
+public class UserTransactionManagerBenchmark_jmhType extends UserTransactionManagerBenchmark_jmhType_B3 {
+}
+
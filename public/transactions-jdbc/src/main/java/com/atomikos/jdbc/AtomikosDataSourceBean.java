@@ -51,6 +51,7 @@ extends AbstractDataSourceBean
 	private String xaDataSourceClassName;
 	private transient XADataSource xaDataSource;
 	private boolean localTransactionMode = true;
+	private boolean nonReflectiveProxies = false;
 	
 	public AtomikosDataSourceBean() {
 	}
@@ -136,6 +137,24 @@ extends AbstractDataSourceBean
 	    this.localTransactionMode = localTransactionMode;
 	}
 	
+	public boolean getNonReflectiveProxies() {
+		return nonReflectiveProxies;
+	}
+	
+	/**
+	 * Sets nonReflectiveProxies. Optional, defaults to false.
+	 * 
+	 * @param nonReflectiveProxies If true, then connections and statements are 
+	 * handed out as plain classes that call the vendor instances directly, 
+	 * instead of as dynamic proxies. This avoids the cost of reflection on every 
+	 * JDBC call, but the returned objects only implement the java.sql interfaces: 
+	 * vendor-specific interfaces must be obtained via unwrap, rather than by 
+	 * casting.
+	 */
+	public void setNonReflectiveProxies(boolean nonReflectiveProxies) {
+		this.nonReflectiveProxies = nonReflectiveProxies;
+	}
+	
 	protected com.atomikos.datasource.pool.ConnectionFactory<Connection> doInit() throws Exception 
 	{
 		if (xaDataSource == null)
@@ -161,7 +180,8 @@ extends AbstractDataSourceBean
 				" xaProperties=" + PropertyUtils.toString(xaProperties) + "," +
 				" loginTimeout=" + getLoginTimeout() + "," + 
 				" maxLifetime=" + getMaxLifetime() + "," + 
-				" localTransactionMode=" + getLocalTransactionMode() +
+				" localTransactionMode=" + getLocalTransactionMode() + "," + 
+				" nonReflectiveProxies=" + getNonReflectiveProxies() +
 				"]"
 				);
 		
@@ -187,7 +207,7 @@ extends AbstractDataSourceBean
 			}
 			
 			JdbcTransactionalResource tr = new JdbcTransactionalResource(getUniqueResourceName() , xaDataSource);
-			ConnectionFactory<Connection> cf = new AtomikosXAConnectionFactory(xaDataSource, tr, this);
+			ConnectionFactory<Connection> cf = new AtomikosXAConnectionFactory(xaDataSource, tr, this, nonReflectiveProxies);
 			Configuration.addResource ( tr );
 			
 			return cf;
@@ -223,20 +243,22 @@ extends AbstractDataSourceBean
 		private final JdbcTransactionalResource jdbcTransactionalResource;
 		private final XADataSource xaDataSource;
 		private final ConnectionPoolProperties props;
+		private final boolean nonReflectiveProxies;
 		
 		
-		private AtomikosXAConnectionFactory ( XADataSource xaDataSource, JdbcTransactionalResource jdbcTransactionalResource, ConnectionPoolProperties props ) 
+		private AtomikosXAConnectionFactory ( XADataSource xaDataSource, JdbcTransactionalResource jdbcTransactionalResource, ConnectionPoolProperties props, boolean nonReflectiveProxies ) 
 		{
 			this.xaDataSource = xaDataSource;
 			this.jdbcTransactionalResource = jdbcTransactionalResource;
 			this.props = props;
+			this.nonReflectiveProxies = nonReflectiveProxies;
 		}
 
 		public XPooledConnection<Connection> createPooledConnection() throws CreateConnectionException
 		{
 			try {
 				XAConnection xaConnection = xaDataSource.getXAConnection();
-				return new AtomikosXAPooledConnection ( xaConnection, jdbcTransactionalResource, props );
+				return new AtomikosXAPooledConnection ( xaConnection, jdbcTransactionalResource, props, nonReflectiveProxies );
 			} catch ( SQLException e ) {
 				String msg = "XAConnectionFactory: failed to create pooled connection - DBMS down or unreachable?";
 				LOGGER.logWarning ( msg , e );
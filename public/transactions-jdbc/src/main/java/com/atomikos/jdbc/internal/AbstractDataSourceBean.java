@@ -24,6 +24,7 @@ import com.atomikos.datasource.pool.ConnectionFactory;
 import com.atomikos.datasource.pool.ConnectionPool;
 import com.atomikos.datasource.pool.ConnectionPoolException;
 import com.atomikos.datasource.pool.ConnectionPoolProperties;
+import com.atomikos.datasource.pool.ConnectionPoolWithConcurrentBag;
 import com.atomikos.datasource.pool.ConnectionPoolWithConcurrentValidation;
 import com.atomikos.datasource.pool.ConnectionPoolWithSynchronizedValidation;
 import com.atomikos.datasource.pool.CreateConnectionException;
@@ -64,6 +65,9 @@ implements DataSource, ConnectionPoolProperties, Referenceable, Serializable, Or
 	private int maxLifetime = DEFAULT_MAX_LIFETIME;
 
 	private boolean enableConcurrentConnectionValidation = true;
+	private boolean enableLockFreeBorrowing = false;
+	private int maxConcurrentConnectionCreations = DEFAULT_MAX_CONCURRENT_CONNECTION_CREATIONS;
+	private boolean asynchronousWarmUp = false;
 	
 	protected void throwAtomikosSQLException ( String msg ) throws AtomikosSQLException 
 	{
@@ -251,6 +255,54 @@ implements DataSource, ConnectionPoolProperties, Referenceable, Serializable, Or
 	public boolean getConcurrentConnectionValidation() {
 		return enableConcurrentConnectionValidation;
 	}
+	
+	/**
+	 * Sets whether or not to borrow connections without locking the pool.
+	 * Useful under high concurrency. This implies concurrent connection validation.
+	 * Optional, defaults to false.
+	 * 
+	 * @param value
+	 */
+	public void setLockFreeBorrowing(boolean value) {
+		this.enableLockFreeBorrowing = value;
+	}
+	
+	public boolean getLockFreeBorrowing() {
+		return enableLockFreeBorrowing;
+	}
+	
+	/**
+	 * Sets the maximum number of connections that can be created at the same time, in the background.
+	 * Also used to create the initial minPoolSize connections in parallel.
+	 * Optional, defaults to 2.
+	 * 
+	 * @param value
+	 */
+	public void setMaxConcurrentConnectionCreations(int value) {
+		this.maxConcurrentConnectionCreations = value;
+	}
+	
+	@Override
+	public int getMaxConcurrentConnectionCreations() {
+		return maxConcurrentConnectionCreations;
+	}
+	
+	/**
+	 * Sets whether or not to create the initial minPoolSize connections in the background,
+	 * so init() returns before the pool is filled. A ConnectionPoolReadyEvent is published
+	 * when the pool is filled.
+	 * Optional, defaults to false.
+	 * 
+	 * @param value
+	 */
+	public void setAsynchronousWarmUp(boolean value) {
+		this.asynchronousWarmUp = value;
+	}
+	
+	@Override
+	public boolean getAsynchronousWarmUp() {
+		return asynchronousWarmUp;
+	}
 
 	public int poolAvailableSize() {
 		return connectionPool.availableSize();
@@ -285,6 +337,8 @@ implements DataSource, ConnectionPoolProperties, Referenceable, Serializable, Or
 			throwAtomikosSQLException ( "Property 'maxPoolSize' must be greater than 0, was: " + maxPoolSize );
 		if ( minPoolSize < 0 || minPoolSize > maxPoolSize )
 			throwAtomikosSQLException("Property 'minPoolSize' must be at least 0 and at most maxPoolSize, was: " + minPoolSize);
+		if ( maxConcurrentConnectionCreations < 1 )
+			throwAtomikosSQLException ( "Property 'maxConcurrentConnectionCreations' must be greater than 0, was: " + maxConcurrentConnectionCreations );
 		if ( getUniqueResourceName() == null )
 			throwAtomikosSQLException("Property 'uniqueResourceName' cannot be null");
 		if ( getMinPoolSize() == DEFAULT_POOL_SIZE ) {
@@ -293,7 +347,9 @@ implements DataSource, ConnectionPoolProperties, Referenceable, Serializable, Or
 		
 		try {
 			ConnectionFactory<Connection> cf = doInit();
-			if (enableConcurrentConnectionValidation) {
+			if (enableLockFreeBorrowing) {
+				connectionPool = new ConnectionPoolWithConcurrentBag<Connection>(cf, this);
+			} else if (enableConcurrentConnectionValidation) {
 				connectionPool = new ConnectionPoolWithConcurrentValidation<Connection>(cf, this);
 			} else {
 				if ( getTestQuery() != null ) 
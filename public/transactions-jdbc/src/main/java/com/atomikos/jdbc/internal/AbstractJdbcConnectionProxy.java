@@ -29,6 +29,12 @@ public abstract class AbstractJdbcConnectionProxy extends DynamicProxySupport<Co
 
     private List<Statement> statements = new ArrayList<Statement>();
 
+    /**
+     * True if statements should be wrapped by plain delegating classes 
+     * instead of dynamic proxies. 
+     */
+    protected boolean nonReflectiveProxies = false;
+
     public AbstractJdbcConnectionProxy(Connection delegate) {
         super(delegate);
     }
@@ -53,8 +59,13 @@ public abstract class AbstractJdbcConnectionProxy extends DynamicProxySupport<Co
     }
 
 	private <S extends Statement> S createProxyStatement(S s) {
-		AtomikosJdbcStatementProxy<S> ajsp = new AtomikosJdbcStatementProxy<>(this, s);
-        S proxy = ajsp.createDynamicProxy();
+		S proxy = null;
+		if (nonReflectiveProxies) {
+			proxy = AtomikosJdbcStatementWrapper.wrap(this, s);
+		} else {
+			AtomikosJdbcStatementProxy<S> ajsp = new AtomikosJdbcStatementProxy<>(this, s);
+			proxy = ajsp.createDynamicProxy();
+		}
         addStatement(s);
         return proxy;
 	}
@@ -176,9 +176,25 @@ public class AtomikosJdbcConnectionProxy extends AbstractJdbcConnectionProxy {
 
     @Override
     protected void handleInvocationException(Throwable e) throws Throwable {
-        sessionHandleState.notifySessionErrorOccurred();
+        notifySessionErrorOccurred();
         throw e;
     }
+
+    void notifySessionErrorOccurred() {
+        sessionHandleState.notifySessionErrorOccurred();
+    }
+
+    /**
+     * Creates a connection that calls this instance (or the delegate) directly, 
+     * as a faster alternative to createDynamicProxy. The result only implements 
+     * java.sql.Connection, so vendor-specific interfaces need unwrap.
+     * 
+     * @return The connection to hand out to the application.
+     */
+    public Connection createNonReflectiveProxy() {
+        nonReflectiveProxies = true;
+        return new AtomikosJdbcConnectionWrapper(this, delegate);
+    }
     
     @Override
     public String toString() {
@@ -0,0 +1,656 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.jdbc.internal;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * A connection that calls the vendor connection directly, instead of via reflection
+ * like the dynamic proxy of AtomikosJdbcConnectionProxy. The logic of that class
+ * (enlisting, restrictions during global transactions, closing pending statements)
+ * is still used: only the dispatch is different.
+ * <p>
+ * Unlike the dynamic proxy, this only implements java.sql.Connection: vendor-specific 
+ * interfaces are only available via unwrap.
+ */
+
+class AtomikosJdbcConnectionWrapper implements Connection {
+
+	private final AtomikosJdbcConnectionProxy handler;
+	private final Connection delegate;
+
+	AtomikosJdbcConnectionWrapper(AtomikosJdbcConnectionProxy handler, Connection delegate) {
+		this.handler = handler;
+		this.delegate = delegate;
+	}
+
+	private void assertNotClosed(String methodName) throws SQLException {
+		if (handler.isClosed()) {
+			handler.throwInvocationAfterClose(methodName);
+		}
+	}
+
+	private void assertNotClosedForClientInfo() throws SQLClientInfoException {
+		try {
+			assertNotClosed("setClientInfo");
+		} catch (SQLException e) {
+			throw new SQLClientInfoException(e.getMessage(), null, e);
+		}
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		assertNotClosed("createStatement");
+		try {
+			return handler.createStatement();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		assertNotClosed("prepareStatement");
+		try {
+			return handler.prepareStatement(sql);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		assertNotClosed("prepareCall");
+		try {
+			return handler.prepareCall(sql);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		assertNotClosed("nativeSQL");
+		try {
+			return delegate.nativeSQL(sql);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		assertNotClosed("setAutoCommit");
+		try {
+			handler.setAutoCommit(autoCommit);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		assertNotClosed("getAutoCommit");
+		try {
+			return handler.getAutoCommit();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		assertNotClosed("commit");
+		try {
+			handler.commit();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		assertNotClosed("rollback");
+		try {
+			handler.rollback();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			handler.close();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return handler.isClosed();
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		assertNotClosed("getMetaData");
+		try {
+			return delegate.getMetaData();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		assertNotClosed("setReadOnly");
+		try {
+			delegate.setReadOnly(readOnly);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		assertNotClosed("isReadOnly");
+		try {
+			return delegate.isReadOnly();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		assertNotClosed("setCatalog");
+		try {
+			delegate.setCatalog(catalog);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		assertNotClosed("getCatalog");
+		try {
+			return delegate.getCatalog();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		assertNotClosed("setTransactionIsolation");
+		try {
+			delegate.setTransactionIsolation(level);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		assertNotClosed("getTransactionIsolation");
+		try {
+			return delegate.getTransactionIsolation();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		assertNotClosed("getWarnings");
+		try {
+			return delegate.getWarnings();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		assertNotClosed("clearWarnings");
+		try {
+			delegate.clearWarnings();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		assertNotClosed("createStatement");
+		try {
+			return handler.createStatement(resultSetType, resultSetConcurrency);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		assertNotClosed("prepareStatement");
+		try {
+			return handler.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		assertNotClosed("prepareCall");
+		try {
+			return handler.prepareCall(sql, resultSetType, resultSetConcurrency);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		assertNotClosed("getTypeMap");
+		try {
+			return delegate.getTypeMap();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		assertNotClosed("setTypeMap");
+		try {
+			delegate.setTypeMap(map);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		assertNotClosed("setHoldability");
+		try {
+			delegate.setHoldability(holdability);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		assertNotClosed("getHoldability");
+		try {
+			return delegate.getHoldability();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		assertNotClosed("setSavepoint");
+		try {
+			return handler.setSavepoint();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		assertNotClosed("setSavepoint");
+		try {
+			return handler.setSavepoint(name);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		assertNotClosed("rollback");
+		try {
+			handler.rollback(savepoint);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		assertNotClosed("releaseSavepoint");
+		try {
+			handler.releaseSavepoint(savepoint);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		assertNotClosed("createStatement");
+		try {
+			return handler.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		assertNotClosed("prepareStatement");
+		try {
+			return handler.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		assertNotClosed("prepareCall");
+		try {
+			return handler.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		assertNotClosed("prepareStatement");
+		try {
+			return handler.prepareStatement(sql, autoGeneratedKeys);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		assertNotClosed("prepareStatement");
+		try {
+			return handler.prepareStatement(sql, columnIndexes);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		assertNotClosed("prepareStatement");
+		try {
+			return handler.prepareStatement(sql, columnNames);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		assertNotClosed("createClob");
+		try {
+			return delegate.createClob();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		assertNotClosed("createBlob");
+		try {
+			return delegate.createBlob();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		assertNotClosed("createNClob");
+		try {
+			return delegate.createNClob();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		assertNotClosed("createSQLXML");
+		try {
+			return delegate.createSQLXML();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		assertNotClosed("isValid");
+		try {
+			return delegate.isValid(timeout);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		assertNotClosedForClientInfo();
+		try {
+			delegate.setClientInfo(name, value);
+		} catch (SQLClientInfoException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		assertNotClosedForClientInfo();
+		try {
+			delegate.setClientInfo(properties);
+		} catch (SQLClientInfoException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		assertNotClosed("getClientInfo");
+		try {
+			return delegate.getClientInfo(name);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		assertNotClosed("getClientInfo");
+		try {
+			return delegate.getClientInfo();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		assertNotClosed("createArrayOf");
+		try {
+			return delegate.createArrayOf(typeName, elements);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		assertNotClosed("createStruct");
+		try {
+			return delegate.createStruct(typeName, attributes);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		assertNotClosed("setSchema");
+		try {
+			delegate.setSchema(schema);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		assertNotClosed("getSchema");
+		try {
+			return delegate.getSchema();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		assertNotClosed("abort");
+		try {
+			delegate.abort(executor);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		assertNotClosed("setNetworkTimeout");
+		try {
+			delegate.setNetworkTimeout(executor, milliseconds);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		assertNotClosed("getNetworkTimeout");
+		try {
+			return delegate.getNetworkTimeout();
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		assertNotClosed("unwrap");
+		try {
+			return delegate.unwrap(iface);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		assertNotClosed("isWrapperFor");
+		try {
+			return delegate.isWrapperFor(iface);
+		} catch (SQLException | RuntimeException e) {
+			handler.notifySessionErrorOccurred();
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return handler.toString();
+	}
+
+}
@@ -15,6 +15,7 @@ import com.atomikos.icatch.HeurCommitException;
 import com.atomikos.icatch.HeurHazardException;
 import com.atomikos.icatch.HeurMixedException;
 import com.atomikos.icatch.HeurRollbackException;
+import com.atomikos.icatch.OnePhaseParticipant;
 import com.atomikos.icatch.Participant;
 import com.atomikos.icatch.RollbackException;
 import com.atomikos.icatch.SysException;
@@ -34,7 +35,7 @@ import com.atomikos.logging.LoggerFactory;
  *
  */
 
-class AtomikosNonXAParticipant implements Participant
+class AtomikosNonXAParticipant implements OnePhaseParticipant
 {
 	private static final Logger LOGGER = LoggerFactory.createLogger(AtomikosNonXAParticipant.class);
 
@@ -146,6 +147,14 @@ class AtomikosNonXAParticipant implements Participant
 		this.readOnly = readOnly;
 	}
 
+	/**
+	 * @see com.atomikos.icatch.OnePhaseParticipant#isOnePhaseOnly()
+	 */
+	public boolean isOnePhaseOnly ()
+	{
+		return !readOnly;
+	}
+
 
 	@Override
 	public String toString() {
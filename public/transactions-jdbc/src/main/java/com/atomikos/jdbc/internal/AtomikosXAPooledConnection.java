@@ -37,14 +37,24 @@ public class AtomikosXAPooledConnection extends AbstractXPooledConnection<Connec
 	private XAConnection xaConnection;
 	private Connection connection;
 	private final boolean localTransactionMode;
+	private final boolean nonReflectiveProxies;
 	
 
 	public AtomikosXAPooledConnection ( XAConnection xaConnection, 
 			JdbcTransactionalResource jdbcTransactionalResource, 
 			ConnectionPoolProperties props ) 
 	throws SQLException 
+	{
+		this ( xaConnection , jdbcTransactionalResource , props , false );
+	}
+
+	public AtomikosXAPooledConnection ( XAConnection xaConnection, 
+			JdbcTransactionalResource jdbcTransactionalResource, 
+			ConnectionPoolProperties props, boolean nonReflectiveProxies ) 
+	throws SQLException 
 	{
 		super ( props );
+		this.nonReflectiveProxies = nonReflectiveProxies;
 		this.xaConnection = xaConnection;
 		this.connection = xaConnection.getConnection();
 		this.sessionHandleState = new SessionHandleState ( jdbcTransactionalResource, xaConnection.getXAResource());
@@ -91,6 +101,7 @@ public class AtomikosXAPooledConnection extends AbstractXPooledConnection<Connec
 		if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": creating connection proxy..." );
 		JdbcConnectionProxyHelper.setIsolationLevel ( connection , getDefaultIsolationLevel() );
 		AtomikosJdbcConnectionProxy proxy = new AtomikosJdbcConnectionProxy(connection, sessionHandleState, localTransactionMode);
+		if ( nonReflectiveProxies ) return proxy.createNonReflectiveProxy();
 		return proxy.createDynamicProxy();
 	}
 
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.jdbc.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.atomikos.datasource.xa.session.SessionHandleState;
+import com.atomikos.icatch.CompositeTransaction;
+import com.atomikos.icatch.CompositeTransactionManager;
+import com.atomikos.icatch.Synchronization;
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.jta.TransactionManagerImp;
+import com.atomikos.recovery.TxState;
+
+public class AtomikosJdbcConnectionWrapperTestJUnit {
+
+	@Mock
+	private Connection mockedVendorConnection;
+	@Mock
+	private Statement mockedVendorStatement;
+	@Mock
+	private PreparedStatement mockedVendorPreparedStatement;
+	@Mock
+	private SessionHandleState mockedSessionHandleState;
+	@Mock
+	private CompositeTransactionManager mockedCTM;
+	@Mock
+	private CompositeTransaction mockedCT;
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		Mockito.when(mockedVendorConnection.createStatement()).thenReturn(mockedVendorStatement);
+		Mockito.when(mockedVendorConnection.prepareStatement(Mockito.anyString())).thenReturn(mockedVendorPreparedStatement);
+		Mockito.when(mockedCT.getProperty(TransactionManagerImp.JTA_PROPERTY_NAME)).thenReturn("true");
+		Mockito.when(mockedCT.getState()).thenReturn(TxState.ACTIVE);
+		Configuration.installCompositeTransactionManager(mockedCTM);
+		AtomikosJdbcConnectionProxy handler = new AtomikosJdbcConnectionProxy(mockedVendorConnection, mockedSessionHandleState, false);
+		connection = handler.createNonReflectiveProxy();
+	}
+
+	@After
+	public void tearDown() {
+		Configuration.installCompositeTransactionManager(null);
+	}
+
+	@Test
+	public void testCreateStatementEnlists() throws Exception {
+		givenJtaTransaction();
+		connection.createStatement();
+		Mockito.verify(mockedSessionHandleState).notifyBeforeUse(mockedCT);
+		Mockito.verify(mockedCT).registerSynchronization(Mockito.any(Synchronization.class));
+	}
+
+	@Test
+	public void testPrepareStatementEnlists() throws Exception {
+		givenJtaTransaction();
+		connection.prepareStatement("select 1");
+		Mockito.verify(mockedSessionHandleState).notifyBeforeUse(mockedCT);
+		Mockito.verify(mockedCT).registerSynchronization(Mockito.any(Synchronization.class));
+	}
+
+	@Test
+	public void testCommitNotAllowedInJtaTransaction() throws Exception {
+		givenJtaTransaction();
+		try {
+			connection.commit();
+			fail("commit should not be allowed in a JTA transaction");
+		} catch (SQLException expected) {
+		}
+		Mockito.verify(mockedVendorConnection, Mockito.never()).commit();
+	}
+
+	@Test
+	public void testSetAutoCommitTrueNotAllowedInJtaTransaction() throws Exception {
+		givenJtaTransaction();
+		try {
+			connection.setAutoCommit(true);
+			fail("setAutoCommit(true) should not be allowed in a JTA transaction");
+		} catch (SQLException expected) {
+		}
+		Mockito.verify(mockedVendorConnection, Mockito.never()).setAutoCommit(true);
+	}
+
+	@Test
+	public void testCallsAfterCloseThrow() throws Exception {
+		assertFalse(connection.isClosed());
+		connection.close();
+		assertTrue(connection.isClosed());
+		try {
+			connection.createStatement();
+			fail("calls after close should not be allowed");
+		} catch (SQLException expected) {
+		}
+		Mockito.verify(mockedVendorConnection, Mockito.never()).createStatement();
+		Mockito.verify(mockedSessionHandleState).notifySessionClosed();
+	}
+
+	@Test
+	public void testCloseClosesPendingStatements() throws Exception {
+		givenJtaTransaction();
+		connection.createStatement();
+		connection.prepareStatement("select 1");
+		connection.close();
+		Mockito.verify(mockedVendorStatement).close();
+		Mockito.verify(mockedVendorPreparedStatement).close();
+	}
+
+	private void givenJtaTransaction() {
+		Mockito.when(mockedCTM.getCompositeTransaction()).thenReturn(mockedCT);
+		Mockito.when(mockedSessionHandleState.isActiveInTransaction(mockedCT)).thenReturn(true);
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.jdbc.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AtomikosJdbcStatementWrapperTestJUnit {
+
+	private AbstractJdbcConnectionProxy connection;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = Mockito.mock(AbstractJdbcConnectionProxy.class);
+	}
+
+	@Test
+	public void testWrapKeepsTheStatementType() throws Exception {
+		Statement s = AtomikosJdbcStatementWrapper.wrap(connection, Mockito.mock(Statement.class));
+		assertFalse(s instanceof PreparedStatement);
+		PreparedStatement ps = AtomikosJdbcStatementWrapper.wrap(connection, Mockito.mock(PreparedStatement.class));
+		assertFalse(ps instanceof CallableStatement);
+		CallableStatement cs = AtomikosJdbcStatementWrapper.wrap(connection, Mockito.mock(CallableStatement.class));
+		assertTrue(cs instanceof AtomikosJdbcCallableStatementWrapper);
+	}
+
+	@Test
+	public void testCallsAreDelegated() throws Exception {
+		PreparedStatement vendor = Mockito.mock(PreparedStatement.class);
+		PreparedStatement ps = AtomikosJdbcStatementWrapper.wrap(connection, vendor);
+		ps.setInt(1, 10);
+		ps.executeUpdate();
+		Mockito.verify(vendor).setInt(1, 10);
+		Mockito.verify(vendor).executeUpdate();
+	}
+
+	@Test
+	public void testCloseRemovesStatementFromConnection() throws Exception {
+		Statement vendor = Mockito.mock(Statement.class);
+		Statement s = AtomikosJdbcStatementWrapper.wrap(connection, vendor);
+		s.close();
+		Mockito.verify(vendor).close();
+		Mockito.verify(connection).removeStatement(vendor);
+	}
+
+}
@@ -26,6 +26,7 @@ import com.atomikos.datasource.pool.ConnectionFactory;
 import com.atomikos.datasource.pool.ConnectionPool;
 import com.atomikos.datasource.pool.ConnectionPoolException;
 import com.atomikos.datasource.pool.ConnectionPoolProperties;
+import com.atomikos.datasource.pool.ConnectionPoolWithConcurrentBag;
 import com.atomikos.datasource.pool.ConnectionPoolWithConcurrentValidation;
 import com.atomikos.datasource.pool.ConnectionPoolWithSynchronizedValidation;
 import com.atomikos.datasource.pool.CreateConnectionException;
@@ -144,6 +145,9 @@ Referenceable, Serializable, OrderedLifecycleComponent {
 
 	private boolean ignoreSessionTransactedFlag = true;
 	private boolean enableConcurrentConnectionValidation = true;
+	private boolean enableLockFreeBorrowing = false;
+	private int maxConcurrentConnectionCreations = DEFAULT_MAX_CONCURRENT_CONNECTION_CREATIONS;
+	private boolean asynchronousWarmUp = false;
 	
 	
 	public AtomikosConnectionFactoryBean() {
@@ -334,12 +338,16 @@ Referenceable, Serializable, OrderedLifecycleComponent {
 			throwAtomikosJMSException("Property 'maxPoolSize' of class AtomikosConnectionFactoryBean must be greater than 0, was: " + maxPoolSize);
 		if (minPoolSize < 0 || minPoolSize > maxPoolSize)
 			throwAtomikosJMSException("Property 'minPoolSize' of class AtomikosConnectionFactoryBean must be at least 0 and at most maxPoolSize, was: " + minPoolSize);
+		if (maxConcurrentConnectionCreations < 1)
+			throwAtomikosJMSException("Property 'maxConcurrentConnectionCreations' of class AtomikosConnectionFactoryBean must be greater than 0, was: " + maxConcurrentConnectionCreations);
 		if (getUniqueResourceName() == null)
 			throwAtomikosJMSException("Property 'uniqueResourceName' of class AtomikosConnectionFactoryBean cannot be null.");
 		
 		try {
 			ConnectionFactory<Connection> cf = doInit();
-			if (enableConcurrentConnectionValidation) {
+			if (enableLockFreeBorrowing) {
+				connectionPool = new ConnectionPoolWithConcurrentBag<Connection>(cf, this);
+			} else if (enableConcurrentConnectionValidation) {
 				connectionPool = new ConnectionPoolWithConcurrentValidation<Connection>(cf, this);
 			} else {
 				connectionPool = new ConnectionPoolWithSynchronizedValidation<Connection>(cf, this);
@@ -383,6 +391,9 @@ Referenceable, Serializable, OrderedLifecycleComponent {
 				" localTransactionMode=" + localTransactionMode + "," + 
 				" maxLifetime=" + maxLifetime + "," +
 				" enableConcurrentConnectionValidation=" + enableConcurrentConnectionValidation + "," +
+				" enableLockFreeBorrowing=" + enableLockFreeBorrowing + "," +
+				" maxConcurrentConnectionCreations=" + maxConcurrentConnectionCreations + "," +
+				" asynchronousWarmUp=" + asynchronousWarmUp + "," +
 				" ignoreSessionTransactedFlag=" + ignoreSessionTransactedFlag +
 				"]"
 				);
@@ -664,6 +675,54 @@ Referenceable, Serializable, OrderedLifecycleComponent {
 	public boolean getConcurrentConnectionValidation() {
 		return enableConcurrentConnectionValidation;
 	}
+	
+	/**
+	 * Sets whether or not to borrow connections without locking the pool.
+	 * Useful under high concurrency. This implies concurrent connection validation.
+	 * Optional, defaults to false.
+	 * 
+	 * @param value
+	 */
+	public void setLockFreeBorrowing(boolean value) {
+		this.enableLockFreeBorrowing = value;
+	}
+	
+	public boolean getLockFreeBorrowing() {
+		return enableLockFreeBorrowing;
+	}
+	
+	/**
+	 * Sets the maximum number of connections that can be created at the same time, in the background.
+	 * Also used to create the initial minPoolSize connections in parallel.
+	 * Optional, defaults to 2.
+	 * 
+	 * @param value
+	 */
+	public void setMaxConcurrentConnectionCreations(int value) {
+		this.maxConcurrentConnectionCreations = value;
+	}
+	
+	@Override
+	public int getMaxConcurrentConnectionCreations() {
+		return maxConcurrentConnectionCreations;
+	}
+	
+	/**
+	 * Sets whether or not to create the initial minPoolSize connections in the background,
+	 * so init() returns before the pool is filled. A ConnectionPoolReadyEvent is published
+	 * when the pool is filled.
+	 * Optional, defaults to false.
+	 * 
+	 * @param value
+	 */
+	public void setAsynchronousWarmUp(boolean value) {
+		this.asynchronousWarmUp = value;
+	}
+	
+	@Override
+	public boolean getAsynchronousWarmUp() {
+		return asynchronousWarmUp;
+	}
 
 	
 	private static class AtomikosJmsXAConnectionFactory implements ConnectionFactory<Connection>
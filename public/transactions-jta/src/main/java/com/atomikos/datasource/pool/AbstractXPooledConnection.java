@@ -138,13 +138,14 @@ public abstract class AbstractXPooledConnection<ConnectionType> implements XPool
 	}
 	
 	public boolean markAsBeingAcquiredIfAvailable() {
-		synchronized (isConcurrentlyBeingAcquired) {
-			if (isConcurrentlyBeingAcquired.get()) {
-				return false;
-			}
-			isConcurrentlyBeingAcquired.set(isAvailable());
-			return isConcurrentlyBeingAcquired.get();	
+		if (!isConcurrentlyBeingAcquired.compareAndSet(false, true)) {
+			return false;
 		}
+		if (!isAvailable()) {
+			isConcurrentlyBeingAcquired.set(false);
+			return false;
+		}
+		return true;
 	}
 	
 	protected abstract ConnectionType doCreateConnectionProxy() throws CreateConnectionException;
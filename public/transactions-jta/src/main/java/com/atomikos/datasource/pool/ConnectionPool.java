@@ -11,14 +11,18 @@ package com.atomikos.datasource.pool;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.atomikos.icatch.event.pool.ConnectionPoolReadyEvent;
 import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
+import com.atomikos.publish.EventPublisher;
 import com.atomikos.thread.InterruptedExceptionHelper;
 import com.atomikos.thread.TaskManager;
 import com.atomikos.timing.AlarmTimer;
 import com.atomikos.timing.AlarmTimerListener;
-import com.atomikos.timing.PooledAlarmTimer;
+import com.atomikos.timing.ScheduledAlarmTimer;
 
 
 public abstract class ConnectionPool<ConnectionType> implements XPooledConnectionEventListener<ConnectionType>
@@ -31,7 +35,7 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 	private ConnectionFactory<ConnectionType> connectionFactory;
 	private ConnectionPoolProperties properties;
 	private boolean destroyed;
-	private PooledAlarmTimer maintenanceTimer;
+	private ScheduledAlarmTimer maintenanceTimer;
 	private String name;
 
 
@@ -52,17 +56,64 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 	private void init() throws ConnectionPoolException
 	{
 		if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": initializing..." );
-		addConnectionsIfMinPoolSizeNotReached();
+		warmUp();
 		launchMaintenanceTimer();
 	}
 
+	/**
+	 * Creates the initial connections, with up to getMaxConcurrentConnectionCreations() threads 
+	 * in parallel. Unless the warm-up is asynchronous, this returns when all of them are created.
+	 */
+	private void warmUp() {
+		int connectionsToAdd = properties.getMinPoolSize();
+		int numberOfWorkers = Math.min(connectionsToAdd, Math.max(1, properties.getMaxConcurrentConnectionCreations()));
+		WarmUp warmUp = new WarmUp(connectionsToAdd, numberOfWorkers);
+		if (properties.getAsynchronousWarmUp()) {
+			for (int i = 0; i < numberOfWorkers; i++) {
+				startInBackground(warmUp);
+			}
+		} else if (numberOfWorkers > 0) {
+			// the calling thread is one of the workers
+			for (int i = 1; i < numberOfWorkers; i++) {
+				startInBackground(warmUp);
+			}
+			warmUp.run();
+			warmUp.awaitCompletion();
+		} else {
+			warmUp.ready();
+		}
+	}
+
+	private void startInBackground(Runnable task) {
+		try {
+			TaskManager.SINGLETON.executeTask(task);
+		} catch (RuntimeException rejected) {
+			if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": could not start background task - running it in the calling thread instead" , rejected );
+			task.run();
+		}
+	}
+
+	/**
+	 * Adds an initial connection unless the pool was destroyed or borrowers already made it grow to its maximum size.
+	 * 
+	 * @return False if the pool was destroyed.
+	 */
+	private synchronized boolean addInitialConnection(XPooledConnection<ConnectionType> xpc) {
+		if ( destroyed || totalSize() >= properties.getMaxPoolSize() ) {
+			xpc.destroy(false);
+		} else {
+			addPooledConnection ( xpc );
+		}
+		return !destroyed;
+	}
+
 	private void launchMaintenanceTimer() {
 		int maintenanceInterval = properties.getMaintenanceInterval();
 		if ( maintenanceInterval <= 0 ) {
 			if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": using default maintenance interval..." );
 			maintenanceInterval = DEFAULT_MAINTENANCE_INTERVAL;
 		}
-		maintenanceTimer = new PooledAlarmTimer ( maintenanceInterval * 1000 );
+		maintenanceTimer = new ScheduledAlarmTimer ( maintenanceInterval * 1000 );
 		maintenanceTimer.addAlarmTimerListener(new AlarmTimerListener() {
 			public void alarm(AlarmTimer timer) {
 				reapPool();
@@ -71,16 +122,15 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 				removeIdleConnectionsIfMinPoolSizeExceeded();
 			}
 		});
-		TaskManager.SINGLETON.executeTask ( maintenanceTimer );
+		maintenanceTimer.start();
 	}
 
-	private synchronized void addConnectionsIfMinPoolSizeNotReached() {
+	protected synchronized void addConnectionsIfMinPoolSizeNotReached() {
 		int connectionsToAdd = properties.getMinPoolSize() - totalSize();
 		for ( int i = 0 ; i < connectionsToAdd ; i++ ) {
 			try {
 				XPooledConnection<ConnectionType> xpc = createPooledConnection();
-				connections.add ( xpc );
-				xpc.registerXPooledConnectionEventListener ( this );
+				addPooledConnection ( xpc );
 			} catch ( Exception dbDown ) {
 				//see case 26380
 				if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": could not establish initial connection" , dbDown );
@@ -88,7 +138,7 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 		}
 	}
 
-	private XPooledConnection<ConnectionType> createPooledConnection()
+	protected XPooledConnection<ConnectionType> createPooledConnection()
 			throws CreateConnectionException {
 		XPooledConnection<ConnectionType> xpc = connectionFactory.createPooledConnection();
 		return xpc;
@@ -155,17 +205,26 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 		}
 	}
 
-	private boolean canGrow() {
+	protected boolean canGrow() {
 		return totalSize() < properties.getMaxPoolSize();
 	}
 
 	protected abstract ConnectionType retrieveFirstAvailableConnection();
 
-	private synchronized void growPool() throws CreateConnectionException {
+	protected synchronized void growPool() throws CreateConnectionException {
 		XPooledConnection<ConnectionType> xpc = createPooledConnection();
+		addPooledConnection ( xpc );
+		logCurrentPoolSize();
+	}
+
+	/**
+	 * Adds a newly created connection to the pool. Always called while holding the pool's lock.
+	 * 
+	 * @param xpc
+	 */
+	protected void addPooledConnection(XPooledConnection<ConnectionType> xpc) {
 		connections.add ( xpc );
 		xpc.registerXPooledConnectionEventListener(this);
-		logCurrentPoolSize();
 	}
 
 	private synchronized void removeIdleConnectionsIfMinPoolSizeExceeded() {
@@ -213,7 +272,7 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 			long now = System.currentTimeMillis();
 			if ( inUse && ( ( now - maxInUseTime * 1000 ) > lastTimeReleased ) ) {
 				if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": connection in use for more than " + maxInUseTime + "s, reaping it: " + xpc );
-				xpc.destroy(true);
+				destroyPooledConnection(xpc, true);
 				it.remove();
 			}
 		}
@@ -343,4 +402,53 @@ public abstract class ConnectionPool<ConnectionType> implements XPooledConnectio
 		return "atomikos connection pool '" + name + "'";
 	}
 
+	private class WarmUp implements Runnable {
+
+		private final AtomicInteger connectionsToCreate;
+		private final AtomicInteger activeWorkers;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final long start = System.currentTimeMillis();
+
+		WarmUp(int connectionsToCreate, int numberOfWorkers) {
+			this.connectionsToCreate = new AtomicInteger(connectionsToCreate);
+			this.activeWorkers = new AtomicInteger(numberOfWorkers);
+		}
+
+		@Override
+		public void run() {
+			try {
+				boolean poolDestroyed = false;
+				while ( !poolDestroyed && connectionsToCreate.getAndDecrement() > 0 ) {
+					try {
+						XPooledConnection<ConnectionType> xpc = createPooledConnection();
+						poolDestroyed = !addInitialConnection ( xpc );
+					} catch ( Exception dbDown ) {
+						//see case 26380
+						if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( ConnectionPool.this + ": could not establish initial connection" , dbDown );
+					}
+				}
+			} finally {
+				if ( activeWorkers.decrementAndGet() == 0 ) {
+					ready();
+				}
+			}
+		}
+
+		void ready() {
+			long duration = System.currentTimeMillis() - start;
+			int total = totalSize();
+			if ( LOGGER.isDebugEnabled() ) LOGGER.logDebug ( ConnectionPool.this + ": ready with " + total + " connections after " + duration + "ms" );
+			done.countDown();
+			EventPublisher.INSTANCE.publish ( new ConnectionPoolReadyEvent ( name, total, duration ) );
+		}
+
+		void awaitCompletion() {
+			try {
+				done.await();
+			} catch ( InterruptedException e ) {
+				InterruptedExceptionHelper.handleInterruptedException ( e );
+			}
+		}
+	}
+
 }
@@ -25,6 +25,7 @@ public interface ConnectionPoolProperties
 	int DEFAULT_MAX_IDLE_TIME = 60;
 	int DEFAULT_MAINTENANCE_INTERVAL = 60;
 	int DEFAULT_MAX_LIFETIME = 0;
+	int DEFAULT_MAX_CONCURRENT_CONNECTION_CREATIONS = 2;
 	/**
 	 * Gets the unique resource name.
 	 * 
@@ -103,5 +104,25 @@ public interface ConnectionPoolProperties
 	 * @return The level, or -1 if not set.
 	 */
 	int getDefaultIsolationLevel();
+	
+	/**
+	 * Gets the maximum number of connections that can be created at the same time, 
+	 * in the background. Also used for the initial creation of minPoolSize connections.
+	 * 
+	 * @return
+	 */
+	public default int getMaxConcurrentConnectionCreations() {
+		return DEFAULT_MAX_CONCURRENT_CONNECTION_CREATIONS;
+	}
+	
+	/**
+	 * Tests whether the initial connections are created in the background, 
+	 * so the pool can be used before it is filled up to minPoolSize.
+	 * 
+	 * @return
+	 */
+	public default boolean getAsynchronousWarmUp() {
+		return false;
+	}
 
 }
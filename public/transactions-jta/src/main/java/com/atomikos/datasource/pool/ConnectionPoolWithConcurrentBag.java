@@ -0,0 +1,526 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.datasource.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.atomikos.logging.Logger;
+import com.atomikos.logging.LoggerFactory;
+import com.atomikos.thread.TaskManager;
+
+/**
+ * A pool that borrows connections without taking the pool's lock. Idle
+ * connections are kept in a concurrent bag, and each connection is claimed
+ * with a CAS on its state (cf. markAsBeingAcquiredIfAvailable). Each thread
+ * first tries the connection it borrowed last. Threads that have to wait
+ * are handed a released or newly created connection directly, in FIFO order.
+ * <p>
+ * New connections are created in the background, by at most
+ * getMaxConcurrentConnectionCreations() threads at a time, so a slow connection
+ * setup does not block other borrowers.
+ * <p>
+ * Recycling of a connection that is still enlisted in the calling thread's
+ * transaction is attempted for each connection that the thread borrowed and
+ * that has not become available since, instead of scanning the whole pool.
+ * <p>
+ * The pool's lock is still used to remove connections, and for maintenance.
+ */
+
+public class ConnectionPoolWithConcurrentBag<ConnectionType> extends ConnectionPool<ConnectionType>
+{
+	private static final Logger LOGGER = LoggerFactory.createLogger(ConnectionPoolWithConcurrentBag.class);
+
+	// NB: not initialized in the declaration because the super constructor already adds connections
+	private volatile ConcurrentHashMap<XPooledConnection<ConnectionType>, Entry<ConnectionType>> entries;
+	private ConcurrentLinkedDeque<Entry<ConnectionType>> idleEntries;
+	private Queue<Waiter<ConnectionType>> waiters;
+	private ThreadLocal<Entry<ConnectionType>> lastBorrowedEntry;
+	// the entries that the thread borrowed and that may still be enlisted in its transaction
+	private ThreadLocal<List<Entry<ConnectionType>>> borrowedEntries;
+	private final ConnectionPoolProperties properties;
+	private final AtomicInteger pendingCreations = new AtomicInteger();
+	// a failed creation that no waiting thread was there to receive
+	private final AtomicReference<CreateConnectionException> unreportedCreationFailure = new AtomicReference<CreateConnectionException>();
+	private volatile boolean destroyed;
+
+	public ConnectionPoolWithConcurrentBag ( ConnectionFactory<ConnectionType> connectionFactory , ConnectionPoolProperties properties ) throws ConnectionPoolException
+	{
+		super(connectionFactory, properties);
+		this.properties = properties;
+		synchronized (this) {
+			entries = new ConcurrentHashMap<XPooledConnection<ConnectionType>, Entry<ConnectionType>>();
+			idleEntries = new ConcurrentLinkedDeque<Entry<ConnectionType>>();
+			waiters = new ConcurrentLinkedQueue<Waiter<ConnectionType>>();
+			lastBorrowedEntry = new ThreadLocal<Entry<ConnectionType>>();
+			borrowedEntries = ThreadLocal.withInitial(() -> new ArrayList<Entry<ConnectionType>>());
+			for (XPooledConnection<ConnectionType> xpc : connections) {
+				register(xpc);
+			}
+		}
+	}
+
+	@Override
+	protected void addPooledConnection(XPooledConnection<ConnectionType> xpc) {
+		super.addPooledConnection(xpc);
+		if (entries != null) { // null during construction: then our constructor registers it
+			register(xpc);
+		}
+	}
+
+	private void register(XPooledConnection<ConnectionType> xpc) {
+		Entry<ConnectionType> entry = new Entry<ConnectionType>(xpc);
+		entries.put(xpc, entry);
+		release(entry);
+	}
+
+	@Override
+	public ConnectionType borrowConnection() throws CreateConnectionException, PoolExhaustedException, ConnectionPoolException
+	{
+		assertNotDestroyed();
+		ConnectionType ret = null;
+		try {
+			ret = recycleConnectionIfPossible();
+		} catch (Exception e) {
+			//ignore but log
+			LOGGER.logDebug ( this + ": error while trying to recycle" , e );
+		}
+		if (ret == null) {
+			ret = borrowAvailableConnection();
+		}
+		return ret;
+	}
+
+	private void assertNotDestroyed() throws ConnectionPoolException {
+		if (destroyed) throw new ConnectionPoolException ( "Pool was already destroyed - you can no longer use it" );
+	}
+
+	private ConnectionType borrowAvailableConnection() throws CreateConnectionException, ConnectionPoolException {
+		ConnectionType ret = null;
+		long deadline = System.currentTimeMillis() + properties.getBorrowConnectionTimeout() * 1000L;
+		do {
+			Entry<ConnectionType> entry = claimLastBorrowedEntry();
+			if (entry == null) {
+				entry = claimIdleEntry();
+			}
+			if (entry == null) {
+				startConnectionCreationIfPossible(true);
+				entry = waitForEntry(deadline);
+			}
+			if (entry != null) {
+				ret = tryToUse(entry);
+			}
+			if (ret == null) {
+				assertNotDestroyed();
+				assertNotExhausted(deadline);
+			}
+		} while (ret == null);
+		return ret;
+	}
+
+	private void assertNotExhausted(long deadline) throws PoolExhaustedException {
+		if (System.currentTimeMillis() >= deadline) {
+			throw new PoolExhaustedException ( "ConnectionPool: pool is empty - increase either maxPoolSize or borrowConnectionTimeout" );
+		}
+	}
+
+	private boolean canStartConnectionCreation() {
+		return canStartConnectionCreation(pendingCreations.get());
+	}
+
+	private boolean canStartConnectionCreation(int pending) {
+		return !destroyed && pending < properties.getMaxConcurrentConnectionCreations() && totalSize() + pending < properties.getMaxPoolSize();
+	}
+
+	private void startConnectionCreationIfPossible(boolean forBorrower) {
+		int pending = pendingCreations.get();
+		while (canStartConnectionCreation(pending)) {
+			if (pendingCreations.compareAndSet(pending, pending + 1)) {
+				ConnectionCreator creator = new ConnectionCreator(forBorrower);
+				try {
+					TaskManager.SINGLETON.executeTask(creator);
+				} catch (RuntimeException rejected) {
+					// executor is shutting down: create in the calling thread instead
+					LOGGER.logDebug ( this + ": could not create connection in the background" , rejected );
+					creator.run();
+				}
+				return;
+			}
+			pending = pendingCreations.get();
+		}
+	}
+
+	/**
+	 * Creates connections as long as there are threads waiting for one,
+	 * or until the minimum pool size is reached.
+	 */
+	private boolean moreConnectionsNeeded() {
+		int total = totalSize();
+		// NB: our own pending creation is included in pendingCreations
+		return !destroyed && total + pendingCreations.get() <= properties.getMaxPoolSize() &&
+				(!waiters.isEmpty() || total < properties.getMinPoolSize());
+	}
+
+	@Override
+	protected void addConnectionsIfMinPoolSizeNotReached() {
+		// NB: entries is null while still constructing, then the warm-up takes care of this
+		if (entries != null && totalSize() + pendingCreations.get() < properties.getMinPoolSize()) {
+			startConnectionCreationIfPossible(false);
+		}
+	}
+
+	@Override
+	protected ConnectionType recycleConnectionIfPossible() throws Exception {
+		ConnectionType ret = null;
+		List<Entry<ConnectionType>> borrowed = borrowedEntries.get();
+		// most recently borrowed first
+		for (int i = borrowed.size() - 1; ret == null && i >= 0; i--) {
+			Entry<ConnectionType> entry = borrowed.get(i);
+			if (!isRegistered(entry) || entry.xpc.isAvailable()) {
+				// released since: only a new borrow can enlist it for this thread again
+				borrowed.remove(i);
+			} else {
+				synchronized (entry.xpc) { // just to be sure, although concurrent threads should not happen
+					if (entry.xpc.canBeRecycledForCallingThread()) {
+						ret = entry.xpc.createConnectionProxy();
+						if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace( this + ": recycling connection from pool..." );
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	protected ConnectionType retrieveFirstAvailableConnection() {
+		ConnectionType ret = null;
+		Entry<ConnectionType> entry = claimIdleEntry();
+		if (entry != null) {
+			ret = tryToUse(entry);
+		}
+		return ret;
+	}
+
+	private ConnectionType tryToUse(Entry<ConnectionType> entry) {
+		ConnectionType ret = null;
+		try {
+			ret = entry.xpc.createConnectionProxy();
+			// here, connection is no longer available for other threads
+			lastBorrowedEntry.set(entry);
+			List<Entry<ConnectionType>> borrowed = borrowedEntries.get();
+			if (!borrowed.contains(entry)) {
+				borrowed.add(entry);
+			}
+		} catch ( CreateConnectionException ex ) {
+			String msg = this +  ": error creating proxy of connection " + entry.xpc;
+			LOGGER.logDebug( msg , ex);
+			removePooledConnection(entry.xpc);
+		} finally {
+			logCurrentPoolSize();
+		}
+		return ret;
+	}
+
+	private Entry<ConnectionType> claimLastBorrowedEntry() {
+		Entry<ConnectionType> ret = lastBorrowedEntry.get();
+		if (ret != null && !tryToClaim(ret)) {
+			ret = null;
+		}
+		return ret;
+	}
+
+	private Entry<ConnectionType> claimIdleEntry() {
+		Entry<ConnectionType> entry = idleEntries.pollFirst();
+		while (entry != null) {
+			entry.idle.set(false);
+			if (tryToClaim(entry)) {
+				return entry;
+			}
+			// in use via the thread-affinity path or removed: it comes back on release (if still registered)
+			entry = idleEntries.pollFirst();
+		}
+		return null;
+	}
+
+	private boolean tryToClaim(Entry<ConnectionType> entry) {
+		if (!entry.xpc.markAsBeingAcquiredIfAvailable()) {
+			return false;
+		}
+		if (!isRegistered(entry)) {
+			// removed by maintenance while we were claiming it
+			entry.xpc.destroy(false);
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isRegistered(Entry<ConnectionType> entry) {
+		return entries.get(entry.xpc) == entry;
+	}
+
+	/**
+	 * Waits until a connection is handed over by a releasing or creating thread, or becomes idle.
+	 *
+	 * @return The claimed entry, or null if another connection creation can be started.
+	 */
+	private Entry<ConnectionType> waitForEntry(long deadline) throws CreateConnectionException, PoolExhaustedException, ConnectionPoolException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				Waiter<ConnectionType> waiter = new Waiter<ConnectionType>();
+				waiters.offer(waiter);
+				CreateConnectionException failure = unreportedCreationFailure.getAndSet(null);
+				if (failure != null) {
+					waiter.fail(failure);
+				}
+				Entry<ConnectionType> ret = claimIdleEntry(); // in case of a release before we were queued
+				long remaining = deadline - System.currentTimeMillis();
+				if (ret == null && !canStartConnectionCreation() && !destroyed && remaining > 0) {
+					if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": about to wait for connection during " + remaining + "ms...");
+					while (!waiter.isDone() && !canStartConnectionCreation() && !destroyed && remaining > 0) {
+						LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remaining));
+						interrupted = Thread.interrupted() || interrupted;
+						remaining = deadline - System.currentTimeMillis();
+					}
+					if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( this + ": done waiting." );
+				}
+				waiters.remove(waiter);
+				Object outcome = waiter.cancel();
+				if (outcome instanceof Entry) {
+					@SuppressWarnings("unchecked")
+					Entry<ConnectionType> handedOver = (Entry<ConnectionType>) outcome;
+					if (ret == null && tryToClaim(handedOver)) {
+						ret = handedOver;
+					} else if (ret != null) {
+						release(handedOver); // pass on to the next waiter
+					}
+				} else if (outcome instanceof CreateConnectionException && ret == null) {
+					throw (CreateConnectionException) outcome;
+				}
+				if (ret != null || canStartConnectionCreation()) {
+					return ret;
+				}
+				assertNotDestroyed();
+				assertNotExhausted(deadline);
+			}
+		} finally {
+			if (interrupted) {
+				// cf bug 67457
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Hands the entry to the longest waiting thread, or makes it idle if there are none.
+	 */
+	private void release(Entry<ConnectionType> entry) {
+		do {
+			Waiter<ConnectionType> waiter = waiters.poll();
+			while (waiter != null) {
+				if (waiter.handOver(entry)) {
+					return;
+				}
+				waiter = waiters.poll();
+			}
+			if (!entry.idle.compareAndSet(false, true)) {
+				return;
+			}
+			idleEntries.offerFirst(entry);
+			// a thread queued after our poll may have looked for idle entries before our offer:
+			// then take the entry back to hand it over, unless some other thread claimed it meanwhile
+		} while (!waiters.isEmpty() && takeBackIdleEntry(entry));
+	}
+
+	private boolean takeBackIdleEntry(Entry<ConnectionType> entry) {
+		boolean ret = idleEntries.removeFirstOccurrence(entry);
+		if (ret) {
+			entry.idle.set(false);
+		}
+		return ret;
+	}
+
+	/**
+	 * Reports a failed connection creation to the longest waiting thread.
+	 */
+	private void fail(CreateConnectionException e, boolean forBorrower) {
+		Waiter<ConnectionType> waiter = waiters.poll();
+		while (waiter != null) {
+			if (waiter.fail(e)) {
+				return;
+			}
+			waiter = waiters.poll();
+		}
+		if (forBorrower) {
+			// the borrower is not queued yet
+			unreportedCreationFailure.set(e);
+		}
+	}
+
+	@Override
+	public void onXPooledConnectionTerminated(XPooledConnection<ConnectionType> connection) {
+		Entry<ConnectionType> entry = entries.get(connection);
+		if (entry != null) {
+			if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace( this +  ": connection " + connection + " became available");
+			release(entry);
+		} else {
+			// removed from the pool while in use
+			connection.destroy(false);
+		}
+	}
+
+	@Override
+	protected void destroyPooledConnection(XPooledConnection<ConnectionType> xpc, boolean reap) {
+		if (entries != null) {
+			entries.remove(xpc);
+		}
+		// claim it first, so no other thread can start using it while we destroy it
+		if (reap || destroyed || xpc.markAsBeingAcquiredIfAvailable()) {
+			super.destroyPooledConnection(xpc, reap);
+		}
+		// the pool can grow again
+		signalFirstWaiter();
+	}
+
+	private void signalFirstWaiter() {
+		if (waiters != null) {
+			Waiter<ConnectionType> waiter = waiters.peek();
+			if (waiter != null) LockSupport.unpark(waiter.thread);
+		}
+	}
+
+	private synchronized void removePooledConnection(XPooledConnection<ConnectionType> xpc) {
+		connections.remove(xpc);
+		destroyPooledConnection(xpc, false);
+	}
+
+	@Override
+	public synchronized void destroy() {
+		destroyed = true;
+		super.destroy();
+		for (Waiter<ConnectionType> waiter : waiters) {
+			LockSupport.unpark(waiter.thread);
+		}
+	}
+
+	@Override
+	public int availableSize() {
+		int ret = 0;
+		if (!destroyed) {
+			for (XPooledConnection<ConnectionType> xpc : entries.keySet()) {
+				if (xpc.isAvailable()) ret++;
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public int totalSize() {
+		if (destroyed) return 0;
+		if (entries == null) return super.totalSize();
+		return entries.size();
+	}
+
+	private static class Entry<ConnectionType> {
+
+		final XPooledConnection<ConnectionType> xpc;
+		final AtomicBoolean idle = new AtomicBoolean(false);
+
+		Entry(XPooledConnection<ConnectionType> xpc) {
+			this.xpc = xpc;
+		}
+	}
+
+	private static class Waiter<ConnectionType> {
+
+		private static final Object CANCELLED = new Object();
+
+		final Thread thread = Thread.currentThread();
+		// the handed over entry or creation failure, or CANCELLED
+		private final AtomicReference<Object> outcome = new AtomicReference<Object>();
+
+		boolean handOver(Entry<ConnectionType> entry) {
+			return complete(entry);
+		}
+
+		boolean fail(CreateConnectionException e) {
+			return complete(e);
+		}
+
+		private boolean complete(Object value) {
+			boolean ret = outcome.compareAndSet(null, value);
+			if (ret) {
+				LockSupport.unpark(thread);
+			}
+			return ret;
+		}
+
+		boolean isDone() {
+			return outcome.get() != null;
+		}
+
+		/**
+		 * @return The entry or creation failure that was handed over before the cancel, if any.
+		 */
+		Object cancel() {
+			if (outcome.compareAndSet(null, CANCELLED)) {
+				return null;
+			}
+			return outcome.get();
+		}
+	}
+
+	private class ConnectionCreator implements Runnable {
+
+		private final boolean forBorrower;
+
+		ConnectionCreator(boolean forBorrower) {
+			this.forBorrower = forBorrower;
+		}
+
+		@Override
+		public void run() {
+			try {
+				do {
+					XPooledConnection<ConnectionType> xpc = createPooledConnection();
+					synchronized (ConnectionPoolWithConcurrentBag.this) {
+						if (destroyed) {
+							xpc.destroy(false);
+							return;
+						}
+						addPooledConnection(xpc);
+					}
+					logCurrentPoolSize();
+				} while (moreConnectionsNeeded());
+			} catch (CreateConnectionException e) {
+				LOGGER.logDebug ( ConnectionPoolWithConcurrentBag.this + ": could not create connection" , e );
+				// if nobody is waiting then maintenance will retry later - cf. case 26380
+				if (forBorrower || !waiters.isEmpty()) {
+					fail(e, forBorrower);
+				}
+			} catch (RuntimeException e) {
+				LOGGER.logWarning ( ConnectionPoolWithConcurrentBag.this + ": unexpected error while creating connection" , e );
+			} finally {
+				pendingCreations.decrementAndGet();
+				// let a waiting thread start another creation if still needed
+				signalFirstWaiter();
+			}
+		}
+	}
+
+}
@@ -65,6 +65,7 @@ public class XAResourceTransaction implements ResourceTransaction, Participant {
 	private transient final XATransactionalResource resource;
 	private transient XAResource xaresource;
 	private transient boolean knownInResource;
+	private transient long xaresourceKnownAliveUntil;
 	private transient int timeout;
 
 
@@ -102,7 +103,7 @@ public class XAResourceTransaction implements ResourceTransaction, Participant {
 			// fix for case 31209: refresh entire XAConnection on heur hazard
 			if (this.state == TxState.HEUR_HAZARD)
 				forceRefreshXAConnection();
-			else if (this.xaresource != null) { // null if connection failure
+			else if (this.xaresource != null && !recentlyPrepared()) { // null if connection failure
 				assertConnectionIsStillAlive(); 
 			}
 		} catch (XAException xa) {
@@ -111,12 +112,18 @@ public class XAResourceTransaction implements ResourceTransaction, Participant {
 				LOGGER.logTrace(this.resourcename
 						+ ": XAResource needs refresh", xa);
 
+				this.resource.markXAResourceSuspect();
 				this.xaresource = this.resource.getXAResource();
 
 		}
 
 	}
 
+	private boolean recentlyPrepared() {
+		// a successful prepare shows the connection is alive: no need to check again right before commit
+		return System.currentTimeMillis() < this.xaresourceKnownAliveUntil;
+	}
+
 	private void assertConnectionIsStillAlive() throws XAException {
 		this.xaresource.isSameRM(this.xaresource);
 	}
@@ -318,6 +325,7 @@ public class XAResourceTransaction implements ResourceTransaction, Participant {
 			}
 		}
 		setState(TxState.IN_DOUBT);
+		this.xaresourceKnownAliveUntil = System.currentTimeMillis() + this.resource.getLivenessProbeInterval();
 		if (ret == XAResource.XA_RDONLY) {
 			if (LOGGER.isDebugEnabled()) {
 				LOGGER.logDebug("XAResource.prepare ( " + xid
@@ -590,6 +598,7 @@ public class XAResourceTransaction implements ResourceTransaction, Participant {
 			LOGGER.logTrace(this + ": about to switch to XAResource "
 					+ xaresource);
 		this.xaresource = xaresource;
+		this.xaresourceKnownAliveUntil = 0;
 		try {
 			this.xaresource.setTransactionTimeout(this.timeout);
 		} catch (XAException e) {
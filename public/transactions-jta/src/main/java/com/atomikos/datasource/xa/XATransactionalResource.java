@@ -9,8 +9,7 @@
 package com.atomikos.datasource.xa;
 
 import java.util.Collection;
-import java.util.Hashtable;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -22,6 +21,7 @@ import com.atomikos.datasource.TransactionalResource;
 import com.atomikos.icatch.CompositeTransaction;
 import com.atomikos.icatch.RecoveryService;
 import com.atomikos.icatch.SysException;
+import com.atomikos.icatch.config.Configuration;
 import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
 import com.atomikos.recovery.PendingTransactionRecord;
@@ -47,9 +47,12 @@ public abstract class XATransactionalResource implements TransactionalResource
 {
 	private static final Logger LOGGER = LoggerFactory.createLogger(XATransactionalResource.class);
 
-    protected XAResource xares_;
+    protected volatile XAResource xares_;
+    private volatile long nextLivenessProbe_;
+    // time (in millis) after which xares_ should be probed again
+    private long livenessProbeInterval_;
     private String uniqueResourceName;
-    private Hashtable<String,SiblingMapper> rootTransactionToSiblingMapperMap;
+    private final ConcurrentHashMap<String,SiblingMapper> rootTransactionToSiblingMapperMap;
     private XidFactory xidFact;
     private boolean closed;
     private String branchIdentifier;
@@ -65,7 +68,7 @@ public abstract class XATransactionalResource implements TransactionalResource
     {
 
         this.uniqueResourceName = uniqueResourceName;
-        this.rootTransactionToSiblingMapperMap = new Hashtable<String,SiblingMapper>();
+        this.rootTransactionToSiblingMapperMap = new ConcurrentHashMap<String,SiblingMapper>();
         // name should be less than 64 for xid compatibility
 
         //branch id is server name + long value!
@@ -75,6 +78,7 @@ public abstract class XATransactionalResource implements TransactionalResource
                     "Max length of resource name exceeded: should be less than " + ( 64 - MAX_LONG_LEN ) );
         this.xidFact = new DefaultXidFactory ();
         this.closed = false;
+        this.livenessProbeInterval_ = Configuration.getConfigProperties ().getXaResourceProbeInterval ();
     }
 
     /**
@@ -122,23 +126,17 @@ public abstract class XATransactionalResource implements TransactionalResource
 
     void removeSiblingMap ( String root )
     {
-        synchronized ( this.rootTransactionToSiblingMapperMap ) {
-            this.rootTransactionToSiblingMapperMap.remove ( root );
-        }
-
+        this.rootTransactionToSiblingMapperMap.remove ( root );
     }
 
     private SiblingMapper getSiblingMap ( String root )
     {
-        synchronized ( this.rootTransactionToSiblingMapperMap ) {
-            if ( this.rootTransactionToSiblingMapperMap.containsKey ( root ) )
-                return this.rootTransactionToSiblingMapperMap.get ( root );
-            else {
-                SiblingMapper map = new SiblingMapper ( this , root );
-                this.rootTransactionToSiblingMapperMap.put ( root, map );
-                return map;
-            }
+        SiblingMapper ret = this.rootTransactionToSiblingMapperMap.get ( root );
+        if ( ret == null ) {
+            // get first: computeIfAbsent may lock even if present
+            ret = this.rootTransactionToSiblingMapperMap.computeIfAbsent ( root, r -> new SiblingMapper ( this , r ) );
         }
+        return ret;
     }
 
     /**
@@ -160,6 +158,7 @@ public abstract class XATransactionalResource implements TransactionalResource
             if ( this.xares_ != null ) {
                 this.xares_.isSameRM ( this.xares_ );
                 ret = false;
+                this.nextLivenessProbe_ = System.currentTimeMillis () + this.livenessProbeInterval_;
             }
         } catch ( XAException xa ) {
             // timed out?
@@ -199,40 +198,92 @@ public abstract class XATransactionalResource implements TransactionalResource
             // in this case, the implementation class names are the same
             // so delegate to xares instances
             try {
-                if ( xares.isSameRM ( xaresource ) ) {
-                    ret = true;
-                } else {
-                	LOGGER.logTrace ( "XAResources claim to be different: "
-                                    + xares + " and " + xaresource );
+                ret = isSameRM ( xares, xaresource );
+            } catch ( XAException stale ) {
+                // our cached XAResource may have died since its last probe: retry with a checked one
+                markXAResourceSuspect ();
+                xaresource = getXAResource ();
+                if ( xaresource == null ) return false;
+                try {
+                    ret = isSameRM ( xares, xaresource );
+                } catch ( XAException xe ) {
+                    throw new SysException ( "Error in XAResource comparison: "
+                            + xe.getMessage (), xe );
                 }
-            } catch ( XAException xe ) {
-                throw new SysException ( "Error in XAResource comparison: "
-                        + xe.getMessage (), xe );
             }
         }
         return ret;
     }
 
+    private boolean isSameRM ( XAResource xares, XAResource xaresource ) throws XAException
+    {
+        boolean ret = xares.isSameRM ( xaresource );
+        if ( !ret ) {
+            LOGGER.logTrace ( "XAResources claim to be different: "
+                            + xares + " and " + xaresource );
+        }
+        return ret;
+    }
+
     /**
-     * Get the XAResource instance that this instance is using.
+     * Get the XAResource instance that this instance is using. Its liveness
+     * is only checked once per probe interval, or after markXAResourceSuspect.
      *
      * @return XAResource The XAResource instance.
      */
 
-    public synchronized XAResource getXAResource ()
+    public XAResource getXAResource ()
     {
+        XAResource ret = this.xares_;
         // null on first invocation
-        if ( needsRefresh () ) {
-        	refreshXAResource();
+        if ( ret == null || System.currentTimeMillis () >= this.nextLivenessProbe_ ) {
+            ret = probeOrRefreshXAResource ();
         }
+        return ret;
+    }
 
+    private synchronized XAResource probeOrRefreshXAResource ()
+    {
+        // check again: another thread may have probed while we were waiting for the lock
+        if ( this.xares_ == null || System.currentTimeMillis () >= this.nextLivenessProbe_ ) {
+            if ( needsRefresh () ) {
+                refreshXAResource ();
+            }
+        }
         return this.xares_;
     }
 
+    /**
+     * Makes the next call to getXAResource check the liveness of the XAResource,
+     * regardless of the probe interval. Should be called after an XAException that
+     * may indicate a broken connection.
+     */
+
+    public void markXAResourceSuspect ()
+    {
+        this.nextLivenessProbe_ = 0;
+    }
+
+    /**
+     * Sets the minimum time between liveness checks of the XAResource.
+     * Optional, defaults to the value of com.atomikos.icatch.xa_resource_probe_interval.
+     *
+     * @param millis Zero to check on every call to getXAResource.
+     */
+
+    public void setLivenessProbeInterval ( long millis )
+    {
+        this.livenessProbeInterval_ = millis;
+    }
+
+    public long getLivenessProbeInterval ()
+    {
+        return this.livenessProbeInterval_;
+    }
+
     /**
      * @see TransactionalResource
      */
-    @SuppressWarnings("unchecked")
     @Override
 	public ResourceTransaction getResourceTransaction ( CompositeTransaction ct )
             throws ResourceException, IllegalStateException
@@ -241,17 +292,7 @@ public abstract class XATransactionalResource implements TransactionalResource
 
         if ( ct == null ) return null; // happens in create method of beans?
 
-        Stack<CompositeTransaction> lineage = ct.getLineage ();
-        String root = null;
-        if (lineage == null || lineage.isEmpty ()) root = ct.getTid ();
-        else {
-            Stack<CompositeTransaction> tmp = (Stack<CompositeTransaction>) lineage.clone ();
-            while ( !tmp.isEmpty() ) {
-                CompositeTransaction next = (CompositeTransaction) tmp.pop();
-                if (next.isRoot()) root = next.getTid ();
-            }
-        }
-        return getSiblingMap ( root ).findOrCreateBranchForTransaction ( ct );
+        return getSiblingMap ( ct.getRootTid () ).findOrCreateBranchForTransaction ( ct );
 
     }
 
@@ -319,6 +360,7 @@ public abstract class XATransactionalResource implements TransactionalResource
                 }
             }
         } catch (XAException e) {
+            markXAResourceSuspect();
             String msg = "Failed to compare XAResources";
             XAExceptionHelper.formatLogMessage(msg, e, "pessimistically assuming they are different"); 
         }
@@ -375,7 +417,9 @@ public abstract class XATransactionalResource implements TransactionalResource
     			ret = xaResourceRecoveryManager.recover(getXAResource(), startOfRecoveryScan, expiredCommittingCoordinators, indoubtForeignCoordinatorsToKeep, uniqueResourceName);	
 			} catch (Exception e) {
 				LOGGER.logWarning(e.getMessage(),e); //cf case 164148 & 164147
-				refreshXAResource(); //cf case 156968
+				synchronized (this) {
+					refreshXAResource(); //cf case 156968
+				}
 			    }
     		}
     	}
@@ -387,6 +431,7 @@ public abstract class XATransactionalResource implements TransactionalResource
     private void refreshXAResource() {
 	LOGGER.logTrace ( this.uniqueResourceName + ": refreshing XAResource..." );
         this.xares_ = refreshXAConnection ();
+        this.nextLivenessProbe_ = System.currentTimeMillis () + this.livenessProbeInterval_;
         LOGGER.logInfo ( this.uniqueResourceName + ": refreshed XAResource" );	
     }
     
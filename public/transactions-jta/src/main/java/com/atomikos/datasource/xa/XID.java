@@ -9,11 +9,14 @@
 package com.atomikos.datasource.xa;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 import javax.transaction.xa.Xid;
 
 /**
- * Our Xid class with correct equals and hashCode.
+ * Our Xid class with correct equals and hashCode. Equality is based on the 
+ * global transaction id and branch qualifier bytes; the hash code is computed
+ * once, and the string forms only when needed.
  */
 
 public class XID implements Serializable, Xid
@@ -30,9 +33,10 @@ public class XID implements Serializable, Xid
     private final int formatId;
     private final byte[] branchQualifier;
     private final byte[] globalTransactionId;
-    private final String branchQualifierStr;
-    private final String globalTransactionIdStr;
+    private String branchQualifierStr;
+    private String globalTransactionIdStr;
     private final String uniqueResourceName;
+    private transient int hashCode;
     
     /**
      * Create a new instance with the resource name as branch. This is the main
@@ -57,7 +61,7 @@ public class XID implements Serializable, Xid
         if ( this.branchQualifier.length > Xid.MAXBQUALSIZE )
             throw new RuntimeException (
                     "Max branch qualifier length exceeded." );
-
+        this.hashCode = computeHashCode ();
     }
 
     /**
@@ -70,11 +74,18 @@ public class XID implements Serializable, Xid
     public XID (Xid xid)
     {
         this.formatId = xid.getFormatId ();
-        this.globalTransactionId = xid.getGlobalTransactionId ();
-        this.branchQualifier = xid.getBranchQualifier ();
-        this.globalTransactionIdStr = new String(xid.getGlobalTransactionId ());
-        this.branchQualifierStr= new String(xid.getBranchQualifier ());
+        // copy: the hash code must not change if the vendor reuses its arrays
+        this.globalTransactionId = xid.getGlobalTransactionId ().clone ();
+        this.branchQualifier = xid.getBranchQualifier ().clone ();
         this.uniqueResourceName = null;
+        this.hashCode = computeHashCode ();
+    }
+
+    private int computeHashCode ()
+    {
+        int ret = 31 * Arrays.hashCode ( this.globalTransactionId ) + Arrays.hashCode ( this.branchQualifier );
+        // 0 means not yet computed, cf. hashCode()
+        return ret == 0 ? 1 : ret;
     }
 
     @Override
@@ -102,7 +113,9 @@ public class XID implements Serializable, Xid
 			return true;
 		if (obj instanceof XID) {
 			XID xid = (XID) obj;
-			return toString().equals(xid.toString());
+			return hashCode() == xid.hashCode() &&
+					Arrays.equals(this.globalTransactionId, xid.globalTransactionId) &&
+					Arrays.equals(this.branchQualifier, xid.branchQualifier);
 		}
 		return false;
     }
@@ -140,17 +153,29 @@ public class XID implements Serializable, Xid
     }
 
 	public  String getBranchQualifierAsString() {
+		if (this.branchQualifierStr == null) {
+			this.branchQualifierStr = new String(this.branchQualifier);
+		}
 		return this.branchQualifierStr;
 	}
 
 	public  String getGlobalTransactionIdAsString() {
+		if (this.globalTransactionIdStr == null) {
+			this.globalTransactionIdStr = new String(this.globalTransactionId);
+		}
 		return this.globalTransactionIdStr;
 	}
 
     @Override
 	public int hashCode ()
     {
-        return toString ().hashCode ();
+        int ret = this.hashCode;
+        if ( ret == 0 ) {
+            // deserialized instance
+            ret = computeHashCode ();
+            this.hashCode = ret;
+        }
+        return ret;
     }
 
 	public String getUniqueResourceName() {
@@ -305,24 +305,7 @@ class TransactionImp implements Transaction {
 
 	private TransactionalResource findRecoverableResourceForXaResource(
 			XAResource xares) {
-		TransactionalResource ret = null;
-		XATransactionalResource xatxres;
-
-		synchronized (Configuration.class) {
-			// synchronized to avoid case 61740 and 142795
-			
-			Collection<RecoverableResource> resources = Configuration.getResources();
-			for (RecoverableResource rres : resources) {
-				if (rres instanceof XATransactionalResource) {
-					xatxres = (XATransactionalResource) rres;
-					if (xatxres.usesXAResource(xares))
-						ret = xatxres;
-				}
-			}
-
-		}
-
-		return ret;
+		return XATransactionalResourceIndex.findResourceFor(xares);
 	}
 
 	/**
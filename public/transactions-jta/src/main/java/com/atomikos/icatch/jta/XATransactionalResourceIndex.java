@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.jta;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.transaction.xa.XAResource;
+
+import com.atomikos.datasource.RecoverableResource;
+import com.atomikos.datasource.xa.XATransactionalResource;
+import com.atomikos.icatch.config.Configuration;
+
+/**
+ * Finds the registered XATransactionalResource for an XAResource being enlisted,
+ * without scanning all resources (and calling isSameRM on them) each time.
+ * <p>
+ * Candidates are indexed by XAResource implementation class, and the outcome 
+ * is cached per XAResource instance - pooled connections enlist the same instance
+ * over and over again. Everything is rebuilt when a resource is added to or 
+ * removed from the Configuration.
+ */
+
+class XATransactionalResourceIndex {
+
+	private static volatile XATransactionalResourceIndex current = null;
+
+	private final long resourcesVersion;
+	private final List<XATransactionalResource> resources = new ArrayList<XATransactionalResource>();
+	private final ConcurrentMap<String, List<XATransactionalResource>> candidatesByClassName = new ConcurrentHashMap<String, List<XATransactionalResource>>();
+	private final ConcurrentMap<InstanceKey, XATransactionalResource> resourcesByInstance = new ConcurrentHashMap<InstanceKey, XATransactionalResource>();
+	private final ReferenceQueue<XAResource> collectedInstances = new ReferenceQueue<XAResource>();
+
+	private XATransactionalResourceIndex(long resourcesVersion) {
+		this.resourcesVersion = resourcesVersion;
+		for (RecoverableResource res : Configuration.getResources()) {
+			if (res instanceof XATransactionalResource) {
+				resources.add((XATransactionalResource) res);
+			}
+		}
+	}
+
+	/**
+	 * Finds the resource for the given instance.
+	 * 
+	 * @param xares
+	 * @return The resource, or null if none of the registered resources uses the same RM.
+	 */
+	static XATransactionalResource findResourceFor(XAResource xares) {
+		return getCurrent().find(xares);
+	}
+
+	private static XATransactionalResourceIndex getCurrent() {
+		// read the version BEFORE the resources, so a concurrent change triggers a rebuild next time
+		long version = Configuration.getResourcesVersion();
+		XATransactionalResourceIndex ret = current;
+		if (ret == null || ret.resourcesVersion != version) {
+			ret = new XATransactionalResourceIndex(version);
+			current = ret;
+		}
+		return ret;
+	}
+
+	private XATransactionalResource find(XAResource xares) {
+		expungeCollectedInstances();
+		XATransactionalResource ret = resourcesByInstance.get(new InstanceKey(xares, null));
+		if (ret == null) {
+			ret = findAmongCandidates(xares);
+			if (ret != null) {
+				resourcesByInstance.put(new InstanceKey(xares, collectedInstances), ret);
+			}
+		}
+		return ret;
+	}
+
+	private XATransactionalResource findAmongCandidates(XAResource xares) {
+		XATransactionalResource ret = null;
+		for (XATransactionalResource candidate : getCandidates(xares.getClass().getName())) {
+			// no break: like the original scan, the last match in order of registration wins
+			if (candidate.usesXAResource(xares)) {
+				ret = candidate;
+			}
+		}
+		return ret;
+	}
+
+	private List<XATransactionalResource> getCandidates(String className) {
+		List<XATransactionalResource> ret = candidatesByClassName.get(className);
+		if (ret == null) {
+			List<XATransactionalResource> candidates = new ArrayList<XATransactionalResource>();
+			for (XATransactionalResource res : resources) {
+				XAResource xares = res.getXAResource();
+				// no XAResource (yet) means we cannot tell, so keep it as a candidate
+				if (xares == null || xares.getClass().getName().equals(className)) {
+					candidates.add(res);
+				}
+			}
+			ret = Collections.unmodifiableList(candidates);
+			candidatesByClassName.putIfAbsent(className, ret);
+		}
+		return ret;
+	}
+
+	private void expungeCollectedInstances() {
+		Reference<? extends XAResource> ref = collectedInstances.poll();
+		while (ref != null) {
+			resourcesByInstance.remove(ref);
+			ref = collectedInstances.poll();
+		}
+	}
+
+	/**
+	 * Identity-based key that does not keep the XAResource from being garbage collected.
+	 */
+	private static class InstanceKey extends WeakReference<XAResource> {
+
+		private final int hash;
+
+		InstanceKey(XAResource xares, ReferenceQueue<XAResource> queue) {
+			super(xares, queue);
+			this.hash = System.identityHashCode(xares);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (!(o instanceof InstanceKey)) {
+				return false;
+			}
+			XAResource xares = get();
+			return xares != null && xares == ((InstanceKey) o).get();
+		}
+	}
+
+}
@@ -9,37 +9,29 @@
 package com.atomikos.recovery.xa;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 import com.atomikos.datasource.xa.XID;
 
 public class InMemoryPreviousXidRepository implements PreviousXidRepository {
 
-	private Map<Long,List<XID>> cache = new HashMap<>();
+	// sorted by expiration, so expired entries are a range at the head
+	private NavigableMap<Long,List<XID>> cache = new TreeMap<>();
 	
 	@Override
 	public synchronized List<XID> findXidsExpiredAt(long startOfRecoveryScan) {
 		List<XID> xids = new ArrayList<>();
-		for (Long expiration : cache.keySet()) {
-			if(expiration<startOfRecoveryScan) {
-				xids.addAll(cache.get(expiration));
-			}
+		for (List<XID> expired : cache.headMap(startOfRecoveryScan, false).values()) {
+			xids.addAll(expired);
 		}
 		return xids;
 	}
 	
 	@Override
 	public synchronized void forgetXidsExpiredAt(long startOfRecoveryScan) {
-		Iterator<Long> it = cache.keySet().iterator();
-		while (it.hasNext()) {
-			Long expiration = it.next();
-			if(expiration<=startOfRecoveryScan) {
-				it.remove();
-			}
-		}
+		cache.headMap(startOfRecoveryScan, true).clear();
 	}
 
     @Override
@@ -49,12 +41,7 @@ public class InMemoryPreviousXidRepository implements PreviousXidRepository {
 
     @Override
     public synchronized void remember(XID xidToStoreForNextScan, long expiration) {
-        List<XID> xids = cache.get(expiration);
-        if (xids == null) {
-            xids = new ArrayList<>();
-        }
-        xids.add(xidToStoreForNextScan);
-        cache.put(expiration, xids);
+        cache.computeIfAbsent(expiration, e -> new ArrayList<>()).add(xidToStoreForNextScan);
     }
 
 }
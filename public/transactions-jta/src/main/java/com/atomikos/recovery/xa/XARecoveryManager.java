@@ -11,8 +11,10 @@ package com.atomikos.recovery.xa;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -117,7 +119,7 @@ private static final Logger LOGGER = LoggerFactory.createLogger(XARecoveryManage
 			long startOfRecoveryScan) {
 		boolean allExpiredCommitsDone = true;
 		long xidDetectionTime = System.currentTimeMillis();
-	    List<XID> expiredPreviousXids = previousXidRepository.findXidsExpiredAt(startOfRecoveryScan);
+	    Set<XID> expiredPreviousXids = new HashSet<XID>(previousXidRepository.findXidsExpiredAt(startOfRecoveryScan));
 		Collection<String> expiredCommittingCoordinatorIds = PendingTransactionRecord.extractCoordinatorIds(expiredCommittingCoordinators, TxState.COMMITTING, TxState.IN_DOUBT); // in-doubt for subtxs with committing superior
 		Collection<String> foreignIndoubtCoordinatorIds = PendingTransactionRecord.extractCoordinatorIds(indoubtForeignCoordinatorsToKeep, TxState.IN_DOUBT); // filter out what remote recovery has already resolved
 		for (XID xid : xidsToRecover) {
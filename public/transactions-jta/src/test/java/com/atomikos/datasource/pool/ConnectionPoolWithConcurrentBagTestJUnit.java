@@ -0,0 +1,430 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.datasource.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionPoolWithConcurrentBagTestJUnit {
+
+	private TestConnectionFactory connectionFactory;
+	private TestProperties properties;
+	private ConnectionPoolWithConcurrentBag<TestPooledConnection> pool;
+
+	@Before
+	public void setUp() throws Exception {
+		connectionFactory = new TestConnectionFactory();
+		properties = new TestProperties();
+	}
+
+	@After
+	public void tearDown() {
+		if (pool != null) pool.destroy();
+	}
+
+	@Test
+	public void testMinPoolSizeIsCreatedOnInit() throws Exception {
+		properties.minPoolSize = 2;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		assertEquals(2, pool.totalSize());
+		assertEquals(2, pool.availableSize());
+	}
+
+	@Test
+	public void testMinPoolSizeIsCreatedInParallelOnInit() throws Exception {
+		properties.minPoolSize = 4;
+		properties.maxPoolSize = 4;
+		properties.maxConcurrentConnectionCreations = 2;
+		connectionFactory.delayMillis = 100;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		assertEquals(4, pool.totalSize());
+		assertEquals(2, connectionFactory.maxConcurrentCreations.get());
+	}
+
+	@Test
+	public void testAsynchronousWarmUpDoesNotWaitForMinPoolSize() throws Exception {
+		properties.minPoolSize = 2;
+		properties.asynchronousWarmUp = true;
+		connectionFactory.gate = new CountDownLatch(1);
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		assertEquals(0, pool.totalSize());
+		connectionFactory.gate.countDown();
+		waitForTotalSize(2);
+		assertEquals(2, pool.availableSize());
+	}
+
+	@Test
+	public void testBorrowedConnectionIsNoLongerAvailable() throws Exception {
+		properties.minPoolSize = 2;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		TestPooledConnection first = pool.borrowConnection();
+		TestPooledConnection second = pool.borrowConnection();
+		assertNotSame(first, second);
+		assertEquals(0, pool.availableSize());
+		first.release();
+		assertEquals(1, pool.availableSize());
+	}
+
+	@Test
+	public void testReleasedConnectionIsReusedByTheSameThread() throws Exception {
+		properties.minPoolSize = 3;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		TestPooledConnection first = pool.borrowConnection();
+		first.release();
+		assertSame(first, pool.borrowConnection());
+	}
+
+	@Test
+	public void testEnlistedConnectionIsRecycledEvenIfNotBorrowedLast() throws Exception {
+		properties.minPoolSize = 3;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		TestPooledConnection enlisted = pool.borrowConnection();
+		TestPooledConnection last = pool.borrowConnection();
+		assertNotSame(enlisted, last);
+		enlisted.recyclable = true;
+		assertSame(enlisted, pool.borrowConnection());
+		assertEquals(1, pool.availableSize());
+	}
+
+	@Test
+	public void testPoolGrowsUpToMaxPoolSize() throws Exception {
+		properties.minPoolSize = 0;
+		properties.maxPoolSize = 2;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		pool.borrowConnection();
+		pool.borrowConnection();
+		assertEquals(2, pool.totalSize());
+		try {
+			pool.borrowConnection();
+			fail("pool should be exhausted");
+		} catch (PoolExhaustedException expected) {
+		}
+		assertEquals(2, pool.totalSize());
+	}
+
+	@Test
+	public void testReleasedConnectionIsHandedToWaitingThread() throws Exception {
+		properties.minPoolSize = 1;
+		properties.maxPoolSize = 1;
+		properties.borrowConnectionTimeout = 10;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		TestPooledConnection borrowed = pool.borrowConnection();
+		BorrowingThread other = new BorrowingThread();
+		other.start();
+		Thread.sleep(100);
+		borrowed.release();
+		other.join(5000);
+		assertSame(borrowed, other.borrowed);
+	}
+
+	@Test
+	public void testReleasedConnectionIsHandedOverWhileCreationIsSlow() throws Exception {
+		properties.minPoolSize = 1;
+		properties.maxPoolSize = 2;
+		properties.borrowConnectionTimeout = 10;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		TestPooledConnection borrowed = pool.borrowConnection();
+		connectionFactory.gate = new CountDownLatch(1);
+		BorrowingThread other = new BorrowingThread();
+		other.start();
+		Thread.sleep(100);
+		borrowed.release();
+		other.join(5000);
+		assertSame(borrowed, other.borrowed);
+		assertEquals(1, pool.totalSize());
+		connectionFactory.gate.countDown();
+		waitForTotalSize(2);
+	}
+
+	@Test
+	public void testWaitingThreadsGetNewlyCreatedConnections() throws Exception {
+		properties.minPoolSize = 0;
+		properties.maxPoolSize = 3;
+		properties.maxConcurrentConnectionCreations = 1;
+		properties.borrowConnectionTimeout = 10;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		List<BorrowingThread> threads = new ArrayList<BorrowingThread>();
+		for (int i = 0; i < 3; i++) {
+			BorrowingThread thread = new BorrowingThread();
+			threads.add(thread);
+			thread.start();
+		}
+		for (BorrowingThread thread : threads) {
+			thread.join(5000);
+			assertTrue(thread.borrowed != null);
+		}
+		assertEquals(3, pool.totalSize());
+		assertEquals(0, pool.availableSize());
+	}
+
+	@Test(expected=CreateConnectionException.class)
+	public void testFailedCreationIsReportedToBorrower() throws Exception {
+		properties.minPoolSize = 0;
+		properties.borrowConnectionTimeout = 10;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		connectionFactory.failing = true;
+		pool.borrowConnection();
+	}
+
+	@Test
+	public void testBorrowingFromDestroyedPoolFails() throws Exception {
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		pool.destroy();
+		try {
+			pool.borrowConnection();
+			fail("pool was destroyed");
+		} catch (ConnectionPoolException expected) {
+		}
+		for (TestPooledConnection xpc : connectionFactory.created) {
+			assertTrue(xpc.destroyed);
+		}
+	}
+
+	@Test
+	public void testDestroyWhileBorrowerIsWaiting() throws Exception {
+		properties.minPoolSize = 1;
+		properties.maxPoolSize = 1;
+		properties.borrowConnectionTimeout = 30;
+		pool = new ConnectionPoolWithConcurrentBag<TestPooledConnection>(connectionFactory, properties);
+		pool.borrowConnection();
+		BorrowingThread other = new BorrowingThread();
+		other.start();
+		Thread.sleep(100);
+		pool.destroy();
+		other.join(5000);
+		assertFalse(other.isAlive());
+		assertTrue(other.failure instanceof ConnectionPoolException);
+	}
+
+	private void waitForTotalSize(int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.totalSize() != expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, pool.totalSize());
+	}
+
+	private class BorrowingThread extends Thread {
+
+		volatile TestPooledConnection borrowed;
+		volatile Exception failure;
+
+		@Override
+		public void run() {
+			try {
+				borrowed = pool.borrowConnection();
+			} catch (Exception e) {
+				failure = e; // borrowed stays null
+			}
+		}
+	}
+
+	private static class TestConnectionFactory implements ConnectionFactory<TestPooledConnection> {
+
+		final List<TestPooledConnection> created = Collections.synchronizedList(new ArrayList<TestPooledConnection>());
+		final AtomicInteger concurrentCreations = new AtomicInteger();
+		final AtomicInteger maxConcurrentCreations = new AtomicInteger();
+		volatile CountDownLatch gate;
+		volatile long delayMillis;
+		volatile boolean failing;
+
+		@Override
+		public XPooledConnection<TestPooledConnection> createPooledConnection() throws CreateConnectionException {
+			int concurrent = concurrentCreations.incrementAndGet();
+			try {
+				if (concurrent > maxConcurrentCreations.get()) {
+					maxConcurrentCreations.set(concurrent);
+				}
+				return doCreatePooledConnection();
+			} finally {
+				concurrentCreations.decrementAndGet();
+			}
+		}
+
+		private XPooledConnection<TestPooledConnection> doCreatePooledConnection() throws CreateConnectionException {
+			if (gate != null) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					throw new CreateConnectionException("interrupted", e);
+				}
+			}
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				throw new CreateConnectionException("interrupted", e);
+			}
+			if (failing) {
+				throw new CreateConnectionException("database down");
+			}
+			TestPooledConnection ret = new TestPooledConnection();
+			created.add(ret);
+			return ret;
+		}
+	}
+
+	private static class TestPooledConnection implements XPooledConnection<TestPooledConnection> {
+
+		private final AtomicBoolean inUse = new AtomicBoolean(false);
+		private final long creationTime = System.currentTimeMillis();
+		private XPooledConnectionEventListener<TestPooledConnection> listener;
+		volatile boolean destroyed;
+		volatile boolean recyclable;
+
+		void release() {
+			inUse.set(false);
+			listener.onXPooledConnectionTerminated(this);
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return !inUse.get() && !destroyed;
+		}
+
+		@Override
+		public boolean canBeRecycledForCallingThread() {
+			return recyclable && inUse.get();
+		}
+
+		@Override
+		public void destroy(boolean reap) {
+			destroyed = true;
+		}
+
+		@Override
+		public long getLastTimeAcquired() {
+			return creationTime;
+		}
+
+		@Override
+		public long getLastTimeReleased() {
+			return creationTime;
+		}
+
+		@Override
+		public TestPooledConnection createConnectionProxy() {
+			return this;
+		}
+
+		@Override
+		public boolean isErroneous() {
+			return false;
+		}
+
+		@Override
+		public long getCreationTime() {
+			return creationTime;
+		}
+
+		@Override
+		public void registerXPooledConnectionEventListener(XPooledConnectionEventListener<TestPooledConnection> listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void unregisterXPooledConnectionEventListener(XPooledConnectionEventListener<TestPooledConnection> listener) {
+			this.listener = null;
+		}
+
+		@Override
+		public boolean markAsBeingAcquiredIfAvailable() {
+			return !destroyed && inUse.compareAndSet(false, true);
+		}
+	}
+
+	private static class TestProperties implements ConnectionPoolProperties {
+
+		int minPoolSize = 1;
+		int maxPoolSize = 3;
+		int borrowConnectionTimeout = 1;
+		int maxConcurrentConnectionCreations = 2;
+		boolean asynchronousWarmUp = false;
+
+		@Override
+		public String getUniqueResourceName() {
+			return "test";
+		}
+
+		@Override
+		public int getMaxPoolSize() {
+			return maxPoolSize;
+		}
+
+		@Override
+		public int getMinPoolSize() {
+			return minPoolSize;
+		}
+
+		@Override
+		public int getBorrowConnectionTimeout() {
+			return borrowConnectionTimeout;
+		}
+
+		@Override
+		public int getMaxIdleTime() {
+			return 60;
+		}
+
+		@Override
+		public int getMaxLifetime() {
+			return 0;
+		}
+
+		@Override
+		public int getReapTimeout() {
+			return 0;
+		}
+
+		@Override
+		public int getMaintenanceInterval() {
+			return 60;
+		}
+
+		@Override
+		public String getTestQuery() {
+			return null;
+		}
+
+		@Override
+		public boolean getLocalTransactionMode() {
+			return false;
+		}
+
+		@Override
+		public int getDefaultIsolationLevel() {
+			return -1;
+		}
+
+		@Override
+		public int getMaxConcurrentConnectionCreations() {
+			return maxConcurrentConnectionCreations;
+		}
+
+		@Override
+		public boolean getAsynchronousWarmUp() {
+			return asynchronousWarmUp;
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.datasource.xa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.datasource.ResourceException;
+
+public class XATransactionalResourceTestJUnit {
+
+	private TestResource resource;
+
+	@Before
+	public void setUp() throws Exception {
+		resource = new TestResource();
+		resource.setLivenessProbeInterval(60000);
+	}
+
+	@Test
+	public void testXAResourceIsNotProbedWithinInterval() {
+		TestXAResource xares = (TestXAResource) resource.getXAResource();
+		resource.getXAResource();
+		resource.getXAResource();
+		assertEquals(0, xares.probes);
+		assertEquals(1, resource.refreshes);
+	}
+
+	@Test
+	public void testXAResourceIsProbedOnEveryCallWithZeroInterval() {
+		resource.setLivenessProbeInterval(0);
+		TestXAResource xares = (TestXAResource) resource.getXAResource();
+		resource.getXAResource();
+		resource.getXAResource();
+		assertEquals(2, xares.probes);
+	}
+
+	@Test
+	public void testSuspectXAResourceIsProbed() {
+		TestXAResource xares = (TestXAResource) resource.getXAResource();
+		resource.markXAResourceSuspect();
+		assertSame(xares, resource.getXAResource());
+		assertEquals(1, xares.probes);
+	}
+
+	@Test
+	public void testDeadXAResourceIsRefreshed() {
+		TestXAResource xares = (TestXAResource) resource.getXAResource();
+		xares.dead = true;
+		resource.markXAResourceSuspect();
+		assertNotSame(xares, resource.getXAResource());
+		assertEquals(2, resource.refreshes);
+	}
+
+	@Test
+	public void testUsesXAResourceRetriesWithFreshXAResource() {
+		TestXAResource xares = (TestXAResource) resource.getXAResource();
+		xares.dead = true;
+		// the next comparison fails on the dead instance, without a probe due
+		assertEquals(true, resource.usesXAResource(new TestXAResource()));
+		assertEquals(2, resource.refreshes);
+	}
+
+	private static class TestResource extends XATransactionalResource {
+
+		int refreshes = 0;
+
+		TestResource() {
+			super("XATransactionalResourceTestJUnit");
+		}
+
+		@Override
+		protected XAResource refreshXAConnection() throws ResourceException {
+			refreshes++;
+			return new TestXAResource();
+		}
+	}
+
+	private static class TestXAResource implements XAResource {
+
+		int probes = 0;
+		boolean dead = false;
+
+		@Override
+		public boolean isSameRM(XAResource xares) throws XAException {
+			if (xares == this) {
+				probes++;
+			}
+			if (dead || (xares instanceof TestXAResource && ((TestXAResource) xares).dead)) {
+				throw new XAException(XAException.XAER_RMFAIL);
+			}
+			return xares instanceof TestXAResource;
+		}
+
+		@Override
+		public void commit(Xid xid, boolean onePhase) throws XAException {
+		}
+
+		@Override
+		public void end(Xid xid, int flags) throws XAException {
+		}
+
+		@Override
+		public void forget(Xid xid) throws XAException {
+		}
+
+		@Override
+		public int getTransactionTimeout() throws XAException {
+			return 0;
+		}
+
+		@Override
+		public int prepare(Xid xid) throws XAException {
+			return XA_OK;
+		}
+
+		@Override
+		public Xid[] recover(int flag) throws XAException {
+			return new Xid[0];
+		}
+
+		@Override
+		public void rollback(Xid xid) throws XAException {
+		}
+
+		@Override
+		public boolean setTransactionTimeout(int seconds) throws XAException {
+			return false;
+		}
+
+		@Override
+		public void start(Xid xid, int flags) throws XAException {
+		}
+	}
+
+}
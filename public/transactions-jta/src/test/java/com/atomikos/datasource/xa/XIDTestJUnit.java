@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.datasource.xa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import javax.transaction.xa.Xid;
+
+import org.junit.Test;
+
+public class XIDTestJUnit {
+
+	@Test
+	public void testCopyOfVendorXidEqualsOriginal() {
+		XID xid = new XID("tid", "branch", "resource");
+		XID copy = new XID(new VendorXid(xid));
+		assertEquals(xid, copy);
+		assertEquals(xid.hashCode(), copy.hashCode());
+		assertEquals("tid", copy.getGlobalTransactionIdAsString());
+		assertEquals("branch", copy.getBranchQualifierAsString());
+	}
+
+	@Test
+	public void testDifferentBranchesAreNotEqual() {
+		XID xid = new XID("tid", "branch1", "resource");
+		assertFalse(xid.equals(new XID("tid", "branch2", "resource")));
+	}
+
+	@Test
+	public void testCopyIsNotAffectedByChangesToVendorArrays() {
+		VendorXid vendorXid = new VendorXid(new XID("tid", "branch", "resource"));
+		XID copy = new XID(vendorXid);
+		int hashCode = copy.hashCode();
+		vendorXid.gtrid[0] = 'x';
+		assertEquals(hashCode, copy.hashCode());
+		assertEquals(new XID("tid", "branch", "resource"), copy);
+	}
+
+	@Test
+	public void testToString() {
+		XID xid = new XID("A", "B", "resource");
+		assertEquals("XID: 41:42", xid.toString());
+	}
+
+	private static class VendorXid implements Xid {
+
+		final byte[] gtrid;
+		final byte[] bqual;
+		final int formatId;
+
+		VendorXid(Xid xid) {
+			gtrid = xid.getGlobalTransactionId().clone();
+			bqual = xid.getBranchQualifier().clone();
+			formatId = xid.getFormatId();
+		}
+
+		@Override
+		public int getFormatId() {
+			return formatId;
+		}
+
+		@Override
+		public byte[] getGlobalTransactionId() {
+			return gtrid;
+		}
+
+		@Override
+		public byte[] getBranchQualifier() {
+			return bqual;
+		}
+	}
+
+}
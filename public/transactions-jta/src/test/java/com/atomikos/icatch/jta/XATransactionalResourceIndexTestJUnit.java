@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.jta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.datasource.ResourceException;
+import com.atomikos.datasource.xa.XATransactionalResource;
+import com.atomikos.icatch.config.Configuration;
+
+public class XATransactionalResourceIndexTestJUnit {
+
+	private TestResource resource1, resource2;
+
+	@Before
+	public void setUp() throws Exception {
+		resource1 = new TestResource("XATransactionalResourceIndexTestJUnit1");
+		resource2 = new TestResource("XATransactionalResourceIndexTestJUnit2");
+		Configuration.addResource(resource1);
+		Configuration.addResource(resource2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Configuration.removeResource(resource1.getName());
+		Configuration.removeResource(resource2.getName());
+	}
+
+	@Test
+	public void testFindsResourceForSameRM() {
+		assertSame(resource1, XATransactionalResourceIndex.findResourceFor(new TestXAResource(resource1.getName())));
+		assertSame(resource2, XATransactionalResourceIndex.findResourceFor(new TestXAResource(resource2.getName())));
+	}
+
+	@Test
+	public void testReturnsNullForUnknownRM() {
+		assertNull(XATransactionalResourceIndex.findResourceFor(new TestXAResource("unknown")));
+	}
+
+	@Test
+	public void testSameInstanceIsLookedUpOnlyOnce() {
+		TestXAResource xares = new TestXAResource(resource1.getName());
+		XATransactionalResourceIndex.findResourceFor(xares);
+		int calls = xares.isSameRMCalls;
+		assertSame(resource1, XATransactionalResourceIndex.findResourceFor(xares));
+		assertEquals(calls, xares.isSameRMCalls);
+	}
+
+	@Test
+	public void testRemovedResourceIsNoLongerFound() {
+		TestXAResource xares = new TestXAResource(resource1.getName());
+		assertSame(resource1, XATransactionalResourceIndex.findResourceFor(xares));
+		Configuration.removeResource(resource1.getName());
+		assertNull(XATransactionalResourceIndex.findResourceFor(xares));
+	}
+
+	private static class TestResource extends XATransactionalResource {
+
+		TestResource(String name) {
+			super(name);
+		}
+
+		@Override
+		protected XAResource refreshXAConnection() throws ResourceException {
+			return new TestXAResource(getName());
+		}
+	}
+
+	private static class TestXAResource implements XAResource {
+
+		private final String rm;
+		int isSameRMCalls = 0;
+
+		TestXAResource(String rm) {
+			this.rm = rm;
+		}
+
+		@Override
+		public boolean isSameRM(XAResource xares) throws XAException {
+			isSameRMCalls++;
+			return xares instanceof TestXAResource && rm.equals(((TestXAResource) xares).rm);
+		}
+
+		@Override
+		public void commit(Xid xid, boolean onePhase) throws XAException {
+		}
+
+		@Override
+		public void end(Xid xid, int flags) throws XAException {
+		}
+
+		@Override
+		public void forget(Xid xid) throws XAException {
+		}
+
+		@Override
+		public int getTransactionTimeout() throws XAException {
+			return 0;
+		}
+
+		@Override
+		public int prepare(Xid xid) throws XAException {
+			return XA_OK;
+		}
+
+		@Override
+		public Xid[] recover(int flag) throws XAException {
+			return new Xid[0];
+		}
+
+		@Override
+		public void rollback(Xid xid) throws XAException {
+		}
+
+		@Override
+		public boolean setTransactionTimeout(int seconds) throws XAException {
+			return false;
+		}
+
+		@Override
+		public void start(Xid xid, int flags) throws XAException {
+		}
+	}
+
+}
@@ -61,5 +61,25 @@ public class InMemoryPreviousXidRepositoryTestJUnit {
 		assertTrue(result.isEmpty());
 	}
 	
+	@Test
+	public void testFindIgnoresXidsExpiringLater() {
+		long expiration = System.currentTimeMillis() + EXPIRATION_DELAY;
+		sut.remember(xid, expiration);
+		sut.remember(new XID("tid2", "branch2", "resource2"), expiration + 10);
+		List<XID> result = sut.findXidsExpiredAt(expiration + 1);
+		assertEquals(1, result.size());
+		assertTrue(sut.findXidsExpiredAt(expiration).isEmpty());
+	}
+	
+	@Test
+	public void testForgetKeepsXidsExpiringLater() {
+		long expiration = System.currentTimeMillis() + EXPIRATION_DELAY;
+		sut.remember(xid, expiration);
+		sut.remember(new XID("tid2", "branch2", "resource2"), expiration + 10);
+		sut.forgetXidsExpiredAt(expiration);
+		assertFalse(sut.isEmpty());
+		assertEquals(1, sut.findXidsExpiredAt(expiration + 11).size());
+	}
+	
 
 }
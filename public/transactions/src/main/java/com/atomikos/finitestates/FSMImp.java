@@ -8,10 +8,9 @@
 
 package com.atomikos.finitestates;
 
+import java.util.Arrays;
 import java.util.EventListener;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.atomikos.recovery.TxState;
 
@@ -29,38 +28,39 @@ import com.atomikos.recovery.TxState;
  * return the state that was entered - this state may have changed since.</li>
  * </ul>
  *
+ * Listeners are kept in copy-on-write arrays indexed by state ordinal, so
+ * notification needs no locking or copying, and nothing is allocated for
+ * states without listeners.
+ *
  */
 
 public class FSMImp implements FSM
 {
 
-    private TxState state_ = null;
+	private static final int NUMBER_OF_STATES = TxState.values().length;
+
+    private volatile TxState state_ = null;
     //the current state
 
-    private Hashtable<TxState,Set<EventListener>>  enterlisteners_ = null;
-    //the enter listeners
+    private volatile AtomicReferenceArray<EventListener[]> enterlisteners_ = null;
+    //the enter listeners, null until the first one is added
 
-    private Hashtable<TxState,Set<EventListener>> preenterlisteners_ = null;
+    private volatile AtomicReferenceArray<EventListener[]> preenterlisteners_ = null;
     //pre enter listeners
 
-    private Hashtable<TxState,Hashtable<TxState,Set<EventListener>>> transitionlisteners_ = null;
-    //transition listeners
+    private volatile AtomicReferenceArray<EventListener[][]> transitionlisteners_ = null;
+    //transition listeners: indexed by from state, then by to state
 
-    private Hashtable<TxState,Hashtable<TxState,Set<EventListener>>> pretransitionlisteners_ = null;
+    private volatile AtomicReferenceArray<EventListener[][]> pretransitionlisteners_ = null;
     //pretransition listeners
 
-    
-    private Object eventsource_ = null;
 
-    private Object stateLatch_;
+    private Object eventsource_ = null;
 
 
     /**
      *Constructor.
      *
-     *@param transitiontable The transitiontable with valid
-     *transitions.
-     *
      *@param initialstate The initial state of the FSM.
      */
 
@@ -76,19 +76,42 @@ public class FSMImp implements FSM
      *by delegation to an instance of this class.
      *
      *@param eventsource The object to be used as source of events.
-     *@param transitiontable The transitiontable for state changes.
      *@param initialstate The initial state of the FSM.
      */
 
     public FSMImp ( Object eventsource, TxState initialstate )
     {
         state_ = initialstate;
-        enterlisteners_ = new Hashtable<TxState,Set<EventListener>>();
-        preenterlisteners_ = new Hashtable<TxState,Set<EventListener>>();
-        transitionlisteners_ = new Hashtable<TxState,Hashtable<TxState,Set<EventListener>>>();
-        pretransitionlisteners_ = new Hashtable<TxState,Hashtable<TxState,Set<EventListener>>>();
         eventsource_ = eventsource;
-        stateLatch_ = new Object();
+    }
+
+    private static AtomicReferenceArray<EventListener[]> createEnterTable ()
+    {
+    	return new AtomicReferenceArray<EventListener[]> ( NUMBER_OF_STATES );
+    }
+
+    private static AtomicReferenceArray<EventListener[][]> createTransitionTable ()
+    {
+    	return new AtomicReferenceArray<EventListener[][]> ( NUMBER_OF_STATES );
+    }
+
+    /**
+     *Help function for adding a listener to a copy-on-write array.
+     *
+     *@param lstnrs The current listeners, or null if none.
+     *@param lstnr The listener to add.
+     *@return The new array, or the given one if the listener was already present.
+     */
+
+    private static EventListener[] add ( EventListener[] lstnrs , EventListener lstnr )
+    {
+    	if ( lstnrs == null ) return new EventListener[] { lstnr };
+    	for ( EventListener existing : lstnrs ) {
+    		if ( existing.equals ( lstnr ) ) return lstnrs;
+    	}
+    	EventListener[] ret = Arrays.copyOf ( lstnrs , lstnrs.length + 1 );
+    	ret[lstnrs.length] = lstnr;
+    	return ret;
     }
 
     /**
@@ -99,16 +122,12 @@ public class FSMImp implements FSM
      *@param state The state for which the listener wants to be notified.
      */
 
-    protected synchronized  void addEnterListener(Hashtable<TxState,Set<EventListener>> listeners,
+    protected synchronized void addEnterListener ( AtomicReferenceArray<EventListener[]> listeners,
     		EventListener lstnr,
-    		TxState state)
+    		TxState state )
     {
-        Set<EventListener> lstnrs = listeners.get(state);
-        if ( lstnrs == null )
-        	lstnrs = new HashSet<EventListener>();
-        if ( !lstnrs.contains(lstnr) )
-        	lstnrs.add( lstnr );
-        listeners.put( state , lstnrs );
+    	int index = state.ordinal();
+        listeners.set ( index , add ( listeners.get ( index ) , lstnr ) );
     }
 
     /**
@@ -120,91 +139,72 @@ public class FSMImp implements FSM
      *@param to The end state of the transition.
      */
 
-    protected synchronized void addTransitionListener(Hashtable<TxState,Hashtable<TxState, Set<EventListener>>> listeners,
+    protected synchronized void addTransitionListener ( AtomicReferenceArray<EventListener[][]> listeners,
     			EventListener lstnr,
 				 TxState from,
-				 TxState to)
+				 TxState to )
     {
-    	Hashtable<TxState, Set<EventListener>> lstnrs =   listeners.get(from);
-        if (lstnrs == null)
-        	lstnrs = new Hashtable<TxState,Set<EventListener>>();
-        Set<EventListener> tolstnrs = lstnrs.get(to);
-        if (tolstnrs == null)
-        	tolstnrs = new HashSet<EventListener>();
-        if (!tolstnrs.contains(lstnr))
-        	tolstnrs.add(lstnr);
-        lstnrs.put(to,tolstnrs);
-        listeners.put(from,lstnrs);
+    	EventListener[][] lstnrs = listeners.get ( from.ordinal() );
+        if ( lstnrs == null ) {
+        	lstnrs = new EventListener[NUMBER_OF_STATES][];
+        } else {
+        	//copy: notification may be iterating over the current row
+        	lstnrs = lstnrs.clone();
+        }
+        lstnrs[to.ordinal()] = add ( lstnrs[to.ordinal()] , lstnr );
+        listeners.set ( from.ordinal() , lstnrs );
     }
 
     /**
      *Notify the enter listeners.
      *
-     *@param listeners One of the enter listener tables.
+     *@param listeners One of the enter listener tables, null if none.
      *@param state The state about to enter (or entered).
      *@param pre True iff before entering.
      */
 
-    protected void notifyListeners(Hashtable<TxState,Set<EventListener>> listeners, TxState state,
-			     boolean pre)
+    protected void notifyListeners ( AtomicReferenceArray<EventListener[]> listeners, TxState state,
+			     boolean pre )
     {
-        Set<EventListener> lstnrs = null;
-        FSMEnterEvent event = new FSMEnterEvent (eventsource_, state);
-        synchronized ( this ) {
-            lstnrs= listeners.get ( state );
-            if ( lstnrs == null )
-                	return;
-            //clone to avoid concurrency effects outside synch block
-            //during iteration hereafter
-            lstnrs = new HashSet<EventListener>(lstnrs);
-        }
-      //notify OUTSIDE SYNCH to minimize deadlocks
-        for (EventListener listener : lstnrs) {
+    	if ( listeners == null ) return;
+        EventListener[] lstnrs = listeners.get ( state.ordinal() );
+        if ( lstnrs == null ) return;
+
+        //the array is never modified once published, so iteration is safe without synch
+        FSMEnterEvent event = new FSMEnterEvent ( eventsource_, state );
+        for ( EventListener listener : lstnrs ) {
         	if ( pre && ( listener instanceof FSMPreEnterListener ))
-        	    ((FSMPreEnterListener) listener).preEnter (event);
-        	else if (!pre && (listener instanceof FSMEnterListener))
+        	    ((FSMPreEnterListener) listener).preEnter ( event );
+        	else if ( !pre && ( listener instanceof FSMEnterListener ))
         	    ((FSMEnterListener) listener).entered ( event );
 		}
-            	
-        
     }
 
     /**
      *Notify transition listeners.
      *
-     *@param listeners One of the transition listener tables.
+     *@param listeners One of the transition listener tables, null if none.
      *@param from The initial state.
      *@param to The end state.
      *@param pre True iff before transition.
      */
 
-    protected void notifyListeners ( Hashtable<TxState,Hashtable<TxState,Set<EventListener>>> listeners, TxState from ,
+    protected void notifyListeners ( AtomicReferenceArray<EventListener[][]> listeners, TxState from ,
     		TxState to , boolean pre )
     {
-        FSMTransitionEvent event = new FSMTransitionEvent (eventsource_, from, to );
-        Hashtable<TxState,Set<EventListener>> lstnrs = null;
-        Set<EventListener>  tolstnrs = null;
-        synchronized ( this ) {
-            lstnrs =  listeners.get( from );
-            if ( lstnrs == null )
-                return;
-            tolstnrs =  lstnrs.get( to );
-            if ( tolstnrs == null )
-                return;
-
-            //clone to avoid concurrency effects
-            //during iteration outside synch block
-            lstnrs = new  Hashtable<TxState,Set<EventListener>> (lstnrs);
-            tolstnrs = new HashSet<EventListener>(tolstnrs);
-        }
-
-        //iterator outside synch to avoid deadlocks
-        for (EventListener listener : tolstnrs) {
+    	if ( listeners == null ) return;
+    	EventListener[][] lstnrs = listeners.get ( from.ordinal() );
+    	if ( lstnrs == null ) return;
+    	EventListener[] tolstnrs = lstnrs[to.ordinal()];
+    	if ( tolstnrs == null ) return;
+
+        FSMTransitionEvent event = new FSMTransitionEvent ( eventsource_, from, to );
+        for ( EventListener listener : tolstnrs ) {
         	 if ( pre && ( listener instanceof FSMPreTransitionListener )) {
-                 ((FSMPreTransitionListener)listener).beforeTransition(event);
+                 ((FSMPreTransitionListener)listener).beforeTransition ( event );
              }
-             else if (!pre && (listener instanceof FSMTransitionListener)) {
-                 ((FSMTransitionListener) listener).transitionPerformed(event);
+             else if ( !pre && ( listener instanceof FSMTransitionListener )) {
+                 ((FSMTransitionListener) listener).transitionPerformed ( event );
              }
 		}
     }
@@ -216,22 +216,8 @@ public class FSMImp implements FSM
     public TxState getState()
     {
     	//Note: this method should NOT be synchronized on the FSM itself, to avoid deadlocks
-    	//in re-entrant 2PC calls!
-    	TxState ret = null;
-    	//don't synch on FSM -> use latch object instead
-    	synchronized ( stateLatch_ ) {
-    		ret = state_;
-    	}
-        return ret;
-    }
-
-    private void setStateObject ( TxState state )
-    {
-    	//synchronize on stateLatch ONLY to make sure that getState
-    	//returns the latest (non-cached) value
-    	synchronized ( stateLatch_ ) {
-    		this.state_ = state;
-    	}
+    	//in re-entrant 2PC calls! The volatile read suffices to get the latest value.
+        return state_;
     }
 
 
@@ -246,11 +232,11 @@ public class FSMImp implements FSM
         synchronized ( this ) {
             if (!state_.transitionAllowedTo(state))
                 	throw new IllegalStateException("Transition not allowed: "+state_ +" to "+state);
-               
+
                oldstate = state_;
         	   notifyListeners(preenterlisteners_ , state , true);
         	   notifyListeners(pretransitionlisteners_ , oldstate , state , true);
-        	   setStateObject ( state );
+        	   state_ = state;
         }
         //ENTER EVENTS ARE OUTSIDE SYNCH BLOCK TO MINIMIZE DEADLOCKS!!!
         notifyListeners(enterlisteners_ , state , false);
@@ -262,8 +248,9 @@ public class FSMImp implements FSM
      *@see com.atomikos.finitestates.FSMEnterEventSource
      */
 
-    public void addFSMEnterListener(FSMEnterListener lstnr, TxState state)
+    public synchronized void addFSMEnterListener(FSMEnterListener lstnr, TxState state)
     {
+    	if ( enterlisteners_ == null ) enterlisteners_ = createEnterTable();
         addEnterListener(enterlisteners_ , lstnr , state);
 
     }
@@ -273,9 +260,10 @@ public class FSMImp implements FSM
      *@see com.atomikos.finitestates.FSMPreEnterEventSource
      */
 
-    public void addFSMPreEnterListener(FSMPreEnterListener lstnr,
+    public synchronized void addFSMPreEnterListener(FSMPreEnterListener lstnr,
     		TxState state)
     {
+    	if ( preenterlisteners_ == null ) preenterlisteners_ = createEnterTable();
         addEnterListener(preenterlisteners_ , lstnr , state);
     }
 
@@ -284,9 +272,10 @@ public class FSMImp implements FSM
      */
 
 
-    public void addFSMTransitionListener(FSMTransitionListener lstnr,
+    public synchronized void addFSMTransitionListener(FSMTransitionListener lstnr,
     		TxState from, TxState to)
     {
+    	if ( transitionlisteners_ == null ) transitionlisteners_ = createTransitionTable();
         addTransitionListener ( transitionlisteners_ , lstnr , from , to );
     }
 
@@ -294,9 +283,10 @@ public class FSMImp implements FSM
      *@see com.atomikos.finitestates.FSMPreTransitionEventSource
      */
 
-    public void addFSMPreTransitionListener(FSMPreTransitionListener lstnr,
+    public synchronized void addFSMPreTransitionListener(FSMPreTransitionListener lstnr,
     		TxState from, TxState to)
     {
+    	if ( pretransitionlisteners_ == null ) pretransitionlisteners_ = createTransitionTable();
         addTransitionListener( pretransitionlisteners_ , lstnr , from , to );
     }
 
@@ -305,4 +295,3 @@ public class FSMImp implements FSM
 
 
 }
-
@@ -47,6 +47,9 @@ public abstract class AbstractCompositeTransaction implements CompositeTransacti
 
     protected Properties properties_;
 
+    private transient String rootTid_;
+    // lazily computed from the lineage, which does not change
+
     /**
      * Required for externalization of subclasses
      */
@@ -141,6 +144,21 @@ public abstract class AbstractCompositeTransaction implements CompositeTransacti
         return (Stack<CompositeTransaction>) lineage_.clone ();
     }
 
+    /**
+     * @see CompositeTransaction.
+     */
+
+    @Override
+    public String getRootTid ()
+    {
+        String ret = rootTid_;
+        if ( ret == null ) {
+            ret = CompositeTransaction.super.getRootTid ();
+            rootTid_ = ret;
+        }
+        return ret;
+    }
+
     /**
      * @see CompositeTransaction.
      */
@@ -15,9 +15,11 @@ import com.atomikos.icatch.HeurCommitException;
 import com.atomikos.icatch.HeurHazardException;
 import com.atomikos.icatch.HeurMixedException;
 import com.atomikos.icatch.HeurRollbackException;
+import com.atomikos.icatch.OnePhaseParticipant;
 import com.atomikos.icatch.Participant;
 import com.atomikos.icatch.RollbackException;
 import com.atomikos.icatch.SysException;
+import com.atomikos.icatch.config.Configuration;
 import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
 import com.atomikos.recovery.TxState;
@@ -31,8 +33,11 @@ class ActiveStateHandler extends CoordinatorStateHandler
 {
 	private static final Logger LOGGER = LoggerFactory.createLogger(ActiveStateHandler.class);
 
-    private long rollbackTicks_;
-    // how many timeout events have happened?
+	static boolean LAST_RESOURCE_COMMIT = Configuration.getConfigProperties().getLastResourceCommit();
+
+    private final long startTime_;
+    // the timer is only started when the timeout is near, 
+    // so timeout ticks are derived from the elapsed time
     // if max allowed -> rollback on timeout
 
     private int globalSiblingCount_;
@@ -42,14 +47,15 @@ class ActiveStateHandler extends CoordinatorStateHandler
     ActiveStateHandler ( CoordinatorImp coordinator )
     {
         super ( coordinator );
-        rollbackTicks_ = 0;
+        startTime_ = System.currentTimeMillis();
         wasSetToRollbackOnly = false;
     }
 
 
     protected long getRollbackTicks ()
     {
-        return rollbackTicks_;
+        long elapsedTicks = (System.currentTimeMillis() - startTime_) / CoordinatorImp.DEFAULT_MILLIS_BETWEEN_TIMER_WAKEUPS;
+        return Math.min ( elapsedTicks, getCoordinator ().getMaxRollbackTicks () );
     }
 
     protected TxState getState ()
@@ -61,9 +67,7 @@ class ActiveStateHandler extends CoordinatorStateHandler
     {
 
         try {
-            if ( rollbackTicks_ < getCoordinator ().getMaxRollbackTicks () )
-                rollbackTicks_++;
-            else {
+            if ( getRollbackTicks () >= getCoordinator ().getMaxRollbackTicks () ) {
                 // first check if we are still the current state!
                 // otherwise, a COMMITTING tx could be rolled back
                 // in case of 1PC!!!
@@ -155,11 +159,14 @@ class ActiveStateHandler extends CoordinatorStateHandler
 					throw new HeurMixedException();
 				}
         	}
+            Participant lastResource = findLastResource ( participants );
             count = participants.size ();
+            if ( lastResource != null ) count--;
             result = new PrepareResult ( count );
             Enumeration<Participant> enumm = participants.elements ();
             while ( enumm.hasMoreElements () ) {
                 Participant p = (Participant) enumm.nextElement ();
+                if ( p == lastResource ) continue;
                 PrepareMessage pm = new PrepareMessage ( p, result );
                 if ( getCascadeList () != null && p.getURI () != null ) { //null for OTS
                     Integer sibnum = (Integer) getCascadeList ().get ( p.getURI () );
@@ -176,7 +183,8 @@ class ActiveStateHandler extends CoordinatorStateHandler
 
             boolean voteOK = result.allYes ();
             setReadOnlyTable ( result.getReadOnlyTable () );
-            allReadOnly = result.allReadOnly ();
+            setLastResource ( lastResource );
+            allReadOnly = result.allReadOnly () && lastResource == null;
 
             if ( !voteOK ) {
             	int res = result.getResult ();
@@ -228,6 +236,32 @@ class ActiveStateHandler extends CoordinatorStateHandler
         return ret;
     }
 
+    /**
+     * Finds the participant to leave out of prepare and commit in one phase
+     * after the commit decision was logged, if enabled.
+     *
+     * @return The only participant that cannot prepare, or null if there is
+     * none or more than one (in which case prepare will fail as usual). Always
+     * null for subordinates: their YES vote must not depend on an unprepared resource.
+     */
+
+    private Participant findLastResource ( Vector<Participant> participants )
+    {
+        Participant ret = null;
+        if ( LAST_RESOURCE_COMMIT && getCoordinator ().isRoot () && participants.size () > 1 ) {
+            for ( Participant p : participants ) {
+                if ( p instanceof OnePhaseParticipant && ((OnePhaseParticipant) p).isOnePhaseOnly () ) {
+                    if ( ret != null ) return null;
+                    ret = p;
+                }
+            }
+        }
+        if ( ret != null && LOGGER.isDebugEnabled () ) {
+            LOGGER.logDebug ( "Using last resource commit for " + ret + " in transaction " + getCoordinator ().getCoordinatorId () );
+        }
+        return ret;
+    }
+
     private boolean orphansExist() {
 		return globalSiblingCount_ != getCoordinator ().getLocalSiblingCount();
 	}
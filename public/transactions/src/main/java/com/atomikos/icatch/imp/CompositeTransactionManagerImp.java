@@ -8,9 +8,9 @@
 
 package com.atomikos.icatch.imp;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.atomikos.icatch.CompositeTransaction;
 import com.atomikos.icatch.CompositeTransactionManager;
@@ -25,6 +25,12 @@ import com.atomikos.recovery.TxState;
 
 /**
  * Reusable (generic) composite transaction manager implementation.
+ * <p>
+ * Each thread's transaction stack lives in a {@link ThreadLocal} holder, so
+ * looking up the current transaction takes no locks. A concurrent index from
+ * transaction to holder allows termination callbacks on other threads (e.g.,
+ * timeouts) to clean up the mappings. Nothing is keyed by {@link Thread},
+ * so short-lived (virtual) threads do not leave entries behind.
  */
 
 public class CompositeTransactionManagerImp implements CompositeTransactionManager,
@@ -32,48 +38,39 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
 {
 	private static final Logger LOGGER = LoggerFactory.createLogger(CompositeTransactionManagerImp.class);
 	
-	private Map<Thread, Stack<CompositeTransaction>> threadtotxmap_ = null;
-    private Map<CompositeTransaction, Thread> txtothreadmap_ = null;
+	private final ThreadLocal<ThreadContext> threadContext = new ThreadLocal<ThreadContext>();
+    private final Map<CompositeTransaction, ThreadContext> txtocontextmap_ = new ConcurrentHashMap<CompositeTransaction, ThreadContext>();
 
 
     public CompositeTransactionManagerImp ()
     {
-        threadtotxmap_ = new HashMap<Thread, Stack<CompositeTransaction>> ();
-        txtothreadmap_ = new HashMap<CompositeTransaction, Thread> ();
     }
 
-
-
-    /**
-     * Get the thread associated with a given transaction.
-     */
-
-    private Thread getThread ( CompositeTransaction ct )
+    private ThreadContext getOrCreateThreadContext ()
     {
-        Thread thread = null;
-
-        synchronized ( txtothreadmap_ ) {
-            thread = (Thread) txtothreadmap_.get ( ct );
+        ThreadContext ret = threadContext.get ();
+        if ( ret == null ) {
+            ret = new ThreadContext ();
+            threadContext.set ( ret );
         }
-        return thread;
+        return ret;
     }
 
     /**
-     * Remove mappings for given thread.
+     * Remove mappings for the current thread.
      *
-     * @return Stack The tx stack that was for current thread.
+     * @return The tx stack that was for current thread, or null if none.
      */
 
-    private Stack<CompositeTransaction> removeThreadMappings ( Thread thread )
+    private TransactionStack removeThreadMappings ()
     {
-
-        Stack<CompositeTransaction> ret = null;
-        synchronized ( threadtotxmap_ ) {
-            ret = threadtotxmap_.remove ( thread );
-            CompositeTransaction tx = ret.peek ();
-            txtothreadmap_.remove ( tx );
+        ThreadContext context = threadContext.get ();
+        if ( context == null ) return null;
+        synchronized ( context ) {
+            TransactionStack ret = context.stack;
+            clear ( context );
+            return ret;
         }
-        return ret;
     }
 
     /**
@@ -84,65 +81,70 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
      *            by getting ct's coordinator.
      */
 
-    private void setThreadMappings ( CompositeTransaction ct , Thread thread )
+    private void setThreadMappings ( CompositeTransaction ct )
             throws IllegalStateException, SysException
     {
         //case 21806: callbacks to ct to be made outside synchronized block
     	ct.addSubTxAwareParticipant ( this ); //step 1
 
-        synchronized ( threadtotxmap_ ) {
+    	ThreadContext context = getOrCreateThreadContext ();
+        synchronized ( context ) {
         	//between step 1 and here, intermediate timeout/rollback of the ct
         	//may have happened; make sure to check or we add a thread mapping
         	//that will never be removed!
         	if ( TxState.ACTIVE.equals ( ct.getState() )) {
-        		Stack<CompositeTransaction> txs = threadtotxmap_.get ( thread );
-        		if ( txs == null )
-        			txs = new Stack<CompositeTransaction>();
-        		txs.push ( ct );
-        		threadtotxmap_.put ( thread, txs );
-        		txtothreadmap_.put ( ct, thread );
+        		txtocontextmap_.put ( ct, context );
+        		context.stack = new TransactionStack ( ct, context.stack );
         	}
         }
 
 
     }
 
-    private void restoreThreadMappings ( Stack<CompositeTransaction> stack , Thread thread )
+    private void restoreThreadMappings ( TransactionStack stack , ThreadContext context )
             throws IllegalStateException
     {
     	//case 21806: callbacks to ct to be made outside synchronized block
-    	CompositeTransaction tx = stack.peek ();
+    	CompositeTransaction tx = stack.top;
     	tx.addSubTxAwareParticipant(this); //step 1
 
-        synchronized ( threadtotxmap_ ) {
+        synchronized ( context ) {
         	//between step 1 and here, intermediate timeout/rollback of the ct
         	//may have happened; make sure to check or we add a thread mapping
         	//that will never be removed!
-        	TxState state = tx.getState();
-        	
-        	if ( state.isOneOf(TxState.ACTIVE, TxState.MARKED_ABORT) ) {
-        		//also resume for marked abort - see case 26398
-        		Stack<CompositeTransaction> txs = threadtotxmap_.get ( thread );
-        		if ( txs != null ) {
+        	if ( isResumable ( tx ) ) {
+        		if ( context.stack != null ) {
         		    throw new IllegalStateException ("Thread already has subtx stack" );
         		}
-        		threadtotxmap_.put ( thread, stack );
-        		txtothreadmap_.put ( tx, thread );
+        		for ( TransactionStack s = stack ; s != null ; s = s.parent ) {
+        			txtocontextmap_.put ( s.top, context );
+        		}
+        		context.stack = stack;
         	}
         }
     }
 
-    private CompositeTransaction getCurrentTx ()
+    private static boolean isResumable ( CompositeTransaction tx )
     {
-        Thread thread = Thread.currentThread ();
-        synchronized ( threadtotxmap_ ) {
-            Stack<CompositeTransaction> txs = threadtotxmap_.get ( thread );
-            if ( txs == null )
-                return null;
-            else
-                return txs.peek ();
+        //also resume for marked abort - see case 26398
+        return tx.getState().isOneOf(TxState.ACTIVE, TxState.MARKED_ABORT);
+    }
 
+    private void clear ( ThreadContext context )
+    {
+        for ( TransactionStack s = context.stack ; s != null ; s = s.parent ) {
+            txtocontextmap_.remove ( s.top, context );
         }
+        context.stack = null;
+    }
+
+    private CompositeTransaction getCurrentTx ()
+    {
+        ThreadContext context = threadContext.get ();
+        if ( context == null ) return null;
+        TransactionStack stack = context.stack;
+        if ( stack == null ) return null;
+        return stack.top;
     }
 
     private TransactionService getTransactionService() {
@@ -246,8 +248,7 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
             LOGGER.logWarning("Recreating a transaction with existing transaction: " + ct.getTid());
         }
         ct = getTransactionService().recreateCompositeTransaction(context);
-        Thread t = Thread.currentThread ();
-        setThreadMappings ( ct, t );
+        setThreadMappings ( ct );
         return ct;
     }
 
@@ -264,8 +265,7 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
         	if(LOGGER.isDebugEnabled()){
         		LOGGER.logDebug("suspend() for transaction " + ret.getTid ());
         	}
-        	Thread thread = Thread.currentThread();   
-            removeThreadMappings ( thread );
+            removeThreadMappings ();
             suspendInTransactionService(ret);
         } else {
         	if(LOGGER.isDebugEnabled()){
@@ -305,7 +305,7 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
     public void resume ( CompositeTransaction ct )
             throws IllegalStateException, SysException
     {
-        Stack<CompositeTransaction> ancestors = new Stack<CompositeTransaction>();
+        TransactionStack ancestors = null;
         Stack<CompositeTransaction> tmp = new Stack<CompositeTransaction>();
         Stack<CompositeTransaction> lineage = (Stack<CompositeTransaction>) ct.getLineage ().clone ();
         boolean done = false;
@@ -317,12 +317,11 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
                 tmp.push ( parent );
         }
         while ( !tmp.isEmpty () ) {
-            ancestors.push ( tmp.pop () );
+            ancestors = new TransactionStack ( tmp.pop (), ancestors );
         }
-        ancestors.push ( ct );
+        ancestors = new TransactionStack ( ct, ancestors );
 
-        Thread thread = Thread.currentThread ();
-        restoreThreadMappings ( ancestors, thread );
+        restoreThreadMappings ( ancestors, getOrCreateThreadContext () );
         resumeInTransactionService(ct);
         if(LOGGER.isDebugEnabled()) {
             LOGGER.logDebug("resume ( " + ct + " ) done for transaction " + ct.getTid ());
@@ -361,9 +360,10 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
     }
 
     /**
-     * Removes the tx associated with calling thread. Restores context to the
-     * last locally started parent, if any. Does nothing if no thread found or
-     * if ct null.
+     * Removes the tx from the thread it is associated with (which need not be
+     * the calling thread), together with any subtransactions still on top of
+     * it. Restores that thread's context to the last locally started parent,
+     * if any. Does nothing if no thread found or if ct null.
      *
      * @param ct
      *            The transaction to remove.
@@ -373,14 +373,26 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
     {
         if ( ct == null ) return;
 
-        Thread thread = getThread ( ct );
-        if ( thread == null ) return;
+        ThreadContext context = txtocontextmap_.get ( ct );
+        if ( context == null ) return;
 
-        Stack<CompositeTransaction> mappings = removeThreadMappings ( thread );
-        if ( mappings != null && !mappings.empty() ) {
-            mappings.pop();
-            if ( !mappings.empty()) {
-                restoreThreadMappings(mappings, thread);
+        synchronized ( context ) {
+            TransactionStack remaining = context.stack;
+            while ( remaining != null && remaining.top != ct ) {
+                remaining = remaining.parent;
+            }
+            if ( remaining == null ) { //concurrently removed
+                txtocontextmap_.remove ( ct, context );
+                return;
+            }
+            remaining = remaining.parent;
+            if ( remaining != null && isResumable ( remaining.top ) ) {
+                for ( TransactionStack s = context.stack ; s != remaining ; s = s.parent ) {
+                    txtocontextmap_.remove ( s.top, context );
+                }
+                context.stack = remaining;
+            } else {
+                clear ( context );
             }
         }
 
@@ -408,10 +420,35 @@ public class CompositeTransactionManagerImp implements CompositeTransactionManag
             ret = ct.createSubTransaction ();
 
         }
-        Thread thread = Thread.currentThread ();
-        setThreadMappings ( ret, thread );
+        setThreadMappings ( ret );
 
         return ret;
     }
 
+    /**
+     * Per-thread holder of the transaction stack. Only modified while
+     * synchronized on the holder itself, but read by its thread without locks.
+     */
+
+    private static final class ThreadContext
+    {
+        volatile TransactionStack stack;
+    }
+
+    /**
+     * Immutable stack of transactions, so readers always see a consistent snapshot.
+     */
+
+    private static final class TransactionStack
+    {
+        final CompositeTransaction top;
+        final TransactionStack parent;
+
+        TransactionStack ( CompositeTransaction top , TransactionStack parent )
+        {
+            this.top = top;
+            this.parent = parent;
+        }
+    }
+
 }
@@ -40,10 +40,10 @@ import com.atomikos.persistence.RecoverableCoordinator;
 import com.atomikos.publish.EventPublisher;
 import com.atomikos.recovery.PendingTransactionRecord;
 import com.atomikos.recovery.TxState;
-import com.atomikos.thread.TaskManager;
 import com.atomikos.timing.AlarmTimer;
 import com.atomikos.timing.AlarmTimerListener;
-import com.atomikos.timing.PooledAlarmTimer;
+import com.atomikos.timing.ScheduledAlarmTimer;
+import com.atomikos.timing.TimingWheel;
 
 /**
  *
@@ -58,14 +58,14 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
 	private static final Logger LOGGER = LoggerFactory.createLogger(CoordinatorImp.class);
 
     static long DEFAULT_MILLIS_BETWEEN_TIMER_WAKEUPS = 150;
-    // SHOULD NOT BE BIG, otherwise lots of sleeping threads -> OUT OF MEMORY!
     
     private static final int MAX_NUMBER_OF_TIMEOUT_TICKS_FOR_INDOUBTS = 30;
     private static final int MAX_NUMBER_OF_TIMEOUT_TICKS_BEFORE_ROLLBACK_OF_ACTIVES = 30;
 
     private int localSiblingsStarted = 0;
     private int localSiblingsTerminated = 0;
-    private AlarmTimer timer_ = null;
+    private ScheduledAlarmTimer timer_ = null;
+    private TimingWheel.Timeout deferredTimerStart_ = null;
 
     private long maxNumberOfTimeoutTicksBeforeHeuristicDecision_ = MAX_NUMBER_OF_TIMEOUT_TICKS_FOR_INDOUBTS;
     private long maxNumberOfTimeoutTicksBeforeRollback_ = MAX_NUMBER_OF_TIMEOUT_TICKS_BEFORE_ROLLBACK_OF_ACTIVES;
@@ -80,6 +80,7 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
     private boolean single_threaded_2pc_;
 	private transient List<Synchronization> synchronizations;
 	private boolean timedout = false;
+	private boolean onePhaseCommit_ = false;
 
     private String recoveryDomainName;
 
@@ -153,7 +154,12 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
         }
 
         setStateHandler ( new ActiveStateHandler ( this ) );
-        startThreads ( DEFAULT_MILLIS_BETWEEN_TIMER_WAKEUPS );
+        if ( isRoot () ) {
+            startThreadsOnTimeout ();
+        } else {
+            // subordinates can go in-doubt and need heuristic timeouts
+            startThreads ( DEFAULT_MILLIS_BETWEEN_TIMER_WAKEUPS );
+        }
         synchronizations = new ArrayList<Synchronization>();
     }
 
@@ -257,18 +263,52 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
     	synchronized ( fsm_ ) {
     		if ( timer_ == null ) { //not null for repeated recovery 
     			stateHandler_.activate ();
-    			timer_ = new PooledAlarmTimer(timeout);
+    			timer_ = new ScheduledAlarmTimer(timeout);
     			timer_.addAlarmTimerListener(this);
-    			submitTimer(timer_);
+    			timer_.start();
     		} 
     	}
 
     }
 
-   
-    private void submitTimer(AlarmTimer timer) {
-    		TaskManager.SINGLETON.executeTask (timer);
-	}
+    /**
+     * Like startThreads, but defers the periodic timer until the transaction 
+     * times out: most transactions terminate well before that and never need it.
+     */
+
+    private void startThreadsOnTimeout ()
+    {
+    	synchronized ( fsm_ ) {
+    		stateHandler_.activate ();
+    		deferredTimerStart_ = TimingWheel.SINGLETON.schedule ( new Runnable() {
+    			@Override
+    			public void run() {
+    				synchronized ( fsm_ ) {
+    					if ( deferredTimerStart_ != null ) { //null if disposed meanwhile
+    						deferredTimerStart_ = null;
+    						startThreads ( DEFAULT_MILLIS_BETWEEN_TIMER_WAKEUPS );
+    					}
+    				}
+    			}
+    		} , getTimeOut () );
+    	}
+    }
+
+    /**
+     * Starts a deferred timer right away, for states whose timeout ticks 
+     * are counted by the timer itself (cf. IndoubtStateHandler).
+     */
+
+    void startDeferredTimer ()
+    {
+    	synchronized ( fsm_ ) {
+    		if ( deferredTimerStart_ != null ) {
+    			deferredTimerStart_.cancel ();
+    			deferredTimerStart_ = null;
+    			startThreads ( DEFAULT_MILLIS_BETWEEN_TIMER_WAKEUPS );
+    		}
+    	}
+    }
 
 	protected long getTimeOut ()
     {
@@ -629,6 +669,8 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
 				ret = true; //see case 23693: don't log prepared state for roots 
 			} else if ( participants_.isEmpty() ) {
 				ret = true; //see case 84851: avoid logging overhead for empty transactions
+			} else if ( onePhaseCommit_ ) {
+				ret = true; //nothing was prepared so there is nothing to recover
 			}					
 		}
 		
@@ -653,6 +695,10 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
     protected void dispose ()
     {
     	synchronized ( fsm_ ) {
+    		if ( deferredTimerStart_ != null ) {
+    			deferredTimerStart_.cancel ();
+    			deferredTimerStart_ = null;
+    		}
     		if ( timer_ != null ) {
     			if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( "Coordinator " + getCoordinatorId() + " : stopping timer..." );
     			timer_.stopTimer ();
@@ -679,6 +725,7 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
     	synchronized ( fsm_ ) {
     		if ( commit ) {
     			if ( participants_.size () <= 1 ) {
+    				onePhaseCommit_ = !hasSubordinateParticipant ();
     				commit ( true );
     			} else {
     				int prepareResult = prepare ();
@@ -692,6 +739,15 @@ public class CoordinatorImp implements CompositeCoordinator, Participant,
     	}
     }
 
+    private boolean hasSubordinateParticipant ()
+    {
+    	// a subordinate does its own 2PC even for 1PC and may need our outcome on recovery
+    	for ( Participant p : participants_ ) {
+    		if ( p instanceof SubTransactionCoordinatorParticipant ) return true;
+    	}
+    	return false;
+    }
+
     void setRollbackOnly() { 	
     	
     	RollbackOnlyParticipant p = new RollbackOnlyParticipant ( );
@@ -63,6 +63,9 @@ abstract class CoordinatorStateHandler
     private Map<String, Integer> cascadeList_;
     // The participants to cascade prepare to
 
+    private Participant lastResource_;
+    // The participant that was not prepared, to commit in one phase first
+
 
     /**
      * Creates a new instance.
@@ -96,6 +99,7 @@ abstract class CoordinatorStateHandler
         readOnlyTable_ = other.readOnlyTable_;
         committed_ = other.committed_;
         cascadeList_ = other.cascadeList_;
+        lastResource_ = other.lastResource_;
     }
 
     /**
@@ -146,6 +150,18 @@ abstract class CoordinatorStateHandler
         return cascadeList_;
     }
 
+    /**
+     * Set the participant that was left out of prepare, if any.
+     *
+     * @param participant
+     *            The participant to commit in one phase before all others.
+     */
+
+    protected void setLastResource ( Participant participant )
+    {
+        lastResource_ = participant;
+    }
+
     /**
      * Get the propagator for sending messages in the subclasses.
      *
@@ -333,6 +349,10 @@ abstract class CoordinatorStateHandler
 
         try {
 
+            if ( lastResource_ != null && !readOnlyTable_.contains ( lastResource_ ) ) {
+                commitLastResource ();
+            }
+
             Vector<Participant> participants = coordinator_.getParticipants();
             int count = (participants.size () - readOnlyTable_.size ());
             TerminationResult commitresult = new TerminationResult ( count );
@@ -348,6 +368,10 @@ abstract class CoordinatorStateHandler
             	//happens if interleaving recovery has done rollback, or if disk is full and log cannot be written
         		String msg = "Error in committing: " + error.getMessage() + " - recovery will clean up in the background";
         		LOGGER.logWarning ( msg , error );
+        		if ( lastResource_ != null ) {
+        			// the last resource has committed, but recovery will roll back the others
+        			throw new HeurMixedException();
+        		}
         		throw new RollbackException ( msg , error );
         	}
 
@@ -436,6 +460,47 @@ abstract class CoordinatorStateHandler
     }
 
 
+    /**
+     * Commits the participant that was left out of prepare, in one phase and
+     * in the calling thread: its outcome decides that of all others, so this
+     * happens before the decision is logged. A crash in between leaves the
+     * others to presumed abort, which is the inherent risk of a last resource.
+     * If the commit fails then the prepared participants are rolled back.
+     */
+
+    private void commitLastResource () throws RollbackException,
+            HeurMixedException, HeurHazardException, SysException
+    {
+        Participant lastResource = lastResource_;
+        // no further messages for it, whatever the outcome
+        readOnlyTable_.add ( lastResource );
+        try {
+            lastResource.commit ( true );
+        } catch ( RollbackException rb ) {
+            rollbackAfterLastResourceFailure ();
+            throw new RollbackException ( "Last resource rolled back - all other participants were rolled back too", rb );
+        } catch ( HeurRollbackException hr ) {
+            rollbackAfterLastResourceFailure ();
+            throw new RollbackException ( "Last resource rolled back - all other participants were rolled back too", hr );
+        } catch ( Exception e ) {
+            // e.g. the HeurMixedException of a failed non-XA commit: outcome unknown
+            LOGGER.logWarning ( "Last resource commit failed for " + lastResource + " - rolling back all other participants" , e );
+            rollbackAfterLastResourceFailure ();
+            throw new HeurHazardException ( "Last resource commit failed with unknown outcome - all other participants were rolled back" );
+        }
+    }
+
+    private void rollbackAfterLastResourceFailure () throws HeurMixedException,
+            HeurHazardException, SysException
+    {
+        try {
+            rollbackFromWithinCallback ( true, false );
+        } catch ( HeurCommitException hc ) {
+            // the prepared participants committed but the last resource did not
+            throw new HeurMixedException();
+        }
+    }
+
 	/**
      * Auxiliary method for rollback. This method can be reused in subclasses in
      * order to process rollback.
@@ -33,6 +33,8 @@ class IndoubtStateHandler extends CoordinatorStateHandler
     {
         super ( previous );
         timeoutTicks = previous.getRollbackTicks();
+        // ticks are counted from here on, so the timer must run from now
+        getCoordinator().startDeferredTimer();
     }
 
     protected TxState getState ()
@@ -39,6 +39,16 @@ abstract class PropagationMessage
         return participant_;
     }
 
+    Result getResult ()
+    {
+        return result_;
+    }
+
+    int getRetryCount ()
+    {
+        return retrycount_;
+    }
+
     /**
      * @exception PropagationException
      *                If any. If the exception is transient, then this instance
@@ -8,21 +8,57 @@
 
 package com.atomikos.icatch.imp;
 
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.event.transaction.ParticipantRetryEvent;
 import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
-import com.atomikos.thread.TaskManager;
+import com.atomikos.publish.EventPublisher;
 
 /**
  * A propagator sends PropagationMessages to participants.
+ * <p>
+ * In threaded mode, the messages of a round are sent in parallel - except
+ * if there is only one, which is then sent by the calling thread. Parallel
+ * messages are sent by a dedicated pool of at most executor_max_pool_size 
+ * threads, separate from the TaskManager: callers wait for the replies outside 
+ * of that pool, and messages submitted by one of its own threads (e.g., for a 
+ * local subordinate coordinator) are sent by that thread as in single-threaded 
+ * mode. So no pool thread ever waits for work queued behind it.
+ * <p>
+ * In threaded mode, no thread is blocked while waiting to retry: the retry is
+ * scheduled on the same pool instead, and retries back off
+ * exponentially (with jitter) from the configured retry interval up to the
+ * configured maximum. In single-threaded mode, the calling thread keeps
+ * sleeping for the fixed retry interval between attempts, so backing off
+ * would only block it longer.
+ * <p>
+ * For monitoring, every retry publishes a {@link ParticipantRetryEvent}, and the 
+ * retry counts of all propagators can be read at any time through the static getters.
  */
 
-class Propagator
+public class Propagator
 {
 	private static final Logger LOGGER = LoggerFactory.createLogger(Propagator.class);
 	
     static long RETRY_INTERVAL = Configuration.getConfigProperties().getOltpRetryInterval();
 
+    static long MAX_RETRY_INTERVAL = Configuration.getConfigProperties().getOltpMaxRetryInterval();
+
+    private static final AtomicInteger numberOfPendingRetries = new AtomicInteger();
+
+    private static final AtomicLong totalNumberOfRetries = new AtomicLong();
+
+    private static final ThreadLocal<Boolean> isPropagatorThread = new ThreadLocal<Boolean>();
+
+    static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor ( Configuration.getConfigProperties().getExecutorMaxPoolSize() );
+
 
     private boolean threaded_ = true;
 
@@ -33,26 +69,96 @@ class Propagator
     }
 
     
-    public synchronized void submitPropagationMessage ( PropagationMessage msg )
+    private static ScheduledThreadPoolExecutor createExecutor ( int maxPoolSize )
     {
-    		PropagatorThread t = new PropagatorThread ( msg );
-    		if ( threaded_ ) {
-    			TaskManager.SINGLETON.executeTask ( t );
+    		ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor ( maxPoolSize, new PropagatorThreadFactory() );
+    		ret.setKeepAliveTime ( 60L, TimeUnit.SECONDS );
+    		ret.allowCoreThreadTimeOut ( true );
+    		ret.setRemoveOnCancelPolicy ( true );
+    		return ret;
+    }
+
+    synchronized void submitPropagationMessage ( PropagationMessage msg )
+    {
+    		boolean threaded = threaded_ && !Boolean.TRUE.equals ( isPropagatorThread.get() );
+    		PropagatorThread t = new PropagatorThread ( msg, threaded );
+    		if ( threaded && !isOnlyMessageOfRound ( msg ) ) {
+    			EXECUTOR.execute ( t );
     		} else {
     			t.run();
     		}
     
     }
 
+    /**
+     * @return The number of messages (for all participants) currently waiting to be retried.
+     */
+
+    public static int getNumberOfPendingRetries ()
+    {
+    		return numberOfPendingRetries.get();
+    }
+
+    /**
+     * @return The number of retries scheduled since startup.
+     */
+
+    public static long getTotalNumberOfRetries ()
+    {
+    		return totalNumberOfRetries.get();
+    }
+
+    private static boolean isOnlyMessageOfRound ( PropagationMessage msg )
+    {
+    		Result result = msg.getResult();
+    		return result != null && result.getNumberOfRepliesToWaitFor() == 1;
+    }
+
+    /**
+     * @param retryCount The number of the retry, starting at 1.
+     * @param threaded
+     * @return The delay before the given retry: backing off if threaded,
+     * the fixed retry interval otherwise.
+     */
+
+    static long computeRetryDelay ( int retryCount , boolean threaded )
+    {
+    		return threaded ? computeRetryDelay ( retryCount ) : RETRY_INTERVAL;
+    }
+
+    /**
+     * @param retryCount The number of the retry, starting at 1.
+     * @return The delay before the given retry: the retry interval doubled for
+     * every previous retry, capped by the max retry interval and with up to 20% jitter.
+     */
+
+    static long computeRetryDelay ( int retryCount )
+    {
+    		long max = Math.max ( RETRY_INTERVAL, MAX_RETRY_INTERVAL );
+    		long ret = RETRY_INTERVAL;
+    		for ( int i = 1 ; i < retryCount && ret < max ; i++ ) {
+    			ret = ret * 2;
+    		}
+    		ret = Math.min ( ret, max );
+    		long jitter = ret / 5;
+    		if ( jitter > 0 ) {
+    			ret = ret - jitter + ThreadLocalRandom.current().nextLong ( 2 * jitter + 1 );
+    		}
+    		return ret;
+    }
+
 
     
     private static class PropagatorThread implements Runnable
     {
     		private PropagationMessage msg;
+    		private final boolean threaded;
+    		private boolean retryPending;
     		
-    		PropagatorThread ( PropagationMessage msg ) 
+    		PropagatorThread ( PropagationMessage msg , boolean threaded ) 
     		{
     			this.msg = msg;
+    			this.threaded = threaded;
     		}
     		
     		public void run() 
@@ -60,19 +166,65 @@ class Propagator
         		try {
         			boolean tryAgain = true;
         			do {
+        				retryStarted();
         				tryAgain = msg.submit();
         				if ( tryAgain  ) {
         				  //wait a little before retrying
-        				  Thread.sleep ( RETRY_INTERVAL );
-                          if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( "Propagator: retrying " + "message: " + msg );
+        				  long delay = retryScheduled();
+        				  if ( threaded ) {
+        					  EXECUTOR.schedule ( this, delay, TimeUnit.MILLISECONDS );
+        					  tryAgain = false; //retried later, without blocking this thread
+        				  } else {
+        					  Thread.sleep ( delay );
+        				  }
         				}
         			} while ( tryAgain );
         		}
         		catch ( Exception e ) {
+        			retryStarted();
         			LOGGER.logWarning ( "ERROR in propagator: " + e.getMessage () +
                             (msg != null ? " while sending message: " + msg : "") , e );
         		}
     		}
+
+    		private long retryScheduled()
+    		{
+    			long ret = computeRetryDelay ( msg.getRetryCount(), threaded );
+    			retryPending = true;
+    			int pending = numberOfPendingRetries.incrementAndGet();
+    			totalNumberOfRetries.incrementAndGet();
+    			String participantUri = msg.getParticipant() == null ? null : msg.getParticipant().getURI();
+    			EventPublisher.INSTANCE.publish ( new ParticipantRetryEvent ( participantUri, msg.getRetryCount(), ret, pending ) );
+    			if ( LOGGER.isTraceEnabled() ) LOGGER.logTrace ( "Propagator: retrying in " + ret + "ms " + "message: " + msg );
+    			return ret;
+    		}
+
+    		private void retryStarted()
+    		{
+    			if ( retryPending ) {
+    				retryPending = false;
+    				numberOfPendingRetries.decrementAndGet();
+    			}
+    		}
     	
     }
+
+    private static class PropagatorThreadFactory implements ThreadFactory
+    {
+    		private final AtomicInteger count = new AtomicInteger();
+
+    		public Thread newThread ( final Runnable r )
+    		{
+    			Thread ret = new Thread ( new Runnable() {
+    				public void run()
+    				{
+    					isPropagatorThread.set ( Boolean.TRUE );
+    					r.run();
+    				}
+    			}, "Atomikos:propagator-" + count.incrementAndGet() );
+    			ret.setContextClassLoader ( Thread.currentThread().getContextClassLoader() );
+    			ret.setDaemon ( true );
+    			return ret;
+    		}
+    }
 }
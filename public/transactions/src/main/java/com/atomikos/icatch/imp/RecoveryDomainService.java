@@ -19,13 +19,13 @@ import com.atomikos.icatch.event.transaction.TransactionHeuristicEvent;
 import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
 import com.atomikos.publish.EventPublisher;
+import com.atomikos.recovery.LineageIndex;
 import com.atomikos.recovery.PendingTransactionRecord;
 import com.atomikos.recovery.RecoveryLog;
 import com.atomikos.recovery.TxState;
-import com.atomikos.thread.TaskManager;
 import com.atomikos.timing.AlarmTimer;
 import com.atomikos.timing.AlarmTimerListener;
-import com.atomikos.timing.PooledAlarmTimer;
+import com.atomikos.timing.ScheduledAlarmTimer;
 
 public class RecoveryDomainService {
 
@@ -38,7 +38,7 @@ public class RecoveryDomainService {
 	}
 
 	private long maxTimeout;
-	private PooledAlarmTimer recoveryTimer;
+	private ScheduledAlarmTimer recoveryTimer;
 	private String recoveryDomainName;
 
 	public void init() {
@@ -46,7 +46,7 @@ public class RecoveryDomainService {
 	    long recoveryDelay = Configuration.getConfigProperties().getRecoveryDelay();
 	    setMaxTimeout(Configuration.getConfigProperties().getMaxTimeout());
 	    recoveryDomainName = Configuration.getConfigProperties().getTmUniqueName();
-	    recoveryTimer = new PooledAlarmTimer(recoveryDelay);
+	    recoveryTimer = new ScheduledAlarmTimer(recoveryDelay);
 
 	    recoveryTimer.addAlarmTimerListener(new AlarmTimerListener() {
 
@@ -55,7 +55,7 @@ public class RecoveryDomainService {
 	            performRecovery();
 	        }
 	    });			
-	    TaskManager.SINGLETON.executeTask(recoveryTimer);
+	    recoveryTimer.start();
 	  
 	}
 
@@ -71,7 +71,8 @@ public class RecoveryDomainService {
 				long startOfRecovery = System.currentTimeMillis();
 				Set<RecoverableResource> resourcesToRecover = getResourcesForRecovery();
 				Collection<PendingTransactionRecord> indoubtCoordinators = recoveryLog.getIndoubtTransactionRecords();
-				Collection<PendingTransactionRecord> foreignIndoubtCoordinators = extractForeignRecords(indoubtCoordinators);
+				LineageIndex indoubtLineages = new LineageIndex(indoubtCoordinators); // shared by all queries below
+				Collection<PendingTransactionRecord> foreignIndoubtCoordinators = extractForeignRecords(indoubtLineages);
 				Collection<PendingTransactionRecord> foreignCoordinatorsForHeuristicAbort = extractForeignIndoubtCoordinatorsForHeuristicAbort(foreignIndoubtCoordinators, startOfRecovery);
 				Collection<PendingTransactionRecord> expiredCommittingCoordinators = recoveryLog.getExpiredPendingCommittingTransactionRecordsAt(startOfRecovery);
 			
@@ -87,7 +88,7 @@ public class RecoveryDomainService {
 				Collection<PendingTransactionRecord> recordsToDelete = new HashSet<>();
 				if (allOk) {
 				    recordsToDelete.addAll(expiredCommittingCoordinators);
-				    Collection<PendingTransactionRecord> expiredNativeIndoubtCoordinators = extractNativeIndoubtCoordinatorsExpiredSince(startOfRecovery - maxTimeout, indoubtCoordinators);
+				    Collection<PendingTransactionRecord> expiredNativeIndoubtCoordinators = extractNativeIndoubtCoordinatorsExpiredSince(startOfRecovery - maxTimeout, indoubtLineages);
 				    recordsToDelete.addAll(expiredNativeIndoubtCoordinators);
 				}
 				recordsToDelete.addAll(foreignCoordinatorsForHeuristicAbort);
@@ -101,17 +102,15 @@ public class RecoveryDomainService {
 
 
     private Collection<PendingTransactionRecord> extractNativeIndoubtCoordinatorsExpiredSince(long momentInThePast,
-            Collection<PendingTransactionRecord> collection) {
-        return PendingTransactionRecord.collectLineages(
-                (PendingTransactionRecord r) -> r.isLocalRoot(recoveryDomainName) && !r.isForeignInDomain(recoveryDomainName) && r.expires < momentInThePast && r.state == TxState.IN_DOUBT ,
-                collection);
+            LineageIndex lineages) {
+        return lineages.collectLineages(
+                (PendingTransactionRecord r) -> r.isLocalRoot(recoveryDomainName) && !r.isForeignInDomain(recoveryDomainName) && r.expires < momentInThePast && r.state == TxState.IN_DOUBT);
     }
 
     private Collection<PendingTransactionRecord> extractForeignRecords(
-            Collection<PendingTransactionRecord> collection) {
-        return PendingTransactionRecord.collectLineages(
-                (PendingTransactionRecord r) -> r.isForeignInDomain(recoveryDomainName), 
-                collection);
+            LineageIndex lineages) {
+        return lineages.collectLineages(
+                (PendingTransactionRecord r) -> r.isForeignInDomain(recoveryDomainName));
     }
 
     private Collection<PendingTransactionRecord> extractForeignIndoubtCoordinatorsForHeuristicAbort(
@@ -129,10 +128,13 @@ public class RecoveryDomainService {
                     EventPublisher.INSTANCE.publish(event);
                 }
             }
+        }
+        if (!ret.isEmpty()) {
+            LineageIndex lineages = new LineageIndex(foreignIndoubtCoordinators);
             for (PendingTransactionRecord entry : ret) {
                 foreignIndoubtCoordinators.remove(entry); //remove - so presumed abort will terminate this one
-                PendingTransactionRecord.removeAllDescendants(entry, foreignIndoubtCoordinators); //make sure that local descendants also abort
-                TransactionHeuristicEvent event = new TransactionHeuristicEvent(record.id, record.superiorId, TxState.HEUR_ABORTED);
+                foreignIndoubtCoordinators.removeAll(lineages.findAllDescendants(entry.id)); //make sure that local descendants also abort
+                TransactionHeuristicEvent event = new TransactionHeuristicEvent(entry.id, entry.superiorId, TxState.HEUR_ABORTED);
                 EventPublisher.INSTANCE.publish(event);
             }
         }
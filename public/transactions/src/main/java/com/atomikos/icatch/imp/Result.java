@@ -11,6 +11,7 @@ package com.atomikos.icatch.imp;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.CountDownLatch;
 
 import com.atomikos.icatch.Participant;
 
@@ -28,13 +29,24 @@ abstract class Result
     protected int result_ = -1;
     // should be set by analyze()
 
-    protected int numberOfMissingReplies_ = 0;
+    private final int numberOfRepliesToWaitFor_;
+    private final CountDownLatch missingReplies_;
     protected Stack<Reply> replies_ = new Stack<Reply>();
     private Set<Participant> repliedlist_ = new HashSet<Participant>();
 
     public Result ( int numberOfRepliesToWaitFor )
     {
-        numberOfMissingReplies_ = numberOfRepliesToWaitFor;
+        numberOfRepliesToWaitFor_ = numberOfRepliesToWaitFor;
+        missingReplies_ = new CountDownLatch ( Math.max ( 0, numberOfRepliesToWaitFor ) );
+    }
+
+    /**
+     * @return The number of replies this round consists of.
+     */
+
+    int getNumberOfRepliesToWaitFor ()
+    {
+        return numberOfRepliesToWaitFor_;
     }
 
     /**
@@ -87,8 +99,7 @@ abstract class Result
         if ( !ignoreReply(reply) ) {
         	repliedlist_.add(reply.getParticipant());
         	replies_.push(reply);
-        	numberOfMissingReplies_--;
-        	notifyAll();
+        	missingReplies_.countDown();
         }
     }
 
@@ -116,9 +127,9 @@ abstract class Result
      *                If the wait is interrupted.
      */
 
-    synchronized void waitForReplies() throws InterruptedException
+    void waitForReplies() throws InterruptedException
     {
-        while ( numberOfMissingReplies_ > 0 ) wait();
+        missingReplies_.await();
     }
     
     /**
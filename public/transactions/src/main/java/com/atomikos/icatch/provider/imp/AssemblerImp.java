@@ -39,6 +39,9 @@ import com.atomikos.recovery.fs.InMemoryRepository;
 import com.atomikos.recovery.fs.OltpLogImp;
 import com.atomikos.recovery.fs.RecoveryLogImp;
 import com.atomikos.recovery.fs.Repository;
+import com.atomikos.recovery.fs.SegmentedLogRepository;
+import com.atomikos.thread.ExecutorMode;
+import com.atomikos.thread.TaskManager;
 import com.atomikos.util.Atomikos;
 import com.atomikos.util.ClassLoadingHelper;
 import com.atomikos.util.UniqueIdMgr;
@@ -159,6 +162,7 @@ public class AssemblerImp implements Assembler {
 		findAllEventListenersInClassPath();
 		RecoveryLog recoveryLog =null;
 		logProperties(configProperties.getCompletedProperties());
+		configureTaskManager(configProperties);
 		String tmUniqueName = configProperties.getTmUniqueName();
 		
 		long maxTimeout = configProperties.getMaxTimeout();
@@ -187,7 +191,20 @@ public class AssemblerImp implements Assembler {
 			LOGGER.logFatal ( msg );
 			throw new SysException(msg);
 		}
-		return new TransactionServiceImp(tmUniqueName, recoveryManager, idMgr, maxTimeout, maxActives, true, recoveryLog);
+		boolean singleThreaded2pc = !configProperties.getThreaded2pc();
+		return new TransactionServiceImp(tmUniqueName, recoveryManager, idMgr, maxTimeout, maxActives, singleThreaded2pc, recoveryLog);
+	}
+
+	private void configureTaskManager(ConfigProperties configProperties) {
+		ExecutorMode mode;
+		try {
+			mode = ExecutorMode.parse(configProperties.getExecutor());
+		} catch (IllegalArgumentException e) {
+			String msg = "Invalid value for " + ConfigProperties.EXECUTOR + ": " + configProperties.getExecutor();
+			LOGGER.logFatal(msg);
+			throw new SysException(msg, e);
+		}
+		TaskManager.SINGLETON.configure(mode, configProperties.getExecutorMaxPoolSize());
 	}
 
 	private Repository createRepository(ConfigProperties configProperties) {
@@ -244,7 +261,12 @@ public class AssemblerImp implements Assembler {
 			ConfigProperties configProperties) throws LogException {
 		InMemoryRepository inMemoryCoordinatorLogEntryRepository = new InMemoryRepository();
 		inMemoryCoordinatorLogEntryRepository.init();
-		FileSystemRepository backupCoordinatorLogEntryRepository = new FileSystemRepository();
+		Repository backupCoordinatorLogEntryRepository;
+		if (configProperties.getLogSegmented()) {
+			backupCoordinatorLogEntryRepository = new SegmentedLogRepository();
+		} else {
+			backupCoordinatorLogEntryRepository = new FileSystemRepository();
+		}
 		backupCoordinatorLogEntryRepository.init();
 		CachedRepository repository = new CachedRepository(inMemoryCoordinatorLogEntryRepository, backupCoordinatorLogEntryRepository);
 		repository.init();
@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+import com.atomikos.logging.Logger;
+import com.atomikos.logging.LoggerFactory;
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+
+/**
+ * Compact binary encoding of {@link PendingTransactionRecord}s.
+ * <p>
+ * A log file starts with a header of 4 magic bytes and one version byte.
+ * Each record is laid out as:
+ * <pre>
+ * varint payloadLength | payload | int32 CRC32C(payload)
+ * payload = varint state ordinal | varlong expires | string id | string recoveryDomainName | string superiorId
+ * string  = varint (utf8Length + 1), 0 meaning null | utf8 bytes
+ * </pre>
+ * A torn tail record is detected by its length or checksum, without parsing it.
+ * A zero length marks the end of the records in a preallocated, zero-filled file.
+ */
+
+final class BinaryRecordFormat {
+
+	private static final Logger LOGGER = LoggerFactory.createLogger(BinaryRecordFormat.class);
+
+	static final byte[] MAGIC = { 'A', 'T', 'X', 'L' };
+	static final byte VERSION = 1;
+	static final int HEADER_LENGTH = MAGIC.length + 1;
+
+	private static final int CHECKSUM_LENGTH = 4;
+	private static final int MAX_VARINT_LENGTH = 5;
+	private static final int MAX_VARLONG_LENGTH = 10;
+	private static final TxState[] STATES = TxState.values();
+
+	private static final Class<?> JDK_CRC32C = findJdkCrc32c();
+
+	private static final ThreadLocal<Checksum> CHECKSUM = new ThreadLocal<Checksum>() {
+		@Override
+		protected Checksum initialValue() {
+			return newChecksum();
+		}
+	};
+
+	private BinaryRecordFormat() {
+	}
+
+	static boolean startsWithHeader(byte[] bytes, int length) {
+		if (length < MAGIC.length) return false;
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (bytes[i] != MAGIC[i]) return false;
+		}
+		return true;
+	}
+
+	static void writeHeader(ByteBuffer buffer) {
+		buffer.put(MAGIC).put(VERSION);
+	}
+
+	/**
+	 * Encodes the record into the given buffer, or into a bigger one if it does not fit.
+	 *
+	 * @param record
+	 * @param buffer A heap buffer to reuse.
+	 * @return The buffer holding the encoded record, flipped and ready to be written.
+	 */
+	static ByteBuffer encode(PendingTransactionRecord record, ByteBuffer buffer) {
+		int payloadLength = payloadLength(record);
+		int required = MAX_VARINT_LENGTH + payloadLength + CHECKSUM_LENGTH;
+		if (buffer == null || buffer.capacity() < required || !buffer.hasArray()) {
+			buffer = ByteBuffer.allocate(Math.max(required, 2 * (buffer == null ? 0 : buffer.capacity())));
+		}
+		buffer.clear();
+		putVarint(buffer, payloadLength);
+		int payloadStart = buffer.position();
+		putVarint(buffer, record.state.ordinal());
+		putVarlong(buffer, record.expires);
+		putString(buffer, record.id);
+		putString(buffer, record.recoveryDomainName);
+		putString(buffer, record.superiorId);
+		buffer.putInt((int) checksum(buffer.array(), buffer.arrayOffset() + payloadStart, payloadLength));
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Decodes all records after the header, keeping the last record per id.
+	 * Stops at the first incomplete or corrupted record, or at zero-filled space.
+	 */
+	static Map<String, PendingTransactionRecord> decode(byte[] bytes, int length) {
+		Map<String, PendingTransactionRecord> ret = new HashMap<String, PendingTransactionRecord>();
+		if (length < HEADER_LENGTH || !startsWithHeader(bytes, length)) {
+			throw new IllegalArgumentException("Not a binary log file");
+		}
+		if (bytes[MAGIC.length] != VERSION) {
+			throw new IllegalArgumentException("Unsupported binary log file version: " + bytes[MAGIC.length]);
+		}
+		Reader reader = new Reader(bytes, HEADER_LENGTH, length);
+		Checksum checksum = newChecksum();
+		while (reader.hasRemaining() && !reader.atPreallocatedSpace()) {
+			int recordStart = reader.position;
+			PendingTransactionRecord record = reader.readRecord(checksum);
+			if (record == null) {
+				LOGGER.logWarning("Ignoring torn or corrupted log record at offset " + recordStart + " - logfile not closed properly last time?");
+				break;
+			}
+			ret.put(record.id, record);
+		}
+		return ret;
+	}
+
+	private static int payloadLength(PendingTransactionRecord record) {
+		return varintLength(record.state.ordinal())
+				+ varlongLength(record.expires)
+				+ stringLength(record.id)
+				+ stringLength(record.recoveryDomainName)
+				+ stringLength(record.superiorId);
+	}
+
+	private static int stringLength(String value) {
+		if (value == null) return 1;
+		int utf8Length = utf8Length(value);
+		return varintLength(utf8Length + 1) + utf8Length;
+	}
+
+	private static int utf8Length(String value) {
+		int ret = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				ret++;
+			} else if (c < 0x800) {
+				ret += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				ret += 4;
+				i++;
+			} else {
+				ret += 3;
+			}
+		}
+		return ret;
+	}
+
+	private static void putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			buffer.put((byte) 0);
+			return;
+		}
+		putVarint(buffer, utf8Length(value) + 1);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	private static int varintLength(int value) {
+		return varlongLength(value & 0xFFFFFFFFL);
+	}
+
+	private static int varlongLength(long value) {
+		int ret = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			ret++;
+		}
+		return ret;
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		putVarlong(buffer, value & 0xFFFFFFFFL);
+	}
+
+	private static void putVarlong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long checksum(byte[] bytes, int offset, int length) {
+		Checksum checksum = CHECKSUM.get();
+		checksum.reset();
+		checksum.update(bytes, offset, length);
+		return checksum.getValue();
+	}
+
+	static Checksum newChecksum() {
+		Checksum ret = null;
+		if (JDK_CRC32C != null) {
+			try {
+				ret = (Checksum) JDK_CRC32C.newInstance();
+			} catch (Exception e) {
+				// fall back to our own implementation
+			}
+		}
+		if (ret == null) {
+			ret = new Crc32c();
+		}
+		return ret;
+	}
+
+	private static Class<?> findJdkCrc32c() {
+		try {
+			return Class.forName("java.util.zip.CRC32C"); // JDK 9 and later
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Table-based CRC32C (Castagnoli) for JVMs without java.util.zip.CRC32C.
+	 */
+	static final class Crc32c implements Checksum {
+
+		private static final int[] TABLE = createTable();
+
+		private int crc = 0xFFFFFFFF;
+
+		private static int[] createTable() {
+			int[] ret = new int[256];
+			for (int i = 0; i < 256; i++) {
+				int c = i;
+				for (int k = 0; k < 8; k++) {
+					c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+				}
+				ret[i] = c;
+			}
+			return ret;
+		}
+
+		@Override
+		public void update(int b) {
+			crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+		}
+
+		@Override
+		public void update(byte[] b, int off, int len) {
+			int c = crc;
+			for (int i = off; i < off + len; i++) {
+				c = (c >>> 8) ^ TABLE[(c ^ b[i]) & 0xFF];
+			}
+			crc = c;
+		}
+
+		@Override
+		public long getValue() {
+			return (~crc) & 0xFFFFFFFFL;
+		}
+
+		@Override
+		public void reset() {
+			crc = 0xFFFFFFFF;
+		}
+	}
+
+	private static final class Reader {
+
+		private final byte[] bytes;
+		private final int limit;
+		private int position;
+
+		Reader(byte[] bytes, int position, int limit) {
+			this.bytes = bytes;
+			this.position = position;
+			this.limit = limit;
+		}
+
+		boolean hasRemaining() {
+			return position < limit;
+		}
+
+		boolean atPreallocatedSpace() {
+			return bytes[position] == 0; // no record has an empty payload
+		}
+
+		/**
+		 * @return The record, or null if incomplete or corrupted.
+		 */
+		PendingTransactionRecord readRecord(Checksum checksum) {
+			long payloadLength = readVarlong(MAX_VARINT_LENGTH);
+			if (payloadLength < 0 || payloadLength > limit - position - CHECKSUM_LENGTH) {
+				return null;
+			}
+			int payloadStart = position;
+			int payloadEnd = payloadStart + (int) payloadLength;
+			checksum.reset();
+			checksum.update(bytes, payloadStart, (int) payloadLength);
+			if ((int) checksum.getValue() != readInt(payloadEnd)) {
+				return null;
+			}
+			PendingTransactionRecord ret = null;
+			long ordinal = readVarlong(MAX_VARINT_LENGTH);
+			long expires = readVarlong(MAX_VARLONG_LENGTH);
+			if (ordinal >= 0 && ordinal < STATES.length) {
+				String id = readString(payloadEnd);
+				String recoveryDomainName = readString(payloadEnd);
+				String superiorId = readString(payloadEnd);
+				if (id != null && position == payloadEnd) {
+					ret = new PendingTransactionRecord(id, STATES[(int) ordinal], expires, recoveryDomainName, superiorId);
+				}
+			}
+			position = payloadEnd + CHECKSUM_LENGTH;
+			return ret;
+		}
+
+		private int readInt(int offset) {
+			return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+					| ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+		}
+
+		/**
+		 * @return The value, or -1 if malformed.
+		 */
+		private long readVarlong(int maxLength) {
+			long ret = 0;
+			for (int i = 0; i < maxLength && position < limit; i++) {
+				byte b = bytes[position++];
+				ret |= (long) (b & 0x7F) << (7 * i);
+				if ((b & 0x80) == 0) {
+					return ret;
+				}
+			}
+			return -1;
+		}
+
+		private String readString(int end) {
+			long length = readVarlong(MAX_VARINT_LENGTH);
+			if (length <= 0 || length - 1 > end - position) {
+				return null;
+			}
+			String ret = new String(bytes, position, (int) length - 1, StandardCharsets.UTF_8);
+			position += length - 1;
+			return ret;
+		}
+	}
+
+}
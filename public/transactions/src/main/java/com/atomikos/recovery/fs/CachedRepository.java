@@ -11,16 +11,23 @@ package com.atomikos.recovery.fs;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.event.log.CheckpointEvent;
 import com.atomikos.icatch.provider.ConfigProperties;
 import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
+import com.atomikos.publish.EventPublisher;
 import com.atomikos.recovery.LogException;
 import com.atomikos.recovery.LogReadException;
 import com.atomikos.recovery.LogWriteException;
 import com.atomikos.recovery.PendingTransactionRecord;
 import com.atomikos.recovery.TxState;
+import com.atomikos.thread.TaskManager;
 
 public class CachedRepository  implements Repository {
 
@@ -30,7 +37,12 @@ public class CachedRepository  implements Repository {
 
 	private final Repository backupCoordinatorLogEntryRepository;
 
-	private volatile long numberOfPutsSinceLastCheckpoint = 0;
+	private final AtomicLong numberOfPutsSinceLastCheckpoint = new AtomicLong();
+	// puts share the read lock so concurrent writes can be group committed; starting a checkpoint is exclusive
+	private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+	private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+	private volatile long checkpointDueSince;
+	private volatile boolean closed; // written under the checkpoint write lock
 	private long checkpointInterval;
 	private long forgetOrphanedLogEntriesDelay;
 	public CachedRepository(
@@ -63,38 +75,102 @@ public class CachedRepository  implements Repository {
 	}
 
 	@Override
-	public synchronized void put(String id, PendingTransactionRecord coordinatorLogEntry)
+	public void put(String id, PendingTransactionRecord coordinatorLogEntry)
 			throws IllegalArgumentException, LogWriteException {
 		
 		try {
+			checkpointLock.readLock().lock();
+			try {
+				backupCoordinatorLogEntryRepository.put(id, coordinatorLogEntry);
+				inMemoryCoordinatorLogEntryRepository.put(id, coordinatorLogEntry);
+				numberOfPutsSinceLastCheckpoint.incrementAndGet();
+			} finally {
+				checkpointLock.readLock().unlock();
+			}
 			if(needsCheckpoint()){
-				performCheckpoint();
+				scheduleCheckpoint();
 			}
-			backupCoordinatorLogEntryRepository.put(id, coordinatorLogEntry);
-			inMemoryCoordinatorLogEntryRepository.put(id, coordinatorLogEntry);
-			numberOfPutsSinceLastCheckpoint++;
 		} catch (Exception e) {
 			performCheckpoint();
 		}
 	}
 
-	private synchronized void performCheckpoint() throws LogWriteException {
+	/**
+	 * Hands the checkpoint over to a background thread, so no put pays for it.
+	 */
+	private void scheduleCheckpoint() {
+		if (checkpointScheduled.compareAndSet(false, true)) {
+			checkpointDueSince = System.currentTimeMillis();
+			TaskManager.SINGLETON.executeTask(new Runnable() {
+				@Override
+				public void run() {
+					performBackgroundCheckpoint();
+				}
+			});
+		}
+	}
+
+	private void performBackgroundCheckpoint() {
+		try {
+			long start = System.currentTimeMillis();
+			int numberOfEntries = performCheckpoint();
+			long end = System.currentTimeMillis();
+			EventPublisher.INSTANCE.publish(new CheckpointEvent(end - start, start - checkpointDueSince, numberOfEntries));
+		} catch (LogWriteException alreadyLogged) {
+			// closed, or log marked as corrupt: nothing else we can do here
+		} finally {
+			checkpointScheduled.set(false);
+		}
+	}
+
+	/**
+	 * Only taking the snapshot and starting the checkpoint of the backup log exclude puts: 
+	 * the backup log writes and forces the snapshot while puts go on. Checkpoints and close 
+	 * are serialized by the monitor of this instance.
+	 *
+	 * @return The number of entries kept.
+	 */
+	private synchronized int performCheckpoint() throws LogWriteException {
+		Collection<PendingTransactionRecord> coordinatorLogEntries;
+		checkpointLock.writeLock().lock();
+		try {
+			if (closed) {
+				// a checkpoint scheduled before close must not write to the closed log
+				throw new LogWriteException(new IllegalStateException("Log is closed"));
+			}
+			coordinatorLogEntries = startCheckpointWhileLocked();
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
 		try {
-			Collection<PendingTransactionRecord> coordinatorLogEntries =	purgeExpiredCoordinatorLogEntriesInStateAborting();
 			backupCoordinatorLogEntryRepository.writeCheckpoint(coordinatorLogEntries);
+		} catch (Exception corrupted) {
+			throw markAsCorrupted(corrupted);
+		}
+		return coordinatorLogEntries.size();
+	}
+
+	private Collection<PendingTransactionRecord> startCheckpointWhileLocked() throws LogWriteException {
+		try {
+			Collection<PendingTransactionRecord> coordinatorLogEntries =	purgeExpiredCoordinatorLogEntriesInStateAborting();
+			backupCoordinatorLogEntryRepository.startCheckpoint();
 			inMemoryCoordinatorLogEntryRepository.writeCheckpoint(coordinatorLogEntries);
-			numberOfPutsSinceLastCheckpoint=0;
-		} catch (LogWriteException corrupted) {
-			LOGGER.logFatal("Corrupted log file - restart JVM", corrupted);
-			corrupt = true;
-			throw corrupted;	
+			numberOfPutsSinceLastCheckpoint.set(0);
+			return coordinatorLogEntries;
 		} catch (Exception corrupted) {
-			LOGGER.logFatal("Corrupted log file - restart JVM", corrupted);
-			corrupt = true;
-			throw new LogWriteException(corrupted);
+			throw markAsCorrupted(corrupted);
 		}
 	}
 
+	private LogWriteException markAsCorrupted(Exception corrupted) {
+		LOGGER.logFatal("Corrupted log file - restart JVM", corrupted);
+		corrupt = true;
+		if (corrupted instanceof LogWriteException) {
+			return (LogWriteException) corrupted;
+		}
+		return new LogWriteException(corrupted);
+	}
+
 	private Collection<PendingTransactionRecord> purgeExpiredCoordinatorLogEntriesInStateAborting() {
 		Set<PendingTransactionRecord> ret = new HashSet<PendingTransactionRecord>();
 		long now = System.currentTimeMillis();
@@ -123,7 +199,7 @@ public class CachedRepository  implements Repository {
 	}
 
 	private boolean needsCheckpoint() {
-		return numberOfPutsSinceLastCheckpoint>=checkpointInterval;
+		return numberOfPutsSinceLastCheckpoint.get()>=checkpointInterval;
 	}
 
 	@Override
@@ -146,12 +222,30 @@ public class CachedRepository  implements Repository {
 		return inMemoryCoordinatorLogEntryRepository.findAllCommittingCoordinatorLogEntries();
 	}
 
+	@Override
+	public Collection<PendingTransactionRecord> findAllExpiredCommittingLineages(long time, String recoveryDomainName) throws LogReadException {
+		assertNotCorrupted();
+		return inMemoryCoordinatorLogEntryRepository.findAllExpiredCommittingLineages(time, recoveryDomainName);
+	}
+
+	@Override
+	public Collection<PendingTransactionRecord> findAllIndoubtLineages() throws LogReadException {
+		assertNotCorrupted();
+		return inMemoryCoordinatorLogEntryRepository.findAllIndoubtLineages();
+	}
+
 	
 
 	@Override
-	public void close() {
-		backupCoordinatorLogEntryRepository.close();
-		inMemoryCoordinatorLogEntryRepository.close();
+	public synchronized void close() { // waits for any background checkpoint
+		checkpointLock.writeLock().lock();
+		try {
+			closed = true;
+			backupCoordinatorLogEntryRepository.close();
+			inMemoryCoordinatorLogEntryRepository.close();
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
 	}
 
 	@Override
@@ -159,6 +253,11 @@ public class CachedRepository  implements Repository {
 		return inMemoryCoordinatorLogEntryRepository.getAllCoordinatorLogEntries();
 	}
 
+	@Override
+	public void startCheckpoint() {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public void writeCheckpoint(
 			Collection<PendingTransactionRecord> checkpointContent) {
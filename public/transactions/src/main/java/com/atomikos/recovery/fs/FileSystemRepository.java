@@ -8,7 +8,9 @@
 
 package com.atomikos.recovery.fs;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -21,7 +23,10 @@ import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.atomikos.icatch.config.Configuration;
 import com.atomikos.icatch.provider.ConfigProperties;
@@ -34,12 +39,28 @@ import com.atomikos.recovery.LogWriteException;
 import com.atomikos.recovery.PendingTransactionRecord;
 import com.atomikos.util.VersionedFile;
 
+/**
+ * A log file that is appended to by puts and rewritten by checkpoints, as a new
+ * {@link VersionedFile} version.
+ * <p>
+ * Puts go on while a checkpoint is written: starting the checkpoint merely opens
+ * the new version, which puts append to from then on. The checkpoint content is
+ * written to it afterwards, except for records put since the start: these are
+ * already in there with a newer state. Until the new version is forced and the
+ * older ones deleted, a restart reads the older versions and then the newer ones, 
+ * so the latest state of each record wins.
+ */
+
 public class FileSystemRepository implements Repository {
 
 	private static final Logger LOGGER = LoggerFactory.createLogger(FileSystemRepository.class);
 	private VersionedFile file;
 	private FileChannel rwChannel = null;
 	private LogFileLock lock_;
+	private GroupCommitWriter groupCommitWriter;
+	private boolean binaryFormat;
+	private final ThreadLocal<ByteBuffer> encodingBuffer = new ThreadLocal<ByteBuffer>();
+	private Set<String> idsPutSinceCheckpointStart; // guarded by this, null if no checkpoint was started
 
 	@Override
 	public void init() throws LogException {
@@ -52,7 +73,13 @@ public class FileSystemRepository implements Repository {
 		LOGGER.logDebug("LogFileLock " + lock_);
 		lock_.acquireLock();
 		file = new VersionedFile(baseDir, baseName, ".log");
-
+		binaryFormat = configProperties.getLogBinaryFormat();
+		if (configProperties.getLogGroupCommit()) {
+			int maxBatchSize = configProperties.getLogGroupCommitMaxBatchSize();
+			long lingerTime = configProperties.getLogGroupCommitLingerTime();
+			LOGGER.logDebug("Using group commit with max batch size " + maxBatchSize + " and linger time " + lingerTime + "ms");
+			groupCommitWriter = new GroupCommitWriter(maxBatchSize, lingerTime, GroupCommitWriter.DEFAULT_BUFFER_SIZE);
+		}
 	}
 	
 	@Override
@@ -60,25 +87,57 @@ public class FileSystemRepository implements Repository {
 			throws IllegalArgumentException, LogWriteException {
 
 		try {
-			initChannelIfNecessary();
+			prepareToPut(pendingTransactionRecord);
 			write(pendingTransactionRecord, true);
 		} catch (IOException e) {
 			throw new LogWriteException(e);
 		}
 	}
 
-	private synchronized void initChannelIfNecessary()
-			throws FileNotFoundException {
+	private synchronized void prepareToPut(PendingTransactionRecord pendingTransactionRecord)
+			throws IOException {
 		if (rwChannel == null) {
-			rwChannel = file.openNewVersionForNioWriting();
+			openNewVersionForWriting();
+		}
+		if (idsPutSinceCheckpointStart != null) {
+			// before writing: the checkpoint must not write an older state after this one
+			idsPutSinceCheckpointStart.add(pendingTransactionRecord.id);
+		}
+	}
+
+	private void openNewVersionForWriting() throws IOException {
+		rwChannel = file.openNewVersionForNioWriting();
+		if (binaryFormat) {
+			ByteBuffer header = ByteBuffer.allocate(BinaryRecordFormat.HEADER_LENGTH);
+			BinaryRecordFormat.writeHeader(header);
+			header.flip();
+			rwChannel.write(header);
 		}
 	}
+
 	private void write(PendingTransactionRecord pendingTransactionRecord,
 			boolean flushImmediately) throws IOException {
-		String str = pendingTransactionRecord.toRecord();
-		byte[] buffer = str.getBytes();
-		ByteBuffer buff = ByteBuffer.wrap(buffer);
-		writeToFile(buff, flushImmediately);
+		ByteBuffer buff = encode(pendingTransactionRecord);
+		if (flushImmediately && groupCommitWriter != null) {
+			groupCommitWriter.write(rwChannel, buff);
+		} else {
+			writeToFile(buff, flushImmediately);
+		}
+	}
+
+	private ByteBuffer encode(PendingTransactionRecord pendingTransactionRecord) {
+		ByteBuffer ret;
+		if (binaryFormat) {
+			ByteBuffer reusable = encodingBuffer.get();
+			ret = BinaryRecordFormat.encode(pendingTransactionRecord, reusable);
+			if (ret != reusable) {
+				encodingBuffer.set(ret);
+			}
+		} else {
+			String str = pendingTransactionRecord.toRecord();
+			ret = ByteBuffer.wrap(str.getBytes());
+		}
+		return ret;
 	}
 
 	private synchronized void writeToFile(ByteBuffer buff, boolean force)
@@ -99,6 +158,16 @@ public class FileSystemRepository implements Repository {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Collection<PendingTransactionRecord> findAllExpiredCommittingLineages(long time, String recoveryDomainName) throws LogReadException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<PendingTransactionRecord> findAllIndoubtLineages() throws LogReadException {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public Collection<PendingTransactionRecord> getAllCoordinatorLogEntries() throws LogReadException {
 		FileInputStream fis = null;
@@ -109,18 +178,42 @@ public class FileSystemRepository implements Repository {
 			// merely return the default empty vector
 		} 
 		if (fis != null) {
-			return readFromInputStream(fis);
+			Map<String, PendingTransactionRecord> ret = new HashMap<String, PendingTransactionRecord>();
+			addLatestStates(ret, readFromInputStream(fis));
+			// left behind by a crash during a checkpoint: the puts since its start are only in there
+			for (FileInputStream newer : openNewerVersionsForReading()) {
+				addLatestStates(ret, readFromInputStream(newer));
+			}
+			return ret.values();
 		}
 		//else
 		return Collections.emptyList();
 	}
 
+	private List<FileInputStream> openNewerVersionsForReading() throws LogReadException {
+		try {
+			return file.openNewerVersionsForReading();
+		} catch (FileNotFoundException e) {
+			throw new LogReadException(e);
+		}
+	}
+
+	private static void addLatestStates(Map<String, PendingTransactionRecord> records, Collection<PendingTransactionRecord> newerRecords) {
+		for (PendingTransactionRecord record : newerRecords) {
+			records.put(record.id, record);
+		}
+	}
+
 	public static Collection<PendingTransactionRecord> readFromInputStream(
 			InputStream in) throws LogReadException {
 		Map<String, PendingTransactionRecord> coordinatorLogEntries = new HashMap<String, PendingTransactionRecord>();
 		BufferedReader br = null;
 		try {
-			InputStreamReader isr = new InputStreamReader(in);
+			BufferedInputStream bis = new BufferedInputStream(in);
+			if (isBinaryFormat(bis)) {
+				return readBinaryContent(bis).values();
+			}
+			InputStreamReader isr = new InputStreamReader(bis);
 			br = new BufferedReader(isr);
 			coordinatorLogEntries = readContent(br);
 		} catch (Exception e) {
@@ -131,6 +224,29 @@ public class FileSystemRepository implements Repository {
 		}
 		return coordinatorLogEntries.values();
 	}
+
+	private static boolean isBinaryFormat(BufferedInputStream in) throws IOException {
+		byte[] magic = new byte[BinaryRecordFormat.MAGIC.length];
+		in.mark(magic.length);
+		int length = in.read(magic);
+		in.reset();
+		return BinaryRecordFormat.startsWithHeader(magic, length);
+	}
+
+	static Map<String, PendingTransactionRecord> readBinaryContent(InputStream in) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int length = in.read(chunk);
+		while (length >= 0) {
+			content.write(chunk, 0, length);
+			length = in.read(chunk);
+		}
+		try {
+			return BinaryRecordFormat.decode(content.toByteArray(), content.size());
+		} finally {
+			in.close();
+		}
+	}
 	
 	static Map<String, PendingTransactionRecord> readContent(BufferedReader br)
 			throws IOException {
@@ -184,25 +300,49 @@ public class FileSystemRepository implements Repository {
 	}
 	
 	@Override
-	public void writeCheckpoint(Collection<PendingTransactionRecord> checkpointContent) throws LogWriteException {
-
+	public synchronized void startCheckpoint() throws LogWriteException {
 		try {
 			closeOutput();
+			openNewVersionForWriting();
+			idsPutSinceCheckpointStart = new HashSet<String>();
+		} catch (Exception e) {
+			LOGGER.logFatal("Failed to start checkpoint", e);
+			throw new LogWriteException(e);
+		}
+	}
 
-			rwChannel = file.openNewVersionForNioWriting();
+	@Override
+	public void writeCheckpoint(Collection<PendingTransactionRecord> checkpointContent) throws LogWriteException {
+		if (!isCheckpointStarted()) {
+			startCheckpoint();
+		}
+		try {
 			for (PendingTransactionRecord coordinatorLogEntry : checkpointContent) {
-				write(coordinatorLogEntry, false);
+				writeUnlessPutSinceCheckpointStart(coordinatorLogEntry);
 			}
+			// outside the lock: concurrent puts only wait for their own record
 			rwChannel.force(false);
-			file.discardBackupVersion();
-		} catch (FileNotFoundException firstStart) {
-			// the file could not be opened for reading;
-			// merely return the default empty vector
+			endCheckpoint();
 		} catch (Exception e) {
 			LOGGER.logFatal("Failed to write checkpoint", e);
 			throw new LogWriteException(e);
 		}
 	}
+
+	private synchronized boolean isCheckpointStarted() {
+		return idsPutSinceCheckpointStart != null;
+	}
+
+	private synchronized void writeUnlessPutSinceCheckpointStart(PendingTransactionRecord coordinatorLogEntry) throws IOException {
+		if (!idsPutSinceCheckpointStart.contains(coordinatorLogEntry.id)) {
+			write(coordinatorLogEntry, false);
+		}
+	}
+
+	private synchronized void endCheckpoint() throws IOException {
+		idsPutSinceCheckpointStart = null;
+		file.discardBackupVersion();
+	}
 	
 	protected void closeOutput() throws IllegalStateException {
 		try {
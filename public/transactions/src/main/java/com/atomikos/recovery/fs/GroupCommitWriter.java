@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.atomikos.logging.Logger;
+import com.atomikos.logging.LoggerFactory;
+
+/**
+ * Gathers records written by concurrent threads into batches, so one single
+ * force of the log file covers all of them. The first thread to find no flush
+ * in progress becomes the leader: it lingers a bit to let others join, then
+ * writes and forces the whole batch while the others wait for the outcome.
+ * Each caller only returns after its own record was forced to disk.
+ */
+
+class GroupCommitWriter {
+
+	private static final Logger LOGGER = LoggerFactory.createLogger(GroupCommitWriter.class);
+
+	static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final int maxBatchSize;
+	private final long lingerTimeMillis;
+	private final ByteBuffer buffer;
+
+	private final Object lock = new Object();
+	private Batch currentBatch = new Batch();
+	private boolean flushInProgress = false;
+
+	private long numberOfRecords;
+	private long numberOfForces;
+
+	GroupCommitWriter(int maxBatchSize, long lingerTimeMillis, int bufferSize) {
+		if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		this.maxBatchSize = maxBatchSize;
+		this.lingerTimeMillis = Math.max(0, lingerTimeMillis);
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Writes the record and returns after the batch containing it was forced.
+	 *
+	 * @param channel
+	 * @param record The encoded record, left untouched by the caller until this method returns.
+	 * @throws IOException If the batch could not be written or forced.
+	 */
+	void write(FileChannel channel, ByteBuffer record) throws IOException {
+		Batch batch;
+		synchronized (lock) {
+			batch = currentBatch;
+			batch.add(record);
+			if (batch.size() >= maxBatchSize) {
+				lock.notifyAll(); // wake up a lingering leader
+			}
+			if (!waitUntilDoneOrLeader(batch)) {
+				batch.rethrowFailure();
+				return;
+			}
+		}
+		flush(channel);
+		batch.rethrowFailure();
+	}
+
+	/**
+	 * @return True if the calling thread has to flush the batch, false if the batch was flushed by another thread.
+	 */
+	private boolean waitUntilDoneOrLeader(Batch batch) throws InterruptedIOException {
+		while (!batch.isDone()) {
+			if (!flushInProgress) {
+				flushInProgress = true;
+				return true;
+			}
+			try {
+				lock.wait();
+			} catch (InterruptedException e) {
+				// we can't tell if our record made it to disk or not
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for group commit");
+			}
+		}
+		return false;
+	}
+
+	private void flush(FileChannel channel) {
+		Batch batch = null;
+		IOException failure = null;
+		try {
+			batch = takeBatchAfterLingering();
+			writeAndForce(channel, batch);
+		} catch (IOException e) {
+			LOGGER.logWarning("Failed to write batch to log file", e);
+			failure = e;
+		} finally {
+			synchronized (lock) {
+				if (batch == null) { // interrupted while lingering
+					batch = currentBatch;
+					currentBatch = new Batch();
+					failure = new InterruptedIOException("Interrupted while lingering for group commit");
+				}
+				batch.markAsDone(failure);
+				numberOfRecords += batch.size();
+				if (failure == null) numberOfForces++;
+				flushInProgress = false;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private Batch takeBatchAfterLingering() throws InterruptedIOException {
+		synchronized (lock) {
+			long remaining = lingerTimeMillis;
+			long deadline = System.currentTimeMillis() + remaining;
+			while (remaining > 0 && currentBatch.size() < maxBatchSize) {
+				try {
+					lock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			Batch ret = currentBatch;
+			currentBatch = new Batch();
+			return ret;
+		}
+	}
+
+	private void writeAndForce(FileChannel channel, Batch batch) throws IOException {
+		buffer.clear();
+		for (ByteBuffer record : batch.records) {
+			if (record.remaining() > buffer.remaining()) {
+				drain(channel);
+			}
+			if (record.remaining() > buffer.capacity()) {
+				writeFully(channel, record);
+			} else {
+				buffer.put(record);
+			}
+		}
+		drain(channel);
+		channel.force(false);
+	}
+
+	private void drain(FileChannel channel) throws IOException {
+		buffer.flip();
+		writeFully(channel, buffer);
+		buffer.clear();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buff) throws IOException {
+		while (buff.hasRemaining()) {
+			channel.write(buff);
+		}
+	}
+
+	/**
+	 * @return The average number of records per force, for monitoring.
+	 */
+	double getAverageBatchSize() {
+		synchronized (lock) {
+			return numberOfForces == 0 ? 0 : (double) numberOfRecords / numberOfForces;
+		}
+	}
+
+	private static class Batch {
+
+		private final List<ByteBuffer> records = new ArrayList<ByteBuffer>();
+		private boolean done;
+		private IOException failure;
+
+		void add(ByteBuffer record) {
+			records.add(record);
+		}
+
+		int size() {
+			return records.size();
+		}
+
+		// called while holding the lock of the writer
+		void markAsDone(IOException failure) {
+			this.failure = failure;
+			this.done = true;
+		}
+
+		// called while holding the lock of the writer
+		boolean isDone() {
+			return done;
+		}
+
+		// called by the leader or while holding the lock of the writer
+		void rethrowFailure() throws IOException {
+			if (failure != null) {
+				throw new IOException("Group commit failed", failure);
+			}
+		}
+	}
+
+}
@@ -8,21 +8,40 @@
 
 package com.atomikos.recovery.fs;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import com.atomikos.recovery.PendingTransactionRecord;
 import com.atomikos.recovery.TxState;
 
+/**
+ * Lock-free, in-memory store of the pending records, with secondary indexes by
+ * state, by superior and by expiry so recovery queries only visit matching records.
+ * <p>
+ * The indexes only hold ids and are updated after the primary map, so
+ * concurrent puts for the same id may leave stale index entries behind:
+ * queries check every entry against the primary map, and each checkpoint
+ * rebuilds the indexes from scratch.
+ * <p>
+ * A checkpoint builds the new map and indexes off to the side and then
+ * publishes them with one reference swap, so concurrent queries see either
+ * the old or the new content but never a partial one.
+ */
+
 public class InMemoryRepository implements Repository {
 
-private  Map<String, PendingTransactionRecord> storage = new ConcurrentHashMap<String, PendingTransactionRecord>();
+	private volatile Content content = new Content();
+
+	private volatile boolean closed = true;
 
-	
-	private boolean closed = true;
 	@Override
 	public void init() {
 		closed=false;
@@ -30,81 +49,235 @@ private  Map<String, PendingTransactionRecord> storage = new ConcurrentHashMap<S
 
 
 	@Override
-	public synchronized void put(String id, PendingTransactionRecord coordinatorLogEntry)
+	public void put(String id, PendingTransactionRecord coordinatorLogEntry)
 			throws IllegalArgumentException {
-		PendingTransactionRecord existing = storage.get(id);
-		if (existing != null && existing == coordinatorLogEntry) {
-			throw new IllegalArgumentException("cannot put the same coordinatorLogEntry twice");
-		}
-		if(coordinatorLogEntry.state.isFinalState()){
-			storage.remove(id);
-		} else {
-			storage.put(id, coordinatorLogEntry);	
-		}
+		content.put(id, coordinatorLogEntry);
 	}
 
 	@Override
-	public synchronized PendingTransactionRecord get(String coordinatorId) {
-		return storage.get(coordinatorId);
+	public PendingTransactionRecord get(String coordinatorId) {
+		return content.storage.get(coordinatorId);
 	}
 
 	@Override
-	public synchronized Collection<PendingTransactionRecord> findAllCommittingCoordinatorLogEntries() {
+	public Collection<PendingTransactionRecord> findAllCommittingCoordinatorLogEntries() {
+		Content content = this.content;
 		Set<PendingTransactionRecord> res = new HashSet<PendingTransactionRecord>();
-		Collection<PendingTransactionRecord> allCoordinatorLogEntry = storage.values();	
-		for (PendingTransactionRecord coordinatorLogEntry : allCoordinatorLogEntry) {
-			TxState state = coordinatorLogEntry.state;
-			if(state == TxState.COMMITTING) {
-					res.add(coordinatorLogEntry);
-			} else if (state == TxState.IN_DOUBT) {
-				if(hasCommittingSuperiorCoordnator(coordinatorLogEntry)) {
-					res.add(coordinatorLogEntry);
-				}
-					
-			}
+		for (PendingTransactionRecord committing : content.findAllInState(TxState.COMMITTING)) {
+			res.add(committing);
+			content.collectDescendants(committing, res);
 		}
+		// only keep descendants that are committing or in-doubt
+		res.removeIf(r -> r.state != TxState.COMMITTING && r.state != TxState.IN_DOUBT);
 		return res;
 	}
 
-	private boolean hasCommittingSuperiorCoordnator(PendingTransactionRecord coordinatorLogEntry) {
-		if(coordinatorLogEntry.superiorId == null) return false;
-		
-		PendingTransactionRecord superiorCoordinator = storage.get(coordinatorLogEntry.superiorId);
-		if (superiorCoordinator == null) {
-			return false;
+	/**
+	 * Same as {@link PendingTransactionRecord#collectLineages} of the expired
+	 * local committing roots within {@link #findAllCommittingCoordinatorLogEntries()},
+	 * but only visiting matching records.
+	 */
+	@Override
+	public Collection<PendingTransactionRecord> findAllExpiredCommittingLineages(long time, String recoveryDomainName) {
+		Content content = this.content;
+		Set<PendingTransactionRecord> res = new HashSet<PendingTransactionRecord>();
+		for (ExpiryKey key : content.expiryIndex.headSet(new ExpiryKey(time, null))) {
+			PendingTransactionRecord record = content.storage.get(key.id);
+			if (record != null && record.expires == key.expires &&
+				record.state == TxState.COMMITTING && record.isLocalRoot(recoveryDomainName)) {
+				res.add(record);
+				content.collectDescendants(record, res, TxState.COMMITTING, TxState.IN_DOUBT);
+			}
 		}
-		if (superiorCoordinator.state == TxState.COMMITTING) {
-			return true;
-		} else  {
-			return hasCommittingSuperiorCoordnator(superiorCoordinator);
+		return res;
+	}
+
+	/**
+	 * Same as {@link PendingTransactionRecord#collectLineages} of the in-doubt
+	 * records within {@link #getAllCoordinatorLogEntries()}, but only visiting
+	 * matching records.
+	 */
+	@Override
+	public Collection<PendingTransactionRecord> findAllIndoubtLineages() {
+		Content content = this.content;
+		Set<PendingTransactionRecord> res = new HashSet<PendingTransactionRecord>();
+		for (PendingTransactionRecord indoubt : content.findAllInState(TxState.IN_DOUBT)) {
+			res.add(indoubt);
+			content.collectDescendants(indoubt, res);
 		}
+		return res;
 	}
 
 	@Override
 	public void close() {
-		storage.clear();
+		content = new Content();
 		closed=true;
 	}
 
 	@Override
 	public Collection<PendingTransactionRecord> getAllCoordinatorLogEntries() {
-		return storage.values();
+		return content.storage.values();
+	}
+
+	@Override
+	public void startCheckpoint() {
+		// nothing to switch: the checkpoint replaces the content as a whole
 	}
 
 	@Override
 	public void writeCheckpoint(
 			Collection<PendingTransactionRecord> checkpointContent) {
-		storage.clear();
+		Content newContent = new Content();
 		for (PendingTransactionRecord coordinatorLogEntry : checkpointContent) {
-			storage.put(coordinatorLogEntry.id, coordinatorLogEntry);
+			newContent.storage.put(coordinatorLogEntry.id, coordinatorLogEntry);
+			newContent.addToIndexes(coordinatorLogEntry);
 		}
-		
+		content = newContent;
 	}
 
-	
+
 
 	public boolean isClosed() {
 		return closed;
 	}
 
+	/**
+	 * The primary map and its indexes, replaced as a whole by each checkpoint.
+	 */
+	private static final class Content {
+
+		private final Map<String, PendingTransactionRecord> storage = new ConcurrentHashMap<String, PendingTransactionRecord>();
+
+		private final Map<TxState, Set<String>> idsByState = createStateIndex();
+		private final Map<String, Set<String>> childIdsBySuperiorId = new ConcurrentHashMap<String, Set<String>>();
+		private final NavigableSet<ExpiryKey> expiryIndex = new ConcurrentSkipListSet<ExpiryKey>();
+
+		private static Map<TxState, Set<String>> createStateIndex() {
+			Map<TxState, Set<String>> ret = new EnumMap<TxState, Set<String>>(TxState.class);
+			for (TxState state : TxState.values()) {
+				ret.put(state, ConcurrentHashMap.<String>newKeySet());
+			}
+			return ret; // never modified after construction: safe to read concurrently
+		}
+
+		void put(String id, PendingTransactionRecord coordinatorLogEntry) {
+			PendingTransactionRecord existing = storage.get(id);
+			if (existing != null && existing == coordinatorLogEntry) {
+				throw new IllegalArgumentException("cannot put the same coordinatorLogEntry twice");
+			}
+			PendingTransactionRecord previous;
+			if(coordinatorLogEntry.state.isFinalState()){
+				previous = storage.remove(id);
+			} else {
+				previous = storage.put(id, coordinatorLogEntry);
+				addToIndexes(coordinatorLogEntry);
+			}
+			if (previous != null) {
+				removeFromIndexes(previous);
+			}
+			// a concurrent put for the same id may have removed our index entries
+			PendingTransactionRecord current = storage.get(id);
+			if (current != null && current != coordinatorLogEntry) {
+				addToIndexes(current);
+			}
+		}
+
+		void addToIndexes(PendingTransactionRecord record) {
+			idsByState.get(record.state).add(record.id);
+			expiryIndex.add(new ExpiryKey(record.expires, record.id));
+			if (record.superiorId != null) {
+				childIdsBySuperiorId.compute(record.superiorId, (superiorId, childIds) -> {
+					if (childIds == null) {
+						childIds = ConcurrentHashMap.<String>newKeySet();
+					}
+					childIds.add(record.id);
+					return childIds;
+				});
+			}
+		}
+
+		private void removeFromIndexes(PendingTransactionRecord record) {
+			PendingTransactionRecord current = storage.get(record.id);
+			if (current == null || current.state != record.state) {
+				idsByState.get(record.state).remove(record.id);
+			}
+			if (current == null || current.expires != record.expires) {
+				expiryIndex.remove(new ExpiryKey(record.expires, record.id));
+			}
+			if (record.superiorId != null && (current == null || !record.superiorId.equals(current.superiorId))) {
+				removeChild(record.superiorId, record.id);
+			}
+		}
+
+		private void removeChild(String superiorId, String childId) {
+			childIdsBySuperiorId.computeIfPresent(superiorId, (key, childIds) -> {
+				childIds.remove(childId);
+				return childIds.isEmpty() ? null : childIds;
+			});
+		}
+
+		Collection<PendingTransactionRecord> findAllInState(TxState state) {
+			Collection<PendingTransactionRecord> ret = new HashSet<PendingTransactionRecord>();
+			for (String id : idsByState.get(state)) {
+				PendingTransactionRecord record = storage.get(id);
+				if (record != null && record.state == state) {
+					ret.add(record);
+				}
+			}
+			return ret;
+		}
+
+		/**
+		 * Adds all descendants reachable through records in one of the given states, or in any state if none given.
+		 */
+		void collectDescendants(PendingTransactionRecord ancestor, Set<PendingTransactionRecord> collector, TxState... states) {
+			Deque<PendingTransactionRecord> todo = new ArrayDeque<PendingTransactionRecord>();
+			todo.push(ancestor);
+			while (!todo.isEmpty()) {
+				PendingTransactionRecord superior = todo.pop();
+				Set<String> childIds = childIdsBySuperiorId.get(superior.id);
+				if (childIds != null) {
+					for (String childId : childIds) {
+						PendingTransactionRecord child = storage.get(childId);
+						if (child != null && superior.id.equals(child.superiorId) && (states.length == 0 || child.state.isOneOf(states)) && collector.add(child)) {
+							todo.push(child);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static final class ExpiryKey implements Comparable<ExpiryKey> {
+
+		private final long expires;
+		private final String id; // null sorts first
+
+		ExpiryKey(long expires, String id) {
+			this.expires = expires;
+			this.id = id;
+		}
+
+		@Override
+		public int compareTo(ExpiryKey other) {
+			int ret = Long.compare(expires, other.expires);
+			if (ret == 0 && id != other.id) {
+				if (id == null) ret = -1;
+				else if (other.id == null) ret = 1;
+				else ret = id.compareTo(other.id);
+			}
+			return ret;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ExpiryKey && compareTo((ExpiryKey) o) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(expires) ^ (id == null ? 0 : id.hashCode());
+		}
+	}
+
 }
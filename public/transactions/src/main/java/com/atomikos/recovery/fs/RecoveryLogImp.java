@@ -18,7 +18,6 @@ import com.atomikos.recovery.LogException;
 import com.atomikos.recovery.LogReadException;
 import com.atomikos.recovery.PendingTransactionRecord;
 import com.atomikos.recovery.RecoveryLog;
-import com.atomikos.recovery.TxState;
 
 public class RecoveryLogImp implements RecoveryLog {
 
@@ -49,21 +48,14 @@ public class RecoveryLogImp implements RecoveryLog {
 
 	@Override
 	public Collection<PendingTransactionRecord> getExpiredPendingCommittingTransactionRecordsAt(long time) throws LogReadException {
-	    Collection<PendingTransactionRecord> allCoordinatorLogEntries = repository.findAllCommittingCoordinatorLogEntries();
-	    
-	    return PendingTransactionRecord.collectLineages(
-                (PendingTransactionRecord r) -> r.isLocalRoot(recoveryDomainName) && r.expires < time && r.state == TxState.COMMITTING, 
-                allCoordinatorLogEntries);
+	    return repository.findAllExpiredCommittingLineages(time, recoveryDomainName);
 	}
 
 
     @Override
     public Collection<PendingTransactionRecord> getIndoubtTransactionRecords()
             throws LogReadException {
-        Collection<PendingTransactionRecord> allCoordinatorLogEntries = repository.getAllCoordinatorLogEntries();
-        return PendingTransactionRecord.collectLineages(
-                (PendingTransactionRecord r) -> r.state == TxState.IN_DOUBT, 
-                allCoordinatorLogEntries);
+        return repository.findAllIndoubtLineages();
     }
 
     @Override
@@ -24,9 +24,30 @@ public interface Repository {
 	PendingTransactionRecord get(String coordinatorId) throws LogReadException;
 
 	Collection<PendingTransactionRecord> findAllCommittingCoordinatorLogEntries() throws LogReadException;
+
+	/**
+	 * @return The expired committing local roots and their committing or in-doubt descendants.
+	 */
+	Collection<PendingTransactionRecord> findAllExpiredCommittingLineages(long time, String recoveryDomainName) throws LogReadException;
+
+	/**
+	 * @return The in-doubt records and all their descendants.
+	 */
+	Collection<PendingTransactionRecord> findAllIndoubtLineages() throws LogReadException;
 	
 	Collection<PendingTransactionRecord> getAllCoordinatorLogEntries() throws LogReadException;
 
+	/**
+	 * Starts a checkpoint. Called while no puts are in progress, so this should 
+	 * return quickly: typically by switching to a new version of the log. Puts from 
+	 * now on are not overwritten by the content of the next {@link #writeCheckpoint(Collection)}.
+	 */
+	void startCheckpoint() throws LogWriteException;
+
+	/**
+	 * Writes the content of the checkpoint started last, which can be concurrent with puts. 
+	 * Starts a checkpoint first if there is none.
+	 */
 	void writeCheckpoint(Collection<PendingTransactionRecord> checkpointContent) throws LogWriteException;
 	
 	void close();
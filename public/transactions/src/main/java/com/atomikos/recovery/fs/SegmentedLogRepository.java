@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+import com.atomikos.logging.Logger;
+import com.atomikos.logging.LoggerFactory;
+import com.atomikos.persistence.imp.LogFileLock;
+import com.atomikos.recovery.LogException;
+import com.atomikos.recovery.LogReadException;
+import com.atomikos.recovery.LogWriteException;
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.thread.TaskManager;
+import com.atomikos.util.VersionedFile;
+
+/**
+ * A log made of fixed-size, preallocated segment files that records are
+ * appended to through a {@link MappedByteBuffer}, in the binary record format.
+ * <p>
+ * A checkpoint does not rewrite the log: starting it merely seals the current 
+ * segment, and its content is handed over to a background compaction. The
+ * compaction copies the records that are still live in sealed segments to the
+ * end of the log, then deletes the sealed segments in the order they were
+ * written. That way, the log replayed after a crash always ends with the
+ * latest state of each record, whatever step the compaction was in.
+ */
+
+public class SegmentedLogRepository implements Repository {
+
+	private static final Logger LOGGER = LoggerFactory.createLogger(SegmentedLogRepository.class);
+
+	static final String SUFFIX = ".seg";
+
+	private String baseDir;
+	private String baseName;
+	private int segmentSize;
+	private LogFileLock lock_;
+
+	// all below guarded by this
+	private final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+	private final Map<String, Long> segmentOfLatestRecord = new HashMap<String, Long>();
+	private long lastSegmentNumber = -1;
+	private MappedByteBuffer activeSegment;
+	private Collection<PendingTransactionRecord> pendingCompactionContent;
+	private long pendingCompactionUpToSegment;
+	private Long checkpointUpToSegment; // null if no checkpoint was started
+	private boolean compactionScheduled;
+	private boolean closed;
+
+	private final ThreadLocal<ByteBuffer> encodingBuffer = new ThreadLocal<ByteBuffer>();
+
+	@Override
+	public void init() throws LogException {
+		ConfigProperties configProperties = Configuration.getConfigProperties();
+		baseDir = configProperties.getLogBaseDir();
+		baseName = configProperties.getLogBaseName();
+		segmentSize = configProperties.getLogSegmentSize();
+		if (segmentSize < 1024) {
+			throw new LogException("Segment size too small: " + segmentSize);
+		}
+		if (!baseDir.endsWith(File.separator)) {
+			baseDir += File.separator;
+		}
+		lock_ = new LogFileLock(baseDir, baseName);
+		lock_.acquireLock();
+		findExistingSegments();
+		LOGGER.logDebug("Found " + segments.size() + " log segments in " + baseDir);
+	}
+
+	private synchronized void findExistingSegments() {
+		String[] names = new File(baseDir).list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(baseName) && name.endsWith(SUFFIX);
+			}
+		});
+		if (names != null) {
+			for (String name : names) {
+				String number = name.substring(baseName.length(), name.length() - SUFFIX.length());
+				try {
+					segments.put(Long.valueOf(number), new File(baseDir + name));
+				} catch (NumberFormatException notOurs) {
+					LOGGER.logDebug("Ignoring file " + name);
+				}
+			}
+		}
+		if (!segments.isEmpty()) {
+			lastSegmentNumber = segments.lastKey();
+		}
+	}
+
+	@Override
+	public void put(String id, PendingTransactionRecord pendingTransactionRecord) throws LogWriteException {
+		try {
+			ByteBuffer buff = encode(pendingTransactionRecord);
+			MappedByteBuffer segment = append(pendingTransactionRecord, buff);
+			// outside the lock: concurrent puts get forced together
+			segment.force();
+		} catch (IOException e) {
+			throw new LogWriteException(e);
+		}
+	}
+
+	private ByteBuffer encode(PendingTransactionRecord pendingTransactionRecord) {
+		ByteBuffer reusable = encodingBuffer.get();
+		ByteBuffer ret = BinaryRecordFormat.encode(pendingTransactionRecord, reusable);
+		if (ret != reusable) {
+			encodingBuffer.set(ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return The segment the record was appended to, to force.
+	 */
+	private synchronized MappedByteBuffer append(PendingTransactionRecord record, ByteBuffer buff) throws IOException {
+		if (closed) {
+			throw new IOException("Log is closed");
+		}
+		if (buff.remaining() > segmentSize - BinaryRecordFormat.HEADER_LENGTH) {
+			throw new IOException("Record does not fit in a log segment - increase the segment size: " + record);
+		}
+		if (activeSegment == null || activeSegment.remaining() < buff.remaining()) {
+			startNextSegment();
+		}
+		activeSegment.put(buff);
+		if (record.state.isFinalState()) {
+			segmentOfLatestRecord.remove(record.id);
+		} else {
+			segmentOfLatestRecord.put(record.id, lastSegmentNumber);
+		}
+		return activeSegment;
+	}
+
+	private void startNextSegment() throws IOException {
+		sealActiveSegment();
+		long number = lastSegmentNumber + 1;
+		File file = new File(baseDir + baseName + number + SUFFIX);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(segmentSize);
+			activeSegment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		} finally {
+			raf.close(); // the mapping stays valid
+		}
+		BinaryRecordFormat.writeHeader(activeSegment);
+		segments.put(number, file);
+		lastSegmentNumber = number;
+	}
+
+	private void sealActiveSegment() {
+		if (activeSegment != null) {
+			activeSegment.force();
+			activeSegment = null;
+		}
+	}
+
+	@Override
+	public PendingTransactionRecord get(String coordinatorId) throws LogReadException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<PendingTransactionRecord> findAllCommittingCoordinatorLogEntries() throws LogReadException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<PendingTransactionRecord> findAllExpiredCommittingLineages(long time, String recoveryDomainName) throws LogReadException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<PendingTransactionRecord> findAllIndoubtLineages() throws LogReadException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public synchronized Collection<PendingTransactionRecord> getAllCoordinatorLogEntries() throws LogReadException {
+		Map<String, PendingTransactionRecord> ret = new HashMap<String, PendingTransactionRecord>();
+		try {
+			if (segments.isEmpty()) {
+				Collection<PendingTransactionRecord> legacy = readLegacyLogFile();
+				migrateLegacyRecords(legacy);
+				return legacy;
+			}
+			for (Map.Entry<Long, File> segment : segments.entrySet()) {
+				byte[] bytes = Files.readAllBytes(segment.getValue().toPath());
+				if (!BinaryRecordFormat.startsWithHeader(bytes, bytes.length)) {
+					// crash while creating the segment: nothing was appended yet
+					LOGGER.logDebug("Ignoring log segment without header: " + segment.getValue());
+					continue;
+				}
+				for (PendingTransactionRecord record : BinaryRecordFormat.decode(bytes, bytes.length).values()) {
+					ret.put(record.id, record);
+					if (record.state.isFinalState()) {
+						segmentOfLatestRecord.remove(record.id);
+					} else {
+						segmentOfLatestRecord.put(record.id, segment.getKey());
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.logFatal("Error in recover", e);
+			throw new LogReadException(e);
+		}
+		return ret.values();
+	}
+
+	/**
+	 * Picks up the log of a previous run with {@link FileSystemRepository},
+	 * so switching to segments does not lose pending transactions.
+	 */
+	private Collection<PendingTransactionRecord> readLegacyLogFile() throws LogReadException, IOException {
+		VersionedFile legacy = new VersionedFile(baseDir, baseName, ".log");
+		FileInputStream fis;
+		try {
+			fis = legacy.openLastValidVersionForReading();
+		} catch (FileNotFoundException firstStart) {
+			return new ArrayList<PendingTransactionRecord>();
+		}
+		try {
+			return FileSystemRepository.readFromInputStream(fis);
+		} finally {
+			legacy.close();
+		}
+	}
+
+	/**
+	 * Appends the pending legacy records to the first segment, so later
+	 * checkpoints treat them like any other record. The legacy files are only
+	 * deleted after that segment was forced: otherwise a compaction that
+	 * leaves no segments would make the next start read outdated records.
+	 */
+	private void migrateLegacyRecords(Collection<PendingTransactionRecord> records) throws IOException {
+		MappedByteBuffer lastSegment = null;
+		for (PendingTransactionRecord record : records) {
+			if (!record.state.isFinalState()) {
+				lastSegment = append(record, encode(record));
+			}
+		}
+		if (lastSegment != null) {
+			lastSegment.force();
+			LOGGER.logInfo("Migrated " + records.size() + " records from the legacy log file to log segments");
+		}
+		deleteLegacyLogFiles();
+	}
+
+	private void deleteLegacyLogFiles() {
+		File[] files = new File(baseDir).listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				// only the versions written by VersionedFile
+				return name.matches(Pattern.quote(baseName) + "\\d+\\.log");
+			}
+		});
+		if (files != null) {
+			for (File file : files) {
+				if (!file.delete() && file.exists()) {
+					LOGGER.logWarning("Failed to delete legacy log file " + file);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void startCheckpoint() {
+		sealActiveSegment();
+		checkpointUpToSegment = lastSegmentNumber;
+	}
+
+	@Override
+	public void writeCheckpoint(Collection<PendingTransactionRecord> checkpointContent) throws LogWriteException {
+		boolean schedule;
+		synchronized (this) {
+			if (checkpointUpToSegment == null) {
+				startCheckpoint();
+			}
+			pendingCompactionContent = checkpointContent;
+			pendingCompactionUpToSegment = checkpointUpToSegment;
+			checkpointUpToSegment = null;
+			schedule = !compactionScheduled;
+			compactionScheduled = true;
+		}
+		if (schedule) {
+			TaskManager.SINGLETON.executeTask(new Runnable() {
+				@Override
+				public void run() {
+					compactPendingCheckpoints();
+				}
+			});
+		}
+	}
+
+	void compactPendingCheckpoints() {
+		while (true) {
+			Collection<PendingTransactionRecord> content;
+			long upToSegment;
+			synchronized (this) {
+				if (pendingCompactionContent == null || closed) {
+					compactionScheduled = false;
+					notifyAll();
+					return;
+				}
+				content = pendingCompactionContent;
+				upToSegment = pendingCompactionUpToSegment;
+				pendingCompactionContent = null;
+			}
+			try {
+				compact(content, upToSegment);
+			} catch (IOException e) {
+				LOGGER.logWarning("Failed to compact log segments - will retry at next checkpoint", e);
+			}
+		}
+	}
+
+	private void compact(Collection<PendingTransactionRecord> content, long upToSegment) throws IOException {
+		long start = System.currentTimeMillis();
+		int copied = 0;
+		MappedByteBuffer lastSegment = null;
+		for (PendingTransactionRecord record : content) {
+			ByteBuffer buff = encode(record);
+			synchronized (this) {
+				Long segment = segmentOfLatestRecord.get(record.id);
+				// only copy if there was no newer put since the checkpoint
+				if (segment != null && segment <= upToSegment) {
+					lastSegment = append(record, buff);
+					copied++;
+				}
+			}
+		}
+		if (lastSegment != null) {
+			lastSegment.force();
+		}
+		deleteSegmentsUpTo(upToSegment);
+		LOGGER.logDebug("Compacted log segments up to " + upToSegment + " in " + (System.currentTimeMillis() - start) + "ms, copying " + copied + " records");
+	}
+
+	private void deleteSegmentsUpTo(long upToSegment) {
+		List<Map.Entry<Long, File>> obsolete;
+		synchronized (this) {
+			obsolete = new ArrayList<Map.Entry<Long, File>>(segments.headMap(upToSegment, true).entrySet());
+			Iterator<Long> it = segmentOfLatestRecord.values().iterator();
+			while (it.hasNext()) {
+				if (it.next() <= upToSegment) {
+					it.remove(); // purged from the checkpoint
+				}
+			}
+		}
+		// oldest first, so a crash in between never resurrects outdated records
+		for (Map.Entry<Long, File> segment : obsolete) {
+			File file = segment.getValue();
+			if (!file.delete() && file.exists()) {
+				LOGGER.logWarning("Failed to delete log segment " + file + " - will retry at next checkpoint");
+				return;
+			}
+			synchronized (this) {
+				segments.remove(segment.getKey());
+			}
+		}
+	}
+
+	synchronized void awaitCompaction() throws InterruptedException {
+		while (compactionScheduled) {
+			wait();
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			synchronized (this) {
+				closed = true;
+				awaitCompaction();
+				sealActiveSegment();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.logWarning("Interrupted while closing log - ignoring");
+		} finally {
+			lock_.releaseLock();
+		}
+	}
+
+}
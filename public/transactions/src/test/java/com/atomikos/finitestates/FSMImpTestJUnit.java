@@ -80,4 +80,44 @@ public class FSMImpTestJUnit extends TestCase
         		fail ("ERROR: notification does not work");
 	}
 
+	public void testEnterListenerForOtherStateIsNotNotified()
+	{
+		TestListener other = new TestListener();
+		fsm.addFSMEnterListener(other, END);
+		fsm.addFSMPreEnterListener(other, END);
+		fsm.setState(MIDDLE);
+		assertFalse(other.isNotified());
+		fsm.setState(END);
+		assertTrue(other.isNotified());
+	}
+
+	public void testTransitionListenerForOtherTransitionIsNotNotified()
+	{
+		TestListener other = new TestListener();
+		fsm.addFSMTransitionListener(other, MIDDLE, END);
+		fsm.setState(MIDDLE);
+		assertFalse(other.isNotified());
+		fsm.setState(END);
+		assertTrue(other.isNotified());
+	}
+
+	public void testListenerAddedTwiceIsKeptOnce()
+	{
+		CountingListener counter = new CountingListener();
+		fsm.addFSMEnterListener(counter, MIDDLE);
+		fsm.addFSMEnterListener(counter, MIDDLE);
+		fsm.setState(MIDDLE);
+		assertEquals(1, counter.count);
+	}
+
+	private static class CountingListener implements FSMEnterListener
+	{
+		int count = 0;
+
+		public void entered(FSMEnterEvent e)
+		{
+			count++;
+		}
+	}
+
 }
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.imp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.icatch.CompositeTransaction;
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+
+public class CompositeTransactionManagerImpTestJUnit {
+
+	private static final String ENABLE_LOGGING = "com.atomikos.icatch.enable_logging";
+
+	private String originalEnableLogging;
+	private CompositeTransactionManagerImp ctm;
+
+	@Before
+	public void setUp() throws Exception {
+		ConfigProperties props = Configuration.getConfigProperties();
+		originalEnableLogging = props.getProperty(ENABLE_LOGGING);
+		props.setProperty(ENABLE_LOGGING, "false");
+		ctm = new CompositeTransactionManagerImp();
+		Configuration.installCompositeTransactionManager(ctm);
+		Configuration.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Configuration.shutdown(true);
+		Configuration.getConfigProperties().setProperty(ENABLE_LOGGING, originalEnableLogging);
+	}
+
+	@Test
+	public void testSubTransactionEndRestoresParent() throws Exception {
+		CompositeTransaction parent = ctm.createCompositeTransaction(10000);
+		CompositeTransaction child = ctm.createCompositeTransaction(10000);
+		assertSame(child, ctm.getCompositeTransaction());
+		child.rollback();
+		assertSame(parent, ctm.getCompositeTransaction());
+		parent.rollback();
+		assertNull(ctm.getCompositeTransaction());
+	}
+
+	@Test
+	public void testSubTransactionHasRootTidOfParent() throws Exception {
+		CompositeTransaction parent = ctm.createCompositeTransaction(10000);
+		CompositeTransaction child = ctm.createCompositeTransaction(10000);
+		assertEquals(parent.getTid(), parent.getRootTid());
+		assertEquals(parent.getTid(), child.getRootTid());
+		child.rollback();
+		parent.rollback();
+	}
+
+	@Test
+	public void testSuspendAndResume() throws Exception {
+		CompositeTransaction ct = ctm.createCompositeTransaction(10000);
+		assertSame(ct, ctm.suspend());
+		assertNull(ctm.getCompositeTransaction());
+		ctm.resume(ct);
+		assertSame(ct, ctm.getCompositeTransaction());
+		ct.rollback();
+		assertNull(ctm.getCompositeTransaction());
+	}
+
+	@Test
+	public void testTransactionsAreThreadConfined() throws Exception {
+		CompositeTransaction ct = ctm.createCompositeTransaction(10000);
+		AtomicReference<CompositeTransaction> seenByOtherThread = new AtomicReference<CompositeTransaction>(ct);
+		Thread other = new Thread(() -> seenByOtherThread.set(ctm.getCompositeTransaction()));
+		other.start();
+		other.join();
+		assertNull(seenByOtherThread.get());
+		ct.rollback();
+	}
+
+	@Test
+	public void testRollbackByOtherThreadRemovesMapping() throws Exception {
+		CountDownLatch created = new CountDownLatch(1);
+		CountDownLatch rolledBack = new CountDownLatch(1);
+		AtomicReference<CompositeTransaction> transaction = new AtomicReference<CompositeTransaction>();
+		AtomicReference<CompositeTransaction> afterRollback = new AtomicReference<CompositeTransaction>();
+		Thread owner = new Thread(() -> {
+			transaction.set(ctm.createCompositeTransaction(10000));
+			created.countDown();
+			try {
+				rolledBack.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			afterRollback.set(ctm.getCompositeTransaction());
+		});
+		owner.start();
+		assertTrue(created.await(5, TimeUnit.SECONDS));
+		transaction.get().rollback(); // like a timeout would, on a different thread
+		rolledBack.countDown();
+		owner.join();
+		assertNull(afterRollback.get());
+	}
+
+}
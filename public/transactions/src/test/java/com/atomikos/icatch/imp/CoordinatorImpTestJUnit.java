@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.imp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.icatch.CompositeTransaction;
+import com.atomikos.icatch.Participant;
+import com.atomikos.icatch.RollbackException;
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+import com.atomikos.recovery.TxState;
+import com.atomikos.thread.ExecutorMode;
+import com.atomikos.thread.TaskManager;
+
+public class CoordinatorImpTestJUnit {
+
+	private static final String ENABLE_LOGGING = "com.atomikos.icatch.enable_logging";
+
+	private String originalEnableLogging;
+
+	@Before
+	public void setUp() throws Exception {
+		ConfigProperties props = Configuration.getConfigProperties();
+		originalEnableLogging = props.getProperty(ENABLE_LOGGING);
+		props.setProperty(ENABLE_LOGGING, "false");
+		Configuration.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Configuration.shutdown(true);
+		Configuration.getConfigProperties().setProperty(ENABLE_LOGGING, originalEnableLogging);
+	}
+
+	@Test
+	public void testOnePhaseCommitIsNotLogged() throws Exception {
+		CompositeTransaction ct = createCompositeTransaction(10000);
+		ct.addParticipant(new TestParticipant());
+		ct.commit();
+		CoordinatorImp coordinator = (CoordinatorImp) ct.getCompositeCoordinator();
+		assertNull(coordinator.getPendingTransactionRecord(TxState.COMMITTING));
+	}
+
+	@Test
+	public void testTwoPhaseCommitIsLogged() throws Exception {
+		CompositeTransaction ct = createCompositeTransaction(10000);
+		ct.addParticipant(new TestParticipant());
+		ct.addParticipant(new TestParticipant());
+		ct.commit();
+		CoordinatorImp coordinator = (CoordinatorImp) ct.getCompositeCoordinator();
+		assertNotNull(coordinator.getPendingTransactionRecord(TxState.COMMITTING));
+	}
+
+	@Test
+	public void testTimeoutStillRollsBack() throws Exception {
+		CompositeTransaction ct = createCompositeTransaction(300);
+		ct.addParticipant(new TestParticipant());
+		CoordinatorImp coordinator = (CoordinatorImp) ct.getCompositeCoordinator();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!coordinator.hasTimedOut() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(coordinator.hasTimedOut());
+		try {
+			ct.commit();
+			fail("commit should fail after timeout");
+		} catch (RollbackException expected) {
+		}
+	}
+
+	@Test
+	public void testIndoubtTimeoutCountsFromPrepare() throws Exception {
+		long start = System.currentTimeMillis();
+		CoordinatorImp coordinator = new CoordinatorImp("domain", "root", "root", null, 3000, true);
+		coordinator.addParticipant(new TestParticipant());
+		coordinator.addParticipant(new TestParticipant());
+		coordinator.prepare();
+		assertEquals(TxState.IN_DOUBT, coordinator.getState());
+		// in-doubt ticks are counted from prepare, not from the deferred timer start at 3000 ms
+		long deadline = start + 4500;
+		while (coordinator.getState() == TxState.IN_DOUBT && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(TxState.ABANDONED, coordinator.getState());
+	}
+
+	@Test
+	public void testConcurrentTimeoutsWithSmallBoundedExecutor() throws Exception {
+		int originalPoolSize = Propagator.EXECUTOR.getCorePoolSize();
+		TaskManager.SINGLETON.configure(ExecutorMode.BOUNDED, 2);
+		Propagator.EXECUTOR.setCorePoolSize(2);
+		try {
+			CountDownLatch rolledBack = new CountDownLatch(8 * 3);
+			for (int i = 0; i < 8; i++) {
+				CoordinatorImp coordinator = new CoordinatorImp("domain", "root" + i, "root" + i, null, 200, false);
+				for (int j = 0; j < 3; j++) {
+					coordinator.addParticipant(new SlowRollbackParticipant(rolledBack));
+				}
+			}
+			assertTrue("timeouts did not roll back", rolledBack.await(10, TimeUnit.SECONDS));
+		} finally {
+			Propagator.EXECUTOR.setCorePoolSize(originalPoolSize);
+			TaskManager.SINGLETON.configure(ExecutorMode.PLATFORM, 64);
+		}
+	}
+
+	private CompositeTransaction createCompositeTransaction(long timeout) {
+		return Configuration.getCompositeTransactionManager().createCompositeTransaction(timeout);
+	}
+
+	private static class TestParticipant implements Participant {
+
+		@Override
+		public String getURI() {
+			return null;
+		}
+
+		@Override
+		public void setCascadeList(Map<String, Integer> allParticipants) {
+		}
+
+		@Override
+		public void setGlobalSiblingCount(int count) {
+		}
+
+		@Override
+		public int prepare() throws RollbackException {
+			return Participant.READ_ONLY + 1;
+		}
+
+		@Override
+		public void commit(boolean onePhase) {
+		}
+
+		@Override
+		public void rollback() {
+		}
+
+		@Override
+		public void forget() {
+		}
+
+		@Override
+		public String getResourceName() {
+			return null;
+		}
+	}
+
+	private static class SlowRollbackParticipant extends TestParticipant {
+
+		private final CountDownLatch rolledBack;
+
+		SlowRollbackParticipant(CountDownLatch rolledBack) {
+			this.rolledBack = rolledBack;
+		}
+
+		@Override
+		public void rollback() {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			rolledBack.countDown();
+		}
+	}
+
+}
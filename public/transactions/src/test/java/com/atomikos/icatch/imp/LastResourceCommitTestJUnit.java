@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.imp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.icatch.CompositeTransaction;
+import com.atomikos.icatch.HeurHazardException;
+import com.atomikos.icatch.HeurMixedException;
+import com.atomikos.icatch.OnePhaseParticipant;
+import com.atomikos.icatch.Participant;
+import com.atomikos.icatch.RecoveryCoordinator;
+import com.atomikos.icatch.RollbackException;
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+
+public class LastResourceCommitTestJUnit {
+
+	private static final String ENABLE_LOGGING = "com.atomikos.icatch.enable_logging";
+
+	private String originalEnableLogging;
+	private String originalThrowOnHeuristic;
+	private boolean originalLastResourceCommit;
+	private List<String> calls;
+
+	@Before
+	public void setUp() throws Exception {
+		ConfigProperties props = Configuration.getConfigProperties();
+		originalEnableLogging = props.getProperty(ENABLE_LOGGING);
+		props.setProperty(ENABLE_LOGGING, "false");
+		originalThrowOnHeuristic = props.getProperty(ConfigProperties.THROW_ON_HEURISTIC);
+		props.setProperty(ConfigProperties.THROW_ON_HEURISTIC, "true");
+		originalLastResourceCommit = ActiveStateHandler.LAST_RESOURCE_COMMIT;
+		Configuration.init();
+		calls = Collections.synchronizedList(new ArrayList<String>());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = originalLastResourceCommit;
+		Configuration.shutdown(true);
+		ConfigProperties props = Configuration.getConfigProperties();
+		props.setProperty(ENABLE_LOGGING, originalEnableLogging);
+		props.setProperty(ConfigProperties.THROW_ON_HEURISTIC, originalThrowOnHeuristic);
+	}
+
+	@Test
+	public void testOnePhaseParticipantIsCommittedFirstWithoutPrepare() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = true;
+		CompositeTransaction ct = Configuration.getCompositeTransactionManager().createCompositeTransaction(10000);
+		ct.addParticipant(new TestParticipant("xa1"));
+		ct.addParticipant(new TestOnePhaseParticipant("nonxa"));
+		ct.addParticipant(new TestParticipant("xa2"));
+		ct.commit();
+		assertEquals(5, calls.size());
+		assertEquals("prepare xa1", calls.get(0));
+		assertEquals("prepare xa2", calls.get(1));
+		assertEquals("commit nonxa onePhase=true", calls.get(2));
+		assertEquals(true, calls.contains("commit xa1 onePhase=false"));
+		assertEquals(true, calls.contains("commit xa2 onePhase=false"));
+	}
+
+	@Test
+	public void testFailedLastResourceCommitRollsBackOthers() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = true;
+		CompositeTransaction ct = Configuration.getCompositeTransactionManager().createCompositeTransaction(10000);
+		ct.addParticipant(new TestParticipant("xa1"));
+		ct.addParticipant(new TestOnePhaseParticipant("nonxa", new HeurMixedException()));
+		ct.addParticipant(new TestParticipant("xa2"));
+		try {
+			ct.commit();
+			fail("commit should fail");
+		} catch (HeurHazardException expected) {
+		}
+		assertTrue(calls.contains("rollback xa1"));
+		assertTrue(calls.contains("rollback xa2"));
+		assertFalse(calls.contains("commit xa1 onePhase=false"));
+		assertFalse(calls.contains("commit xa2 onePhase=false"));
+		assertFalse(calls.contains("rollback nonxa"));
+	}
+
+	@Test
+	public void testRolledBackLastResourceRollsBackOthers() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = true;
+		CompositeTransaction ct = Configuration.getCompositeTransactionManager().createCompositeTransaction(10000);
+		ct.addParticipant(new TestParticipant("xa"));
+		ct.addParticipant(new TestOnePhaseParticipant("nonxa", new RollbackException("rolled back")));
+		try {
+			ct.commit();
+			fail("commit should fail");
+		} catch (RollbackException expected) {
+		}
+		assertEquals(3, calls.size());
+		assertEquals("prepare xa", calls.get(0));
+		assertEquals("commit nonxa onePhase=true", calls.get(1));
+		assertEquals("rollback xa", calls.get(2));
+	}
+
+	@Test
+	public void testNotUsedBySubordinates() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = true;
+		RecoveryCoordinator superior = new RecoveryCoordinator() {
+			@Override
+			public String getURI() {
+				return "superior";
+			}
+			@Override
+			public String getRecoveryDomainName() {
+				return "otherDomain";
+			}
+		};
+		CoordinatorImp subordinate = new CoordinatorImp("domain", "subordinate", "root", superior, 10000, true);
+		subordinate.addParticipant(new TestParticipant("xa"));
+		subordinate.addParticipant(new TestOnePhaseParticipant("nonxa"));
+		try {
+			subordinate.prepare();
+			fail("prepare should fail");
+		} catch (RollbackException expected) {
+		}
+		assertFalse(calls.contains("commit nonxa onePhase=true"));
+	}
+
+	@Test
+	public void testTwoOnePhaseParticipantsStillFailToPrepare() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = true;
+		CompositeTransaction ct = Configuration.getCompositeTransactionManager().createCompositeTransaction(10000);
+		ct.addParticipant(new TestOnePhaseParticipant("nonxa1"));
+		ct.addParticipant(new TestOnePhaseParticipant("nonxa2"));
+		try {
+			ct.commit();
+			fail("commit should fail");
+		} catch (RollbackException expected) {
+		}
+	}
+
+	@Test
+	public void testDisabledByDefault() throws Exception {
+		ActiveStateHandler.LAST_RESOURCE_COMMIT = false;
+		CompositeTransaction ct = Configuration.getCompositeTransactionManager().createCompositeTransaction(10000);
+		ct.addParticipant(new TestParticipant("xa"));
+		ct.addParticipant(new TestOnePhaseParticipant("nonxa"));
+		try {
+			ct.commit();
+			fail("commit should fail");
+		} catch (RollbackException expected) {
+		}
+	}
+
+	private class TestParticipant implements Participant {
+
+		private final String name;
+
+		TestParticipant(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getURI() {
+			return null;
+		}
+
+		@Override
+		public void setCascadeList(Map<String, Integer> allParticipants) {
+		}
+
+		@Override
+		public void setGlobalSiblingCount(int count) {
+		}
+
+		@Override
+		public int prepare() throws RollbackException {
+			calls.add("prepare " + name);
+			return Participant.READ_ONLY + 1;
+		}
+
+		@Override
+		public void commit(boolean onePhase) throws RollbackException, HeurMixedException {
+			calls.add("commit " + name + " onePhase=" + onePhase);
+		}
+
+		@Override
+		public void rollback() {
+			calls.add("rollback " + name);
+		}
+
+		@Override
+		public void forget() {
+		}
+
+		@Override
+		public String getResourceName() {
+			return name;
+		}
+	}
+
+	private class TestOnePhaseParticipant extends TestParticipant implements OnePhaseParticipant {
+
+		private final Exception commitFailure;
+
+		TestOnePhaseParticipant(String name) {
+			this(name, null);
+		}
+
+		TestOnePhaseParticipant(String name, Exception commitFailure) {
+			super(name);
+			this.commitFailure = commitFailure;
+		}
+
+		@Override
+		public void commit(boolean onePhase) throws RollbackException, HeurMixedException {
+			super.commit(onePhase);
+			if (commitFailure instanceof RollbackException) throw (RollbackException) commitFailure;
+			if (commitFailure instanceof HeurMixedException) throw (HeurMixedException) commitFailure;
+		}
+
+		@Override
+		public int prepare() throws RollbackException {
+			throw new RollbackException("cannot prepare");
+		}
+
+		@Override
+		public boolean isOnePhaseOnly() {
+			return true;
+		}
+	}
+
+}
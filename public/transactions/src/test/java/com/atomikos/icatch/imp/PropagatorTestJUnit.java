@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.icatch.imp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.thread.ExecutorMode;
+import com.atomikos.thread.TaskManager;
+
+public class PropagatorTestJUnit {
+
+	private long originalRetryInterval;
+	private long originalMaxRetryInterval;
+	private int originalPoolSize;
+
+	@Before
+	public void setUp() {
+		originalRetryInterval = Propagator.RETRY_INTERVAL;
+		originalMaxRetryInterval = Propagator.MAX_RETRY_INTERVAL;
+		originalPoolSize = Propagator.EXECUTOR.getCorePoolSize();
+	}
+
+	@After
+	public void tearDown() {
+		Propagator.RETRY_INTERVAL = originalRetryInterval;
+		Propagator.MAX_RETRY_INTERVAL = originalMaxRetryInterval;
+		Propagator.EXECUTOR.setCorePoolSize(originalPoolSize);
+		TaskManager.SINGLETON.configure(ExecutorMode.PLATFORM, 64);
+	}
+
+	@Test
+	public void testRetryDelayBacksOffExponentiallyWithinBounds() {
+		Propagator.RETRY_INTERVAL = 1000;
+		Propagator.MAX_RETRY_INTERVAL = 5000;
+		assertBetween(800, 1200, Propagator.computeRetryDelay(1));
+		assertBetween(1600, 2400, Propagator.computeRetryDelay(2));
+		assertBetween(3200, 4800, Propagator.computeRetryDelay(3));
+		assertBetween(4000, 6000, Propagator.computeRetryDelay(4));
+		assertBetween(4000, 6000, Propagator.computeRetryDelay(100));
+	}
+
+	@Test
+	public void testMaxRetryIntervalBelowRetryIntervalIsIgnored() {
+		Propagator.RETRY_INTERVAL = 1000;
+		Propagator.MAX_RETRY_INTERVAL = 10;
+		assertBetween(800, 1200, Propagator.computeRetryDelay(3));
+	}
+
+	@Test
+	public void testThreadedRetryDoesNotBlockSubmitter() throws Exception {
+		Propagator.RETRY_INTERVAL = 10;
+		Propagator.MAX_RETRY_INTERVAL = 20;
+		TestResult result = new TestResult();
+		FailingMessage msg = new FailingMessage(result, 2);
+		new Propagator(true).submitPropagationMessage(msg);
+		result.waitForReplies();
+		assertEquals(3, msg.attempts.get());
+	}
+
+	@Test
+	public void testUnthreadedRetryCompletesBeforeReturning() throws Exception {
+		Propagator.RETRY_INTERVAL = 1;
+		Propagator.MAX_RETRY_INTERVAL = 1;
+		TestResult result = new TestResult();
+		FailingMessage msg = new FailingMessage(result, 1);
+		new Propagator(false).submitPropagationMessage(msg);
+		assertEquals(2, msg.attempts.get());
+	}
+
+	@Test
+	public void testRetryCountsCanBeRead() throws Exception {
+		Propagator.RETRY_INTERVAL = 1;
+		Propagator.MAX_RETRY_INTERVAL = 1;
+		long totalBefore = Propagator.getTotalNumberOfRetries();
+		new Propagator(false).submitPropagationMessage(new FailingMessage(new TestResult(), 2));
+		assertEquals(totalBefore + 2, Propagator.getTotalNumberOfRetries());
+		assertEquals(0, Propagator.getNumberOfPendingRetries());
+	}
+
+	@Test
+	public void testUnthreadedRetryUsesFixedInterval() {
+		Propagator.RETRY_INTERVAL = 1000;
+		Propagator.MAX_RETRY_INTERVAL = 60000;
+		assertEquals(1000, Propagator.computeRetryDelay(5, false));
+		assertBetween(12800, 19200, Propagator.computeRetryDelay(5, true));
+	}
+
+	@Test
+	public void testThreadedRoundIsSentInParallel() throws Exception {
+		TestResult result = new TestResult(2);
+		CountDownLatch bothSending = new CountDownLatch(2);
+		Propagator propagator = new Propagator(true);
+		propagator.submitPropagationMessage(new AwaitingMessage(result, bothSending));
+		propagator.submitPropagationMessage(new AwaitingMessage(result, bothSending));
+		result.waitForReplies();
+		assertEquals(2, result.getReplies().size());
+		for (Reply reply : result.getReplies()) {
+			assertEquals(Boolean.TRUE, reply.getResponse());
+		}
+	}
+
+	@Test
+	public void testThreadedSingleMessageIsSentByCaller() throws Exception {
+		TestResult result = new TestResult(1);
+		AtomicReference<Thread> sendingThread = new AtomicReference<Thread>();
+		new Propagator(true).submitPropagationMessage(new PropagationMessage(null, result) {
+			@Override
+			protected Object send() {
+				sendingThread.set(Thread.currentThread());
+				return null;
+			}
+		});
+		assertSame(Thread.currentThread(), sendingThread.get());
+	}
+
+	@Test
+	public void testRetriesDoNotWaitForBusyTaskManagerThreads() throws Exception {
+		Propagator.RETRY_INTERVAL = 10;
+		Propagator.MAX_RETRY_INTERVAL = 20;
+		Propagator.EXECUTOR.setCorePoolSize(1);
+		TaskManager.SINGLETON.configure(ExecutorMode.BOUNDED, 1);
+		TestResult result = new TestResult(2);
+		FailingMessage first = new FailingMessage(result, 1);
+		FailingMessage second = new FailingMessage(result, 1);
+		CountDownLatch done = new CountDownLatch(1);
+		// the only TaskManager thread waits for the retries, like a timeout that rolls back 
+		TaskManager.SINGLETON.executeTask(() -> {
+			Propagator propagator = new Propagator(true);
+			propagator.submitPropagationMessage(first);
+			propagator.submitPropagationMessage(second);
+			try {
+				result.waitForReplies();
+				done.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue("retries deadlocked", done.await(5, TimeUnit.SECONDS));
+		assertEquals(2, first.attempts.get());
+		assertEquals(2, second.attempts.get());
+	}
+
+	private static void assertBetween(long min, long max, long value) {
+		assertTrue(value + " not in [" + min + "," + max + "]", value >= min && value <= max);
+	}
+
+	private static class TestResult extends Result {
+
+		TestResult() {
+			this(1);
+		}
+
+		TestResult(int numberOfRepliesToWaitFor) {
+			super(numberOfRepliesToWaitFor);
+		}
+
+		@Override
+		protected void calculateResultFromAllReplies() {
+		}
+	}
+
+	private static class AwaitingMessage extends PropagationMessage {
+
+		private final CountDownLatch bothSending;
+
+		AwaitingMessage(Result result, CountDownLatch bothSending) {
+			super(new RollbackOnlyParticipant(), result);
+			this.bothSending = bothSending;
+		}
+
+		@Override
+		protected Object send() throws PropagationException {
+			bothSending.countDown();
+			try {
+				// only returns true if the other message is being sent at the same time
+				return bothSending.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new PropagationException(e, false);
+			}
+		}
+	}
+
+	private static class FailingMessage extends PropagationMessage {
+
+		final AtomicInteger attempts = new AtomicInteger();
+		private final int numberOfFailures;
+
+		FailingMessage(Result result, int numberOfFailures) {
+			super(new RollbackOnlyParticipant(), result);
+			this.numberOfFailures = numberOfFailures;
+		}
+
+		@Override
+		protected Object send() throws PropagationException {
+			if (attempts.incrementAndGet() <= numberOfFailures) {
+				throw new PropagationException(new Exception("transient"), true);
+			}
+			return Boolean.TRUE;
+		}
+	}
+
+}
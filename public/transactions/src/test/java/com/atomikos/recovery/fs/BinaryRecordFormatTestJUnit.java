@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+import org.junit.Test;
+
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+
+public class BinaryRecordFormatTestJUnit {
+
+	private static final PendingTransactionRecord ROOT = new PendingTransactionRecord("root", TxState.COMMITTING, 1234567890123L, "domain", null);
+	private static final PendingTransactionRecord CHILD = new PendingTransactionRecord("child-\u00e9\u4e2d\ud83d\ude00", TxState.IN_DOUBT, 42L, "domain", "root");
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Map<String, PendingTransactionRecord> records = decode(log(ROOT, CHILD));
+		assertEquals(2, records.size());
+		assertSameRecord(ROOT, records.get(ROOT.id));
+		assertSameRecord(CHILD, records.get(CHILD.id));
+		assertNull(records.get(ROOT.id).superiorId);
+	}
+
+	@Test
+	public void testLastRecordForIdWins() throws Exception {
+		PendingTransactionRecord terminated = new PendingTransactionRecord("root", TxState.TERMINATED, 0L, "domain", null);
+		Map<String, PendingTransactionRecord> records = decode(log(ROOT, terminated));
+		assertEquals(TxState.TERMINATED, records.get(ROOT.id).state);
+	}
+
+	@Test
+	public void testTornTailRecordIsIgnored() throws Exception {
+		byte[] bytes = log(ROOT, CHILD);
+		Map<String, PendingTransactionRecord> records = BinaryRecordFormat.decode(bytes, bytes.length - 3);
+		assertEquals(1, records.size());
+		assertSameRecord(ROOT, records.get(ROOT.id));
+	}
+
+	@Test
+	public void testCorruptedRecordIsIgnored() throws Exception {
+		byte[] bytes = log(ROOT, CHILD);
+		bytes[bytes.length - 8] ^= 0x01;
+		Map<String, PendingTransactionRecord> records = decode(bytes);
+		assertEquals(1, records.size());
+		assertTrue(records.containsKey(ROOT.id));
+	}
+
+	@Test
+	public void testReusableBufferGrowsWhenTooSmall() throws Exception {
+		ByteBuffer small = ByteBuffer.allocate(4);
+		ByteBuffer encoded = BinaryRecordFormat.encode(CHILD, small);
+		assertTrue(encoded != small);
+		assertTrue(encoded.remaining() > 4);
+		assertTrue(BinaryRecordFormat.encode(ROOT, encoded) == encoded);
+	}
+
+	@Test
+	public void testFileSystemRepositoryDetectsFormat() throws Exception {
+		Collection<PendingTransactionRecord> binary = FileSystemRepository.readFromInputStream(new ByteArrayInputStream(log(ROOT, CHILD)));
+		assertEquals(2, binary.size());
+		byte[] text = (ROOT.toRecord() + CHILD.toRecord()).getBytes(StandardCharsets.UTF_8);
+		Collection<PendingTransactionRecord> parsed = FileSystemRepository.readFromInputStream(new ByteArrayInputStream(text));
+		assertEquals(2, parsed.size());
+	}
+
+	@Test
+	public void testHeaderDetection() throws Exception {
+		assertTrue(BinaryRecordFormat.startsWithHeader(log(), BinaryRecordFormat.HEADER_LENGTH));
+		assertFalse(BinaryRecordFormat.startsWithHeader("root|COMMITTING".getBytes(StandardCharsets.US_ASCII), 15));
+		assertFalse(BinaryRecordFormat.startsWithHeader(new byte[0], 0));
+	}
+
+	@Test
+	public void testFallbackChecksumMatchesCrc32c() throws Exception {
+		byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+		Checksum fallback = new BinaryRecordFormat.Crc32c();
+		fallback.update(check, 0, check.length);
+		assertEquals(0xE3069283L, fallback.getValue());
+		Checksum preferred = BinaryRecordFormat.newChecksum();
+		preferred.update(check, 0, check.length);
+		assertEquals(0xE3069283L, preferred.getValue());
+	}
+
+	private static byte[] log(PendingTransactionRecord... records) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer buffer = ByteBuffer.allocate(BinaryRecordFormat.HEADER_LENGTH);
+		BinaryRecordFormat.writeHeader(buffer);
+		out.write(buffer.array(), 0, buffer.position());
+		for (PendingTransactionRecord record : records) {
+			buffer = BinaryRecordFormat.encode(record, buffer);
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+		}
+		return out.toByteArray();
+	}
+
+	private static Map<String, PendingTransactionRecord> decode(byte[] bytes) {
+		return BinaryRecordFormat.decode(bytes, bytes.length);
+	}
+
+	private static void assertSameRecord(PendingTransactionRecord expected, PendingTransactionRecord actual) {
+		assertEquals(expected.id, actual.id);
+		assertEquals(expected.state, actual.state);
+		assertEquals(expected.expires, actual.expires);
+		assertEquals(expected.recoveryDomainName, actual.recoveryDomainName);
+		assertEquals(expected.superiorId, actual.superiorId);
+	}
+
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+import com.atomikos.recovery.LogWriteException;
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+
+public class CachedRepositoryTestJUnit {
+
+	private static final int CHECKPOINT_INTERVAL = 5;
+
+	private String originalCheckpointInterval;
+	private BackupRepository backup;
+	private CachedRepository repository;
+
+	@Before
+	public void setUp() throws Exception {
+		ConfigProperties props = Configuration.getConfigProperties();
+		originalCheckpointInterval = props.getProperty(ConfigProperties.CHECKPOINT_INTERVAL);
+		props.setProperty(ConfigProperties.CHECKPOINT_INTERVAL, String.valueOf(CHECKPOINT_INTERVAL));
+		backup = new BackupRepository();
+		InMemoryRepository inMemory = new InMemoryRepository();
+		inMemory.init();
+		repository = new CachedRepository(inMemory, backup);
+		repository.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		repository.close();
+		Configuration.getConfigProperties().setProperty(ConfigProperties.CHECKPOINT_INTERVAL, originalCheckpointInterval);
+	}
+
+	@Test
+	public void testCheckpointIsPerformedInBackground() throws Exception {
+		for (int i = 0; i < CHECKPOINT_INTERVAL; i++) {
+			put("tx" + i);
+		}
+		assertTrue(backup.backgroundCheckpoint.await(5, TimeUnit.SECONDS));
+		assertNotSame(Thread.currentThread(), backup.checkpointThread);
+		assertEquals(CHECKPOINT_INTERVAL, backup.lastCheckpointContent.size());
+	}
+
+	@Test
+	public void testPutsAreNotLostAcrossCheckpoints() throws Exception {
+		for (int i = 0; i < 10 * CHECKPOINT_INTERVAL; i++) {
+			put("tx" + i);
+		}
+		assertTrue(backup.backgroundCheckpoint.await(5, TimeUnit.SECONDS));
+		assertEquals(10 * CHECKPOINT_INTERVAL, repository.getAllCoordinatorLogEntries().size());
+	}
+
+	@Test
+	public void testNoCheckpointAfterClose() throws Exception {
+		for (int i = 0; i < CHECKPOINT_INTERVAL; i++) {
+			put("tx" + i);
+		}
+		repository.close();
+		Thread.sleep(200); // give a scheduled checkpoint the chance to run
+		assertFalse(backup.checkpointAfterClose);
+	}
+
+	@Test
+	public void testPutCompletesWhileCheckpointIsWritten() throws Exception {
+		backup.releaseCheckpoint = new CountDownLatch(1);
+		try {
+			for (int i = 0; i < CHECKPOINT_INTERVAL; i++) {
+				put("tx" + i);
+			}
+			assertTrue(backup.backgroundCheckpoint.await(5, TimeUnit.SECONDS));
+			Thread putter = new Thread() {
+				@Override
+				public void run() {
+					try {
+						put("late");
+					} catch (Exception e) {
+						// detected by the assertion below
+					}
+				}
+			};
+			putter.start();
+			putter.join(5000);
+			assertFalse("put waited for the checkpoint", putter.isAlive());
+			assertNotNull(repository.get("late"));
+		} finally {
+			backup.releaseCheckpoint.countDown();
+		}
+	}
+
+	private void put(String id) throws Exception {
+		repository.put(id, new PendingTransactionRecord(id, TxState.COMMITTING, System.currentTimeMillis() + 60000, "domain", null));
+	}
+
+	private static class BackupRepository implements Repository {
+
+		final CountDownLatch backgroundCheckpoint = new CountDownLatch(1);
+		volatile Thread checkpointThread;
+		volatile Collection<PendingTransactionRecord> lastCheckpointContent;
+		volatile boolean closed;
+		volatile boolean checkpointAfterClose;
+		volatile CountDownLatch releaseCheckpoint; // blocks background checkpoints until released, if not null
+		private int numberOfCheckpoints;
+
+		@Override
+		public void init() {
+		}
+
+		@Override
+		public void put(String id, PendingTransactionRecord pendingTransactionRecord) {
+		}
+
+		@Override
+		public PendingTransactionRecord get(String coordinatorId) {
+			return null;
+		}
+
+		@Override
+		public Collection<PendingTransactionRecord> findAllCommittingCoordinatorLogEntries() {
+			return new ArrayList<PendingTransactionRecord>();
+		}
+
+		@Override
+		public Collection<PendingTransactionRecord> findAllExpiredCommittingLineages(long time, String recoveryDomainName) {
+			return new ArrayList<PendingTransactionRecord>();
+		}
+
+		@Override
+		public Collection<PendingTransactionRecord> findAllIndoubtLineages() {
+			return new ArrayList<PendingTransactionRecord>();
+		}
+
+		@Override
+		public Collection<PendingTransactionRecord> getAllCoordinatorLogEntries() {
+			return new ArrayList<PendingTransactionRecord>();
+		}
+
+		@Override
+		public void startCheckpoint() {
+		}
+
+		@Override
+		public void writeCheckpoint(Collection<PendingTransactionRecord> checkpointContent) throws LogWriteException {
+			if (recordCheckpoint(checkpointContent) && releaseCheckpoint != null) {
+				try {
+					releaseCheckpoint.await();
+				} catch (InterruptedException e) {
+					throw new LogWriteException(e);
+				}
+			}
+		}
+
+		private synchronized boolean recordCheckpoint(Collection<PendingTransactionRecord> checkpointContent) {
+			if (closed) {
+				checkpointAfterClose = true;
+			}
+			numberOfCheckpoints++;
+			if (numberOfCheckpoints > 1) { // the first one is done by init
+				List<PendingTransactionRecord> copy = new ArrayList<PendingTransactionRecord>(checkpointContent);
+				lastCheckpointContent = copy;
+				checkpointThread = Thread.currentThread();
+				backgroundCheckpoint.countDown();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+}
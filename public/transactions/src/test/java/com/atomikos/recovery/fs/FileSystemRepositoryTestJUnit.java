@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+
+public class FileSystemRepositoryTestJUnit {
+
+	private File dir;
+	private FileSystemRepository repository;
+	private String originalBaseDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("FileSystemRepositoryTest").toFile();
+		ConfigProperties props = Configuration.getConfigProperties();
+		originalBaseDir = props.getProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME);
+		props.setProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME, dir.getAbsolutePath());
+		repository = createRepository();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		repository.close();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		Configuration.getConfigProperties().setProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME, originalBaseDir);
+	}
+
+	@Test
+	public void testPutsSinceCheckpointStartWinOverCheckpointContent() throws Exception {
+		PendingTransactionRecord indoubt = put("tx1", TxState.IN_DOUBT);
+		repository.startCheckpoint();
+		put("tx1", TxState.COMMITTING);
+		repository.writeCheckpoint(Collections.singletonList(indoubt));
+		Collection<PendingTransactionRecord> records = restart();
+		assertEquals(1, records.size());
+		assertEquals(TxState.COMMITTING, records.iterator().next().state);
+		assertEquals(1, logFiles().length);
+	}
+
+	@Test
+	public void testPutsSurviveCrashDuringCheckpoint() throws Exception {
+		put("tx1", TxState.COMMITTING);
+		repository.startCheckpoint();
+		put("tx2", TxState.COMMITTING);
+		// crash: the checkpoint content was never written
+		assertEquals(2, restart().size());
+		// the next checkpoint must not overwrite the version with tx2 either
+		repository.startCheckpoint();
+		Collection<PendingTransactionRecord> records = restart();
+		assertEquals(2, records.size());
+		repository.writeCheckpoint(new ArrayList<PendingTransactionRecord>(records));
+		assertEquals(2, restart().size());
+		assertEquals(1, logFiles().length);
+	}
+
+	private PendingTransactionRecord put(String id, TxState state) throws Exception {
+		PendingTransactionRecord ret = new PendingTransactionRecord(id, state, Long.MAX_VALUE, "domain", null);
+		repository.put(id, ret);
+		return ret;
+	}
+
+	private Collection<PendingTransactionRecord> restart() throws Exception {
+		repository.close();
+		repository = createRepository();
+		return repository.getAllCoordinatorLogEntries();
+	}
+
+	private static FileSystemRepository createRepository() throws Exception {
+		FileSystemRepository ret = new FileSystemRepository();
+		ret.init();
+		return ret;
+	}
+
+	private File[] logFiles() {
+		return dir.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".log");
+			}
+		});
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupCommitWriterTestJUnit {
+
+	private static final int NUMBER_OF_THREADS = 8;
+	private static final int RECORDS_PER_THREAD = 100;
+
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("GroupCommitWriterTest", ".log");
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		raf.close();
+		file.delete();
+	}
+
+	@Test
+	public void testSingleWriterWritesRecord() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(10, 0, 1024);
+		writer.write(channel, encode("record\n"));
+		assertEquals("record\n", readFile());
+	}
+
+	@Test
+	public void testRecordsLargerThanBufferAreWrittenInOrder() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(10, 0, 8);
+		writer.write(channel, encode("short\n"));
+		writer.write(channel, encode("a much longer record\n"));
+		assertEquals("short\na much longer record\n", readFile());
+	}
+
+	@Test
+	public void testConcurrentWritersShareForces() throws Exception {
+		final GroupCommitWriter writer = new GroupCommitWriter(64, 5, 1024);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+			final int threadNumber = t;
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+							String record = threadNumber + "-" + i + "\n";
+							writer.write(channel, encode(record));
+						}
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(errors.isEmpty());
+		Set<String> lines = new HashSet<String>(Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII));
+		assertEquals(NUMBER_OF_THREADS * RECORDS_PER_THREAD, lines.size());
+		assertTrue(writer.getAverageBatchSize() > 1);
+	}
+
+	private static ByteBuffer encode(String record) {
+		return ByteBuffer.wrap(record.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private String readFile() throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+
+public class InMemoryRepositoryTestJUnit {
+
+	private static final String DOMAIN = "domain";
+	private static final TxState[] STATES = { TxState.COMMITTING, TxState.IN_DOUBT, TxState.ABORTING, TxState.HEUR_MIXED };
+
+	private InMemoryRepository repository;
+
+	@Before
+	public void setUp() {
+		repository = new InMemoryRepository();
+		repository.init();
+	}
+
+	@Test
+	public void testFinalStateRemovesRecord() {
+		PendingTransactionRecord committing = put("root", TxState.COMMITTING, 10, null);
+		put("child", TxState.IN_DOUBT, 10, "root");
+		repository.put("root", committing.markAsTerminated());
+		assertNull(repository.get("root"));
+		assertTrue(repository.findAllCommittingCoordinatorLogEntries().isEmpty());
+		assertTrue(repository.findAllExpiredCommittingLineages(100, DOMAIN).isEmpty());
+	}
+
+	@Test
+	public void testStateChangeUpdatesIndexes() {
+		PendingTransactionRecord indoubt = put("root", TxState.IN_DOUBT, 10, null);
+		assertEquals(1, repository.findAllIndoubtLineages().size());
+		repository.put("root", indoubt.markAsCommitting());
+		assertTrue(repository.findAllIndoubtLineages().isEmpty());
+		assertEquals(1, repository.findAllCommittingCoordinatorLogEntries().size());
+	}
+
+	@Test
+	public void testExpiredCommittingLineagesOnlyIncludesExpiredLocalRoots() {
+		put("expired", TxState.COMMITTING, 10, null);
+		put("expiredChild", TxState.IN_DOUBT, 10, "expired");
+		put("notExpired", TxState.COMMITTING, 1000, null);
+		put("foreign", TxState.COMMITTING, 10, "http://remote/tx", "otherDomain");
+		Set<String> ids = ids(repository.findAllExpiredCommittingLineages(100, DOMAIN));
+		assertEquals(3, ids.size());
+		assertTrue(ids.contains("expired"));
+		assertTrue(ids.contains("expiredChild"));
+		assertTrue(ids.contains("foreign"));
+	}
+
+	@Test
+	public void testQueriesMatchLineagesOfAllRecords() {
+		Random random = new Random(42);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			String id = "tx" + i;
+			String superiorId = ids.isEmpty() || random.nextInt(3) == 0 ? null : ids.get(random.nextInt(ids.size()));
+			put(id, STATES[random.nextInt(STATES.length)], random.nextInt(200), superiorId);
+			ids.add(id);
+		}
+		for (int i = 0; i < 100; i++) { // change some states
+			PendingTransactionRecord record = repository.get(ids.get(random.nextInt(ids.size())));
+			if (record != null) {
+				PendingTransactionRecord changed = random.nextBoolean() ? record.markAsCommitting() : record.markAsTerminated();
+				repository.put(changed.id, changed);
+			}
+		}
+		Collection<PendingTransactionRecord> all = new ArrayList<PendingTransactionRecord>(repository.getAllCoordinatorLogEntries());
+
+		Collection<PendingTransactionRecord> committing = repository.findAllCommittingCoordinatorLogEntries();
+		assertEquals(ids(committingByScan(all)), ids(committing));
+
+		long time = 100;
+		assertEquals(ids(PendingTransactionRecord.collectLineages(
+				r -> r.isLocalRoot(DOMAIN) && r.expires < time && r.state == TxState.COMMITTING, committing)),
+				ids(repository.findAllExpiredCommittingLineages(time, DOMAIN)));
+
+		assertEquals(ids(PendingTransactionRecord.collectLineages(r -> r.state == TxState.IN_DOUBT, all)),
+				ids(repository.findAllIndoubtLineages()));
+	}
+
+	@Test
+	public void testCheckpointRebuildsIndexes() {
+		PendingTransactionRecord root = put("root", TxState.COMMITTING, 10, null);
+		put("other", TxState.IN_DOUBT, 10, null);
+		List<PendingTransactionRecord> content = new ArrayList<PendingTransactionRecord>();
+		content.add(root);
+		repository.writeCheckpoint(content);
+		assertTrue(repository.findAllIndoubtLineages().isEmpty());
+		assertEquals(1, repository.findAllExpiredCommittingLineages(100, DOMAIN).size());
+	}
+
+	@Test
+	public void testQueriesNeverSeePartialCheckpoint() throws Exception {
+		final List<PendingTransactionRecord> content = new ArrayList<PendingTransactionRecord>();
+		for (int i = 0; i < 100; i++) {
+			content.add(put("tx" + i, TxState.COMMITTING, 10, null));
+		}
+		Thread checkpointer = new Thread() {
+			public void run() {
+				for (int i = 0; i < 500; i++) {
+					repository.writeCheckpoint(content);
+				}
+			}
+		};
+		checkpointer.start();
+		while (checkpointer.isAlive()) {
+			assertEquals(100, repository.getAllCoordinatorLogEntries().size());
+			assertEquals(100, repository.findAllCommittingCoordinatorLogEntries().size());
+		}
+		checkpointer.join();
+	}
+
+	private static Collection<PendingTransactionRecord> committingByScan(Collection<PendingTransactionRecord> all) {
+		Collection<PendingTransactionRecord> ret = new ArrayList<PendingTransactionRecord>();
+		for (PendingTransactionRecord record : all) {
+			if (record.state == TxState.COMMITTING || (record.state == TxState.IN_DOUBT && hasCommittingAncestor(record, all))) {
+				ret.add(record);
+			}
+		}
+		return ret;
+	}
+
+	private static boolean hasCommittingAncestor(PendingTransactionRecord record, Collection<PendingTransactionRecord> all) {
+		String superiorId = record.superiorId;
+		while (superiorId != null) {
+			PendingTransactionRecord superior = null;
+			for (PendingTransactionRecord candidate : all) {
+				if (candidate.id.equals(superiorId)) superior = candidate;
+			}
+			if (superior == null) return false;
+			if (superior.state == TxState.COMMITTING) return true;
+			superiorId = superior.superiorId;
+		}
+		return false;
+	}
+
+	private PendingTransactionRecord put(String id, TxState state, long expires, String superiorId) {
+		return put(id, state, expires, superiorId, DOMAIN);
+	}
+
+	private PendingTransactionRecord put(String id, TxState state, long expires, String superiorId, String domain) {
+		PendingTransactionRecord ret = new PendingTransactionRecord(id, state, expires, domain, superiorId);
+		repository.put(id, ret);
+		return ret;
+	}
+
+	private static Set<String> ids(Collection<PendingTransactionRecord> records) {
+		Set<String> ret = new HashSet<String>();
+		for (PendingTransactionRecord record : records) {
+			ret.add(record.id);
+		}
+		return ret;
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.recovery.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.provider.ConfigProperties;
+import com.atomikos.recovery.PendingTransactionRecord;
+import com.atomikos.recovery.TxState;
+
+public class SegmentedLogRepositoryTestJUnit {
+
+	private File dir;
+	private SegmentedLogRepository repository;
+	private String originalBaseDir;
+	private String originalSegmentSize;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("SegmentedLogRepositoryTest").toFile();
+		ConfigProperties props = Configuration.getConfigProperties();
+		originalBaseDir = props.getProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME);
+		originalSegmentSize = props.getProperty(ConfigProperties.LOG_SEGMENT_SIZE);
+		props.setProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME, dir.getAbsolutePath());
+		props.setProperty(ConfigProperties.LOG_SEGMENT_SIZE, "1024");
+		repository = createRepository();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		repository.close();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		ConfigProperties props = Configuration.getConfigProperties();
+		props.setProperty(ConfigProperties.LOG_BASE_DIR_PROPERTY_NAME, originalBaseDir);
+		props.setProperty(ConfigProperties.LOG_SEGMENT_SIZE, originalSegmentSize);
+	}
+
+	@Test
+	public void testRecordsSurviveRestart() throws Exception {
+		put("tx1", TxState.COMMITTING);
+		put("tx2", TxState.IN_DOUBT);
+		put("tx1", TxState.TERMINATED);
+		Collection<PendingTransactionRecord> records = restart();
+		assertEquals(2, records.size());
+		assertEquals(TxState.TERMINATED, find(records, "tx1").state);
+		assertEquals(TxState.IN_DOUBT, find(records, "tx2").state);
+	}
+
+	@Test
+	public void testAppendsRollOverToNewSegments() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			put("tx" + i, TxState.COMMITTING);
+		}
+		assertTrue(segmentFiles().length > 1);
+		assertEquals(100, restart().size());
+	}
+
+	@Test
+	public void testCheckpointDeletesSealedSegmentsAndKeepsLiveRecords() throws Exception {
+		List<PendingTransactionRecord> live = new ArrayList<PendingTransactionRecord>();
+		for (int i = 0; i < 100; i++) {
+			PendingTransactionRecord record = put("tx" + i, TxState.COMMITTING);
+			if (i % 10 == 0) {
+				live.add(record);
+			} else {
+				put("tx" + i, TxState.TERMINATED);
+			}
+		}
+		int segmentsBeforeCheckpoint = segmentFiles().length;
+		repository.writeCheckpoint(live);
+		repository.awaitCompaction();
+		assertTrue(segmentFiles().length < segmentsBeforeCheckpoint);
+		Collection<PendingTransactionRecord> records = restart();
+		assertEquals(10, records.size());
+		for (PendingTransactionRecord record : records) {
+			assertEquals(TxState.COMMITTING, record.state);
+		}
+	}
+
+	@Test
+	public void testLegacyLogFileIsPickedUp() throws Exception {
+		PendingTransactionRecord record = new PendingTransactionRecord("legacy", TxState.COMMITTING, Long.MAX_VALUE, "domain", null);
+		FileOutputStream out = new FileOutputStream(new File(dir, "tmlog1.log"));
+		out.write(record.toRecord().getBytes(StandardCharsets.UTF_8));
+		out.close();
+		Collection<PendingTransactionRecord> records = repository.getAllCoordinatorLogEntries();
+		assertEquals(1, records.size());
+		assertEquals("legacy", records.iterator().next().id);
+	}
+
+	@Test
+	public void testLegacyRecordsSurviveCheckpointAndRestart() throws Exception {
+		PendingTransactionRecord record = new PendingTransactionRecord("legacy", TxState.COMMITTING, Long.MAX_VALUE, "domain", null);
+		File legacyFile = new File(dir, "tmlog1.log");
+		FileOutputStream out = new FileOutputStream(legacyFile);
+		out.write(record.toRecord().getBytes(StandardCharsets.UTF_8));
+		out.close();
+		List<PendingTransactionRecord> live = new ArrayList<PendingTransactionRecord>(repository.getAllCoordinatorLogEntries());
+		assertFalse(legacyFile.exists());
+		live.add(put("tx1", TxState.COMMITTING));
+		repository.writeCheckpoint(live);
+		repository.awaitCompaction();
+		Collection<PendingTransactionRecord> records = restart();
+		assertEquals(2, records.size());
+		assertEquals(TxState.COMMITTING, find(records, "legacy").state);
+		assertEquals(TxState.COMMITTING, find(records, "tx1").state);
+	}
+
+	private PendingTransactionRecord put(String id, TxState state) throws Exception {
+		PendingTransactionRecord ret = new PendingTransactionRecord(id, state, Long.MAX_VALUE, "domain", null);
+		repository.put(id, ret);
+		return ret;
+	}
+
+	private Collection<PendingTransactionRecord> restart() throws Exception {
+		repository.close();
+		repository = createRepository();
+		return repository.getAllCoordinatorLogEntries();
+	}
+
+	private static SegmentedLogRepository createRepository() throws Exception {
+		SegmentedLogRepository ret = new SegmentedLogRepository();
+		ret.init();
+		return ret;
+	}
+
+	private static PendingTransactionRecord find(Collection<PendingTransactionRecord> records, String id) {
+		for (PendingTransactionRecord record : records) {
+			if (record.id.equals(id)) {
+				return record;
+			}
+		}
+		return null;
+	}
+
+	private File[] segmentFiles() {
+		return dir.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(SegmentedLogRepository.SUFFIX);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.thread;
+
+import java.util.Locale;
+
+/**
+ * The kinds of threads the {@link TaskManager} can execute tasks on.
+ */
+
+public enum ExecutorMode {
+
+	/**
+	 * Unbounded cached pool of platform threads (the classic behaviour).
+	 */
+	PLATFORM,
+
+	/**
+	 * Bounded pool of platform threads with a bounded queue: when all threads
+	 * are busy and the queue is full then the submitting thread executes the 
+	 * task itself. The TimingWheel never does: it starts a spare thread instead.
+	 * Tasks submitted by a pool thread are executed by that thread, so a task 
+	 * that waits for other pool work is never queued behind that work.
+	 */
+	BOUNDED,
+
+	/**
+	 * One virtual thread per task, if the JVM supports it - otherwise same as {@link #BOUNDED}.
+	 */
+	VIRTUAL;
+
+	/**
+	 * @param value The (case-insensitive) name of the mode.
+	 * @return The mode.
+	 * @throws IllegalArgumentException If the value is not a known mode.
+	 */
+	public static ExecutorMode parse(String value) throws IllegalArgumentException {
+		if (value == null) throw new IllegalArgumentException("Executor mode cannot be null");
+		return valueOf(value.trim().toUpperCase(Locale.ROOT));
+	}
+
+}
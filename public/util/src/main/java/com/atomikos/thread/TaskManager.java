@@ -8,6 +8,11 @@
 
 package com.atomikos.thread;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -17,7 +22,8 @@ import com.atomikos.logging.Logger;
 import com.atomikos.logging.LoggerFactory;
 
 /**
- * Scheduling logic for tasks/threads.
+ * Scheduling logic for tasks/threads. The kind of threads used is determined
+ * by the configured {@link ExecutorMode}.
  */
 
 public enum TaskManager {
@@ -25,14 +31,76 @@ public enum TaskManager {
 	
 	private static final Logger LOGGER = LoggerFactory.createLogger(TaskManager.class);
 	
-	private ThreadPoolExecutor executor;
+	private static final int DEFAULT_MAX_POOL_SIZE = 64;
+	
+	private static final int QUEUE_CAPACITY_PER_THREAD = 16;
+	
+	private volatile ExecutorService executor;
+	
+	private ExecutorMode mode = ExecutorMode.PLATFORM;
+	
+	private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
 	
 
-	private void init() {
-		SynchronousQueue<Runnable> synchronousQueue = new SynchronousQueue<Runnable>();
-		executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, new Long(60L),
-				TimeUnit.SECONDS, synchronousQueue, new AtomikosThreadFactory());
+	private synchronized ExecutorService init() {
+		if (executor == null) {
+			executor = createExecutor();
+		}
+		return executor;
+	}
 
+	private ExecutorService createExecutor() {
+		ExecutorService ret = null;
+		if (mode == ExecutorMode.VIRTUAL) {
+			ret = createVirtualThreadExecutor();
+			if (ret == null) {
+				LOGGER.logWarning("Virtual threads not supported by this JVM - using a bounded thread pool instead");
+			}
+		}
+		if (ret == null) {
+			if (mode == ExecutorMode.PLATFORM) {
+				ret = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new AtomikosThreadFactory());
+			} else {
+				ret = createBoundedExecutor();
+			}
+		}
+		return ret;
+	}
+
+	private ExecutorService createBoundedExecutor() {
+		return new BoundedExecutor(maxPoolSize, maxPoolSize * QUEUE_CAPACITY_PER_THREAD);
+	}
+
+	private static ExecutorService createVirtualThreadExecutor() {
+		ExecutorService ret = null;
+		try {
+			// reflection: we still compile for Java 8
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ret = (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException notSupported) {
+			// pre-21 JVM
+		} catch (Exception e) {
+			LOGGER.logWarning("Failed to create virtual thread executor", e);
+		}
+		return ret;
+	}
+
+	/**
+	 * Sets the kind of threads to use for tasks submitted from now on.
+	 * Tasks that are already running are not affected.
+	 * 
+	 * @param mode
+	 * @param maxPoolSize The maximum number of threads for {@link ExecutorMode#BOUNDED}.
+	 */
+	public synchronized void configure(ExecutorMode mode, int maxPoolSize) {
+		if (mode == null) throw new IllegalArgumentException("mode cannot be null");
+		if (maxPoolSize <= 0) throw new IllegalArgumentException("maxPoolSize must be positive");
+		if (mode != this.mode || maxPoolSize != this.maxPoolSize) {
+			this.mode = mode;
+			this.maxPoolSize = maxPoolSize;
+			shutdown();
+		}
 	}
 
 	/**
@@ -52,11 +120,93 @@ public enum TaskManager {
 	 * @param task
 	 */
 	public void executeTask(Runnable task) {
-		if (executor == null) {
+		ExecutorService current = executor;
+		if (current == null) {
 			// happens on restart of TS within same VM
-			init();
+			current = init();
 		}
-		executor.execute(task);
+		current.execute(task);
+	}
+
+	/**
+	 * Like {@link #executeTask(Runnable)}, but never executes the task in the calling 
+	 * thread - not even for {@link ExecutorMode#BOUNDED} when the pool is saturated. 
+	 * Meant for callers that must never block, like the TimingWheel.
+	 * 
+	 * @param task
+	 */
+	public void executeTaskWithoutBlocking(Runnable task) {
+		ExecutorService current = executor;
+		if (current == null) {
+			current = init();
+		}
+		if (current instanceof BoundedExecutor) {
+			((BoundedExecutor) current).executeWithoutBlocking(task);
+		} else {
+			current.execute(task);
+		}
+	}
+
+	/**
+	 * A fixed number of threads with a bounded queue. When the queue is full,
+	 * the submitting thread executes the task itself (back-pressure) - unless it
+	 * must not block, in which case a spare thread is started for it.
+	 * <p>
+	 * Tasks submitted by the pool's own threads are executed by the submitting
+	 * thread right away: such a thread may wait for the task, which must then
+	 * never be queued behind the work of that same thread.
+	 */
+	private static class BoundedExecutor extends ThreadPoolExecutor {
+
+		private static final ThreadLocal<BoundedExecutor> CURRENT_POOL = new ThreadLocal<BoundedExecutor>();
+
+		BoundedExecutor(int maxPoolSize, int queueCapacity) {
+			super(maxPoolSize, maxPoolSize, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(queueCapacity), new AtomikosThreadFactory());
+			allowCoreThreadTimeOut(true);
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			if (CURRENT_POOL.get() == this || !tryToQueue(task)) {
+				runInCallingThread(task);
+			}
+		}
+
+		void executeWithoutBlocking(Runnable task) {
+			if (!tryToQueue(task)) {
+				Thread spare = getThreadFactory().newThread(() -> {
+					CURRENT_POOL.set(this);
+					runInCallingThread(task);
+				});
+				spare.start();
+			}
+		}
+
+		private boolean tryToQueue(Runnable task) {
+			boolean ret = true;
+			try {
+				super.execute(task);
+			} catch (RejectedExecutionException full) {
+				if (isShutdown()) throw full;
+				ret = false;
+			}
+			return ret;
+		}
+
+		private static void runInCallingThread(Runnable task) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOGGER.logWarning("Unexpected error in task", e);
+			}
+		}
+
+		@Override
+		protected void beforeExecute(Thread t, Runnable r) {
+			CURRENT_POOL.set(this);
+		}
+
 	}
 
 	private static class AtomikosThreadFactory implements
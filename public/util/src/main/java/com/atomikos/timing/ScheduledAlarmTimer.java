@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.timing;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.atomikos.logging.Logger;
+import com.atomikos.logging.LoggerFactory;
+
+/**
+ * A periodic alarm timer driven by the shared {@link TimingWheel}. Unlike
+ * {@link PooledAlarmTimer}, no thread is held while waiting for the next alarm:
+ * a pooled thread is only used while the listeners are being notified.
+ */
+public final class ScheduledAlarmTimer implements AlarmTimer {
+
+	private static final Logger LOGGER = LoggerFactory.createLogger(ScheduledAlarmTimer.class);
+
+	private final List<AlarmTimerListener> listeners = new CopyOnWriteArrayList<AlarmTimerListener>();
+	private final long timeout;
+
+	private volatile boolean runFlag = true;
+	private volatile TimingWheel.Timeout nextAlarm;
+	private long nextAlarmTime;
+
+	public ScheduledAlarmTimer(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public void addAlarmTimerListener(AlarmTimerListener lstnr) {
+		listeners.add(lstnr);
+	}
+
+	public void removeAlarmTimerListener(AlarmTimerListener lstnr) {
+		listeners.remove(lstnr);
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public boolean isActive() {
+		return runFlag;
+	}
+
+	/**
+	 * Arms the timer: the first alarm goes off after the timeout.
+	 */
+	public synchronized void start() {
+		nextAlarmTime = System.currentTimeMillis() + timeout;
+		scheduleNextAlarm();
+	}
+
+	public void stopTimer() {
+		runFlag = false;
+		TimingWheel.Timeout alarm = nextAlarm;
+		if (alarm != null) {
+			alarm.cancel();
+		}
+	}
+
+	/**
+	 * Called by the TaskManager when the alarm goes off.
+	 */
+	public void run() {
+		if (isActive()) {
+			notifyListeners();
+			synchronized (this) {
+				nextAlarmTime = Math.max(nextAlarmTime + timeout, System.currentTimeMillis());
+				scheduleNextAlarm();
+			}
+		}
+	}
+
+	private void scheduleNextAlarm() {
+		if (isActive()) {
+			long delay = nextAlarmTime - System.currentTimeMillis();
+			nextAlarm = TimingWheel.SINGLETON.schedule(this, delay);
+			if (!isActive()) {
+				// concurrent stopTimer may have missed the new alarm
+				nextAlarm.cancel();
+			}
+		}
+	}
+
+	private void notifyListeners() {
+		for (AlarmTimerListener listener : listeners) {
+			try {
+				listener.alarm(this);
+			} catch (RuntimeException e) {
+				LOGGER.logWarning("Unexpected error in alarm listener " + listener, e);
+			}
+		}
+	}
+
+}
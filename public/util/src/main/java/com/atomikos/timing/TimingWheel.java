@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.timing;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.atomikos.logging.Logger;
+import com.atomikos.logging.LoggerFactory;
+import com.atomikos.thread.TaskManager;
+
+/**
+ * A hashed timing wheel shared by all timers in the VM. One single ticker
+ * thread advances the wheel and hands expired tasks over to the
+ * {@link TaskManager}, so sleeping timers no longer need a thread each.
+ * Scheduling and cancelling a timeout are O(1).
+ */
+
+public enum TimingWheel {
+	SINGLETON;
+
+	private static final Logger LOGGER = LoggerFactory.createLogger(TimingWheel.class);
+
+	static final long TICK_DURATION_MILLIS = 10;
+
+	private static final int WHEEL_SIZE = 512; // must be a power of two
+	private static final int MASK = WHEEL_SIZE - 1;
+	private static final long TICK_DURATION_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_DURATION_MILLIS);
+
+	private final Bucket[] wheel = createWheel();
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	private volatile long startTime;
+	private volatile boolean started;
+	private Thread ticker;
+
+	private static Bucket[] createWheel() {
+		Bucket[] ret = new Bucket[WHEEL_SIZE];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = new Bucket();
+		}
+		return ret;
+	}
+
+	/**
+	 * Schedules a task for one single execution by the TaskManager.
+	 *
+	 * @param task
+	 * @param delayMillis
+	 * @return The handle to cancel the task with.
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		if (task == null) throw new IllegalArgumentException("task cannot be null");
+		if (!started) {
+			startTickerIfNecessary();
+		}
+		long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+		Timeout ret = new Timeout(this, task, deadline);
+		pendingTimeouts.add(ret);
+		return ret;
+	}
+
+	private synchronized void startTickerIfNecessary() {
+		if (ticker == null) {
+			startTime = System.nanoTime();
+			ticker = new Thread(new Ticker(), "Atomikos:TimingWheel");
+			ticker.setDaemon(true);
+			ticker.start();
+			started = true; // after startTime: schedule reads both without locking
+		}
+	}
+
+	private void cancelled(Timeout timeout) {
+		cancelledTimeouts.add(timeout);
+	}
+
+	private void expire(Timeout timeout) {
+		try {
+			TaskManager.SINGLETON.executeTaskWithoutBlocking(timeout.task);
+		} catch (Throwable e) {
+			LOGGER.logWarning("Failed to execute expired timeout", e);
+		}
+	}
+
+	/**
+	 * Handle for a scheduled task.
+	 */
+	public static final class Timeout {
+
+		private static final int ST_PENDING = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+
+		private final TimingWheel timingWheel;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+
+		// only accessed by the ticker thread
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout next;
+		private Timeout prev;
+
+		private Timeout(TimingWheel timingWheel, Runnable task, long deadline) {
+			this.timingWheel = timingWheel;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the task if it has not expired yet.
+		 *
+		 * @return True if the task will no longer be executed.
+		 */
+		public boolean cancel() {
+			boolean ret = state.compareAndSet(ST_PENDING, ST_CANCELLED);
+			if (ret) {
+				timingWheel.cancelled(this);
+			}
+			return ret;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+		private boolean markAsExpired() {
+			return state.compareAndSet(ST_PENDING, ST_EXPIRED);
+		}
+	}
+
+	/**
+	 * Doubly linked list of timeouts, only accessed by the ticker thread.
+	 */
+	private static final class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		void expireTimeouts(TimingWheel timingWheel, long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					if (timeout.deadline <= deadline && timeout.markAsExpired()) {
+						timingWheel.expire(timeout);
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	private final class Ticker implements Runnable {
+
+		private long tick;
+
+		@Override
+		public void run() {
+			while (true) {
+				long deadline = waitForNextTick();
+				processCancelledTimeouts();
+				transferPendingTimeoutsToBuckets();
+				wheel[(int) (tick & MASK)].expireTimeouts(TimingWheel.this, deadline);
+				tick++;
+			}
+		}
+
+		private void transferPendingTimeoutsToBuckets() {
+			Timeout timeout = pendingTimeouts.poll();
+			while (timeout != null) {
+				if (!timeout.isCancelled()) {
+					long calculated = timeout.deadline / TICK_DURATION_NANOS;
+					timeout.remainingRounds = (calculated - tick) / WHEEL_SIZE;
+					long ticks = Math.max(calculated, tick); // never schedule in the past
+					wheel[(int) (ticks & MASK)].add(timeout);
+				}
+				timeout = pendingTimeouts.poll();
+			}
+		}
+
+		private void processCancelledTimeouts() {
+			Timeout timeout = cancelledTimeouts.poll();
+			while (timeout != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+				timeout = cancelledTimeouts.poll();
+			}
+		}
+
+		private long waitForNextTick() {
+			long deadline = TICK_DURATION_NANOS * (tick + 1);
+			long sleepTimeMillis = TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startTime) + 999999);
+			while (sleepTimeMillis > 0) {
+				try {
+					Thread.sleep(sleepTimeMillis);
+				} catch (InterruptedException e) {
+					// daemon thread owned by this class: keep ticking
+				}
+				sleepTimeMillis = TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startTime) + 999999);
+			}
+			return deadline;
+		}
+	}
+
+}
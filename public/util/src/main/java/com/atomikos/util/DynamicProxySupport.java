@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.atomikos.beans.PropertyUtils;
 import com.atomikos.logging.Logger;
@@ -29,6 +30,8 @@ import com.atomikos.logging.LoggerFactory;
   * Subclasses can have 'overriding' methods annotated with @Proxied 
   * to implement custom logic for a given interface.
   * 
+  * The @Proxied methods of each subclass and the interfaces of each delegate class 
+  * are looked up only once, and shared by all instances. 
   * 
   * <strong>
   *     IMPORTANT: subclasses and proxied methods must be PUBLIC in scope for this to work!
@@ -40,38 +43,31 @@ public abstract class DynamicProxySupport<RequiredInterfaceType> implements Invo
 	
 	private static final Logger LOGGER = LoggerFactory.createLogger(DynamicProxySupport.class);
 
+	private static final ClassValue<ProxiedMethods> PROXIED_METHODS = new ClassValue<ProxiedMethods>() {
+		@Override
+		protected ProxiedMethods computeValue(Class<?> dynamicProxyClass) {
+			return new ProxiedMethods(dynamicProxyClass);
+		}
+	};
+	
+	private static final ClassValue<Class<?>[]> INTERFACE_CLASSES = new ClassValue<Class<?>[]>() {
+		@Override
+		protected Class<?>[] computeValue(Class<?> delegateClass) {
+			Set<Class<?>> interfaces = PropertyUtils.getAllImplementedInterfaces(delegateClass);
+			return interfaces.toArray(new Class[0]);
+		}
+	};
+
 	protected boolean closed = false;
 	protected final RequiredInterfaceType delegate;
-	protected final Map<String, Method> proxiedMethods = new HashMap<String, Method>();
+	private final ProxiedMethods proxiedMethods;
 	
 	protected DynamicProxySupport(RequiredInterfaceType delegate) {
 		this.delegate = delegate;
-		fillProxiedMethodsCache();
-	}
-	
-	private  void fillProxiedMethodsCache() {
-		
-			Class<?> dynamicProxyClass = this.getClass();
-			Method[] methods = dynamicProxyClass.getMethods();
-			if (methods == null) {
-				throw new IllegalStateException(dynamicProxyClass.getSimpleName() +": at least one @Proxied method is expected but none was found.");
-			}
-			boolean proxiedMethodFound = false;			
-			for (Method m : methods) {
-				if (m.isAnnotationPresent(Proxied.class)) {
-					proxiedMethodFound = true;
-					proxiedMethods.put(createSignature(m), m);
-					
-				}
-			}
-			if (!proxiedMethodFound) {
-				throw new IllegalStateException(dynamicProxyClass.getSimpleName() +": at least one @Proxied method is expected but none was found.");
-			}	
-		
-		
+		this.proxiedMethods = PROXIED_METHODS.get(getClass());
 	}
 
-	private String createSignature(Method m) {
+	private static String createSignature(Method m) {
 		StringBuilder ret = new StringBuilder(32);
 		ret.append(m.getName());
 		for (Class<?> c : m.getParameterTypes()) {
@@ -177,7 +173,7 @@ public abstract class DynamicProxySupport<RequiredInterfaceType> implements Invo
 
 	private Method findProxiedMethodFor(Method method) {
 		
-		return proxiedMethods.get(createSignature(method));
+		return proxiedMethods.findProxiedMethodFor(method);
 	}
 	
 	
@@ -206,8 +202,48 @@ public abstract class DynamicProxySupport<RequiredInterfaceType> implements Invo
 	
 	protected Class<?>[] getInterfaceClasses() {
 		
-		Set<Class<?>> interfaces = PropertyUtils.getAllImplementedInterfaces(delegate.getClass());
-		return interfaces.toArray(new Class[0]);
+		return INTERFACE_CLASSES.get(delegate.getClass());
+	}
+	
+	/**
+	 * The @Proxied methods of one subclass, with a cache from interface methods 
+	 * (as passed to invoke) to the proxied method or NONE. The cache is kept per 
+	 * declaring interface in a ClassValue, so vendor interfaces (and their class 
+	 * loaders) are not reachable from here. 
+	 */
+	private static class ProxiedMethods {
+		
+		private static final Object NONE = new Object();
+		
+		private final Map<String, Method> proxiedMethodsBySignature = new HashMap<String, Method>();
+		private final ClassValue<Map<Method, Object>> proxiedMethodsByInvokedMethod = new ClassValue<Map<Method, Object>>() {
+			@Override
+			protected Map<Method, Object> computeValue(Class<?> declaringClass) {
+				return new ConcurrentHashMap<Method, Object>();
+			}
+		};
+		
+		ProxiedMethods(Class<?> dynamicProxyClass) {
+			for (Method m : dynamicProxyClass.getMethods()) {
+				if (m.isAnnotationPresent(Proxied.class)) {
+					proxiedMethodsBySignature.put(createSignature(m), m);
+				}
+			}
+			if (proxiedMethodsBySignature.isEmpty()) {
+				throw new IllegalStateException(dynamicProxyClass.getSimpleName() +": at least one @Proxied method is expected but none was found.");
+			}
+		}
+		
+		Method findProxiedMethodFor(Method method) {
+			Map<Method, Object> cache = proxiedMethodsByInvokedMethod.get(method.getDeclaringClass());
+			Object ret = cache.get(method);
+			if (ret == null) {
+				ret = proxiedMethodsBySignature.get(createSignature(method));
+				if (ret == null) ret = NONE;
+				cache.put(method, ret);
+			}
+			return ret == NONE ? null : (Method) ret;
+		}
 	}
 	
 }
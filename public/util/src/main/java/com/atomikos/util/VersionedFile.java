@@ -16,6 +16,9 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
 
 
  /**
@@ -71,7 +74,12 @@ public class VersionedFile
 	}
 
 	private long extractLastValidVersionNumberFromFileNames() {
-		long version = -1;
+		TreeSet<Long> versions = extractVersionsFromFileNames();
+		return versions.isEmpty() ? -1 : versions.first();
+	}
+
+	private TreeSet<Long> extractVersionsFromFileNames() {
+		TreeSet<Long> versions = new TreeSet<Long>();
         File cd = new File ( getBaseDir() );
         String[] names = cd.list ( new FilenameFilter () {
             public boolean accept ( File dir , String name )
@@ -82,13 +90,16 @@ public class VersionedFile
         } );
         if ( names!= null ) {
         	for ( int i = 0; i < names.length; i++ ) {
-        		long sfx = extractVersion ( names[i] );
-        		if ( version < 0 || sfx < version )
-        			version = sfx;
+        		versions.add ( extractVersion ( names[i] ) );
         	}
         }
 
-        return version;
+        return versions;
+	}
+
+	private String getVersionFileName ( long version )
+	{
+		return getBaseUrl() + version + getSuffix();
 	}
 
 	private long extractVersion ( String name )
@@ -108,14 +119,9 @@ public class VersionedFile
         return ret;
     }
 
-	private String getBackupVersionFileName()
-	{
-		return getBaseUrl() + (version - 1) + getSuffix();
-	}
-
 	public String getCurrentVersionFileName()
 	{
-		return getBaseUrl() + version + getSuffix();
+		return getVersionFileName ( version );
 	}
 
 	public String getBaseUrl()
@@ -156,6 +162,26 @@ public class VersionedFile
 		return inputStream;
 	}
 
+	/**
+	 * Opens the versions newer than the last valid one for reading, oldest first.
+	 * Such versions are left behind when writing stopped before 
+	 * {@link #discardBackupVersion()}: they can be incomplete.
+	 *
+	 * @return The streams, to be closed by the caller. Empty if there are no newer versions.
+	 * @throws IllegalStateException If a newer version was opened for writing.
+	 * @throws FileNotFoundException If a version was deleted meanwhile.
+	 */
+	public List<FileInputStream> openNewerVersionsForReading()
+	throws IllegalStateException, FileNotFoundException
+	{
+		if ( randomAccessFile != null ) throw new IllegalStateException ( "Already started writing." );
+		List<FileInputStream> ret = new ArrayList<FileInputStream>();
+		for ( long newer : extractVersionsFromFileNames().tailSet ( version, false ) ) {
+			ret.add ( new FileInputStream ( getVersionFileName ( newer ) ) );
+		}
+		return ret;
+	}
+
 	/**
 	 * Opens a new version for writing to. Note that
 	 * this new version is tentative and cannot be read
@@ -177,7 +203,9 @@ public class VersionedFile
 	 * Opens a new version for writing to. Note that
 	 * this new version is tentative and cannot be read
 	 * by {@link #openLastValidVersionForReading()} until
-	 * {@link #discardBackupVersion()} is called.
+	 * {@link #discardBackupVersion()} is called. The new version 
+	 * comes after any newer versions left behind, so these 
+	 * are never overwritten.
 	 *
 	 * @return A file for writing to.
 	 * @throws IOException
@@ -190,12 +218,13 @@ public class VersionedFile
 	public FileChannel openNewVersionForNioWriting() throws FileNotFoundException
 	{
 		if ( randomAccessFile != null ) throw new IllegalStateException ( "Already writing a new version." );
-		version++;
+		TreeSet<Long> versions = extractVersionsFromFileNames();
+		version = versions.isEmpty() ? version + 1 : Math.max ( version, versions.last() ) + 1;
 		randomAccessFile = new RandomAccessFile(getCurrentVersionFileName(), "rw");
 		return randomAccessFile.getChannel();
 	}
 	/**
-	 * Discards the backup version (if any).
+	 * Discards the backup version (if any) and any other older versions, oldest first.
 	 * After calling this method, the newer version
 	 * produced after calling {@link #openNewVersionForWriting()}
 	 * becomes valid for reading next time when
@@ -210,10 +239,11 @@ public class VersionedFile
 	public void discardBackupVersion() throws IllegalStateException, IOException
 	{
 		if ( randomAccessFile == null ) throw new IllegalStateException ( "No new version yet!" );
-		String fileName = getBackupVersionFileName();
-		
-		File temp = new File ( fileName );
-        if ( temp.exists() && !temp.delete() ) throw new IOException ( "Failed to delete backup version: " + fileName );
+		for ( long older : extractVersionsFromFileNames().headSet ( version, false ) ) {
+			String fileName = getVersionFileName ( older );
+			File temp = new File ( fileName );
+			if ( temp.exists() && !temp.delete() ) throw new IOException ( "Failed to delete backup version: " + fileName );
+		}
 
 	}
 
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TaskManagerTestJUnit {
+
+	@After
+	public void tearDown() {
+		TaskManager.SINGLETON.configure(ExecutorMode.PLATFORM, 64);
+		TaskManager.SINGLETON.shutdown();
+	}
+
+	@Test
+	public void testParseIsCaseInsensitive() {
+		assertEquals(ExecutorMode.VIRTUAL, ExecutorMode.parse(" Virtual "));
+		assertEquals(ExecutorMode.BOUNDED, ExecutorMode.parse("bounded"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseRejectsUnknownMode() {
+		ExecutorMode.parse("elastic");
+	}
+
+	@Test
+	public void testVirtualModeExecutesTasks() throws Exception {
+		TaskManager.SINGLETON.configure(ExecutorMode.VIRTUAL, 2);
+		CountDownLatch executed = new CountDownLatch(1);
+		TaskManager.SINGLETON.executeTask(executed::countDown);
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testBoundedModeQueuesTaskWhenBusy() throws Exception {
+		TaskManager.SINGLETON.configure(ExecutorMode.BOUNDED, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			TaskManager.SINGLETON.executeTask(() -> await(release));
+			AtomicReference<Thread> executingThread = new AtomicReference<Thread>();
+			CountDownLatch executed = new CountDownLatch(1);
+			TaskManager.SINGLETON.executeTask(() -> {
+				executingThread.set(Thread.currentThread());
+				executed.countDown();
+			});
+			assertNull(executingThread.get());
+			release.countDown();
+			assertTrue(executed.await(5, TimeUnit.SECONDS));
+			assertNotSame(Thread.currentThread(), executingThread.get());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testBoundedModeRunsTaskInCallerWhenQueueIsFull() throws Exception {
+		TaskManager.SINGLETON.configure(ExecutorMode.BOUNDED, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			saturate(release);
+			AtomicReference<Thread> executingThread = new AtomicReference<Thread>();
+			TaskManager.SINGLETON.executeTask(() -> executingThread.set(Thread.currentThread()));
+			assertSame(Thread.currentThread(), executingThread.get());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testBoundedModeNeverRunsTaskInCallerThatMustNotBlock() throws Exception {
+		TaskManager.SINGLETON.configure(ExecutorMode.BOUNDED, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			saturate(release);
+			AtomicReference<Thread> executingThread = new AtomicReference<Thread>();
+			CountDownLatch executed = new CountDownLatch(1);
+			TaskManager.SINGLETON.executeTaskWithoutBlocking(() -> {
+				executingThread.set(Thread.currentThread());
+				executed.countDown();
+			});
+			assertTrue(executed.await(5, TimeUnit.SECONDS));
+			assertNotSame(Thread.currentThread(), executingThread.get());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testBoundedModeDoesNotQueueTasksOfPoolThreads() throws Exception {
+		TaskManager.SINGLETON.configure(ExecutorMode.BOUNDED, 1);
+		CountDownLatch parentDone = new CountDownLatch(1);
+		TaskManager.SINGLETON.executeTask(() -> {
+			// the only pool thread waits for its child: that must not deadlock
+			CountDownLatch childDone = new CountDownLatch(1);
+			TaskManager.SINGLETON.executeTask(childDone::countDown);
+			await(childDone);
+			parentDone.countDown();
+		});
+		assertTrue(parentDone.await(5, TimeUnit.SECONDS));
+	}
+
+	private static void saturate(CountDownLatch release) {
+		TaskManager.SINGLETON.executeTask(() -> await(release));
+		for (int i = 0; i < 16; i++) {
+			TaskManager.SINGLETON.executeTask(() -> {});
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2000-2020 Atomikos <info@atomikos.com>
+ *
+ * LICENSE CONDITIONS
+ *
+ * See http://www.atomikos.com/Main/WhichLicenseApplies for details.
+ */
+
+package com.atomikos.timing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ScheduledAlarmTimerTestJUnit extends TestCase {
+
+	private AtomicInteger count1;
+	private AtomicInteger count2;
+
+	protected void setUp() throws Exception {
+		count1 = new AtomicInteger();
+		count2 = new AtomicInteger();
+	}
+
+	public void testMultiAlarmListener() throws Exception {
+		ScheduledAlarmTimer timer = new ScheduledAlarmTimer(100);
+
+		timer.addAlarmTimerListener(new AlarmTimerListener() {
+			public void alarm(AlarmTimer timer) {
+				count1.incrementAndGet();
+			}
+		});
+		timer.addAlarmTimerListener(new AlarmTimerListener() {
+			public void alarm(AlarmTimer timer) {
+				if (count2.incrementAndGet() >= 5)
+					timer.removeAlarmTimerListener(this);
+			}
+		});
+		timer.start();
+
+		waitForCount(count1, 10, 5000);
+		assertTrue(count1.get() >= 10);
+		assertEquals(5, count2.get());
+
+		timer.stopTimer();
+		assertFalse(timer.isActive());
+		int countAfterStop = count1.get();
+		Thread.sleep(500);
+		assertTrue(count1.get() <= countAfterStop + 1); // alarm may have been in progress
+	}
+
+	public void testCancelledTimeoutDoesNotExpire() throws Exception {
+		TimingWheel.Timeout timeout = TimingWheel.SINGLETON.schedule(new Runnable() {
+			public void run() {
+				count1.incrementAndGet();
+			}
+		}, 50);
+		assertTrue(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		assertFalse(timeout.cancel());
+		Thread.sleep(200);
+		assertEquals(0, count1.get());
+		assertFalse(timeout.isExpired());
+	}
+
+	public void testManyTimersShareOneThread() throws Exception {
+		int threadsBefore = Thread.activeCount();
+		ScheduledAlarmTimer[] timers = new ScheduledAlarmTimer[1000];
+		for (int i = 0; i < timers.length; i++) {
+			timers[i] = new ScheduledAlarmTimer(5000);
+			timers[i].start();
+		}
+		assertTrue(Thread.activeCount() - threadsBefore <= 1);
+		for (int i = 0; i < timers.length; i++) {
+			timers[i].stopTimer();
+		}
+	}
+
+	public void testLongDelayExpiresAfterFullRound() throws Exception {
+		long delay = TimingWheel.TICK_DURATION_MILLIS * 600; // more than one round of the wheel
+		long start = System.currentTimeMillis();
+		final long[] expiredAt = new long[1];
+		TimingWheel.SINGLETON.schedule(new Runnable() {
+			public void run() {
+				expiredAt[0] = System.currentTimeMillis();
+				count1.incrementAndGet();
+			}
+		}, delay);
+		waitForCount(count1, 1, delay + 5000);
+		assertEquals(1, count1.get());
+		assertTrue(expiredAt[0] - start >= delay);
+	}
+
+	private static void waitForCount(AtomicInteger count, int expected, long maxWaitMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + maxWaitMillis;
+		while (count.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+}
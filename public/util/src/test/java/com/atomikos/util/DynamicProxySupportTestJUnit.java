@@ -50,6 +50,19 @@ public class DynamicProxySupportTestJUnit {
 		dynamicProxy.methodToProxy();
 	}
 	
+    @Test
+    public void testProxiesOfTheSameClassCallTheirOwnDelegate() {
+        TestInterface otherDelegate = Mockito.mock(TestInterface.class);
+        TestInterface otherDynamicProxy = new ProxiedClass(otherDelegate).createDynamicProxy();
+        dynamicProxy.methodToProxy(1);
+        otherDynamicProxy.methodToProxy(2);
+        otherDynamicProxy.nativeMethod();
+        Mockito.verify(delegate, Mockito.times(1)).methodToProxy(1);
+        Mockito.verify(otherDelegate, Mockito.times(1)).methodToProxy(2);
+        Mockito.verify(otherDelegate, Mockito.times(1)).nativeMethod();
+        Mockito.verify(delegate, Mockito.never()).nativeMethod();
+    }
+
     @Test
     public void testProxiedMethodOverriddenInSubclass() {
         proxy = new SubclassOfProxiedClass(delegate);
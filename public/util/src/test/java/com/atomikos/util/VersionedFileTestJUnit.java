@@ -11,10 +11,12 @@ package com.atomikos.util;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -228,4 +230,49 @@ public class VersionedFileTestJUnit extends TestCase {
 		file.close();
 	}
 
+	public void testNewVersionDoesNotOverwriteNewerVersionsLeftBehind() throws IOException 
+	{
+		writeNewVersion ( 1 );
+		file.discardBackupVersion();
+		file.close();
+		
+		//two newer versions that are never made valid, as if writing stopped
+		writeNewVersion ( 2 );
+		file.close();
+		writeNewVersion ( 3 );
+		file.close();
+		
+		assertEquals ( 1 , readInt ( file.openLastValidVersionForReading() ) );
+		file.close();
+		List<FileInputStream> newer = file.openNewerVersionsForReading();
+		assertEquals ( 2 , newer.size() );
+		assertEquals ( 2 , readInt ( newer.get ( 0 ) ) );
+		assertEquals ( 3 , readInt ( newer.get ( 1 ) ) );
+		
+		//making a new version valid discards all older ones
+		writeNewVersion ( 4 );
+		file.discardBackupVersion();
+		file.close();
+		assertEquals ( 4 , readInt ( file.openLastValidVersionForReading() ) );
+		file.close();
+		assertTrue ( file.openNewerVersionsForReading().isEmpty() );
+	}
+	
+	private void writeNewVersion ( int value ) throws IOException 
+	{
+		DataOutputStream dos = new DataOutputStream ( file.openNewVersionForWriting() );
+		dos.writeInt ( value );
+		dos.close();
+	}
+	
+	private static int readInt ( InputStream is ) throws IOException 
+	{
+		DataInputStream dis = new DataInputStream ( is );
+		try {
+			return dis.readInt();
+		} finally {
+			dis.close();
+		}
+	}
+
 }